@@ -0,0 +1,30 @@
+package com.example.cashcard;
+
+import java.util.UUID;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Arranca la aplicación completa para los benchmarks, cada vez con su propia BBDD H2
+ * en memoria (Flyway + los datos de afterMigrate.sql, igual que en los tests).
+ * Sin control de admisión: todas las peticiones van como sarah1 a la velocidad de
+ * MockMvc y con el limite por propietario se mediría sobre todo el 429
+ */
+final class BenchmarkApplication {
+
+    private BenchmarkApplication() {
+    }
+
+    static ConfigurableApplicationContext start(WebApplicationType webApplicationType) {
+        return new SpringApplicationBuilder(CashcardApplication.class)
+                .web(webApplicationType)
+                .properties(
+                        "spring.datasource.url=jdbc:h2:mem:bench-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1",
+                        "server.port=0",
+                        "cashcard.ratelimit.enabled=false",
+                        "logging.level.root=WARN")
+                .run();
+    }
+}
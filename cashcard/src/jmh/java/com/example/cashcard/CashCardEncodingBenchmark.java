@@ -0,0 +1,99 @@
+package com.example.cashcard;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+
+/**
+ * Respuesta de GET /cashcards en JSON, CBOR, Smile y JSON con gzip (lo que hace Tomcat con
+ * server.compression): tiempo de serializar la lista y el tamaño de cada una, que JMH saca
+ * como el contador auxiliar bytes junto al resultado de cada benchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CashCardEncodingBenchmark {
+
+    @Param({ "20", "1000" })
+    int listSize;
+
+    private List<CashCard> cashCards;
+    private ObjectWriter jsonWriter;
+    private ObjectWriter cborWriter;
+    private ObjectWriter smileWriter;
+
+    @Setup
+    public void setUp() throws IOException {
+        cashCards = LongStream.range(0, listSize)
+                .mapToObj(i -> new CashCard(i + 1000, i * 137 + 1, "sarah1", i % 7))
+                .toList();
+        jsonWriter = listWriter(new ObjectMapper());
+        cborWriter = listWriter(new CBORMapper());
+        smileWriter = listWriter(new SmileMapper());
+    }
+
+    /** Tamaño de la última respuesta; EVENTS lo saca tal cual, sin dividir por el tiempo */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Payload {
+
+        public long bytes;
+
+        byte[] measure(byte[] body) {
+            bytes = body.length;
+            return body;
+        }
+    }
+
+    @Benchmark
+    public byte[] json(Payload payload) throws IOException {
+        return payload.measure(jsonWriter.writeValueAsBytes(cashCards));
+    }
+
+    @Benchmark
+    public byte[] cbor(Payload payload) throws IOException {
+        return payload.measure(cborWriter.writeValueAsBytes(cashCards));
+    }
+
+    @Benchmark
+    public byte[] smile(Payload payload) throws IOException {
+        return payload.measure(smileWriter.writeValueAsBytes(cashCards));
+    }
+
+    @Benchmark
+    public byte[] jsonGzip(Payload payload) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            jsonWriter.writeValue(gzip, cashCards);
+        }
+        return payload.measure(bytes.toByteArray());
+    }
+
+    private static ObjectWriter listWriter(ObjectMapper mapper) {
+        return mapper.writerFor(mapper.getTypeFactory().constructCollectionType(List.class, CashCard.class));
+    }
+}
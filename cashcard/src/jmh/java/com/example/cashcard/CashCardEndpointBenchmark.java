@@ -0,0 +1,128 @@
+package com.example.cashcard;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import jakarta.servlet.Filter;
+
+/**
+ * Ida y vuelta completa por MockMvc (filtros de seguridad con Basic auth, controlador,
+ * servicio y BBDD) para cada endpoint de /cashcards. Sin red, asi se mide solo la aplicación
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CashCardEndpointBenchmark {
+
+    private static final String SARAH = "Basic "
+            + Base64.getEncoder().encodeToString("sarah1:abc123".getBytes(StandardCharsets.UTF_8));
+
+    private ConfigurableApplicationContext context;
+    private MockMvc mockMvc;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkApplication.start(WebApplicationType.SERVLET);
+        mockMvc = MockMvcBuilders.webAppContextSetup((WebApplicationContext) context)
+                .addFilters(context.getBean("springSecurityFilterChain", Filter.class))
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public MvcResult getCashCard() throws Exception {
+        return perform(get("/cashcards/99"));
+    }
+
+    @Benchmark
+    public MvcResult getCashCardPage() throws Exception {
+        return perform(get("/cashcards?page=0&size=20&sort=amount,asc"));
+    }
+
+    @Benchmark
+    public MvcResult getCashCardKeysetPage() throws Exception {
+        return perform(get("/cashcards?after=&size=20"));
+    }
+
+    @Benchmark
+    public MvcResult getSummary() throws Exception {
+        return perform(get("/cashcards/summary"));
+    }
+
+    @Benchmark
+    public MvcResult exportNdjson() throws Exception {
+        MvcResult result = perform(get("/cashcards/export"));
+        return mockMvc.perform(asyncDispatch(result)).andExpect(status().is2xxSuccessful()).andReturn();
+    }
+
+    @Benchmark
+    public MvcResult putCashCard() throws Exception {
+        return perform(put("/cashcards/99")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"amount\": 123.45}"));
+    }
+
+    @Benchmark
+    public MvcResult batchUpdate() throws Exception {
+        return perform(post("/cashcards/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[{\"op\":\"update\",\"id\":100,\"amount\":1.00}]"));
+    }
+
+    /** POST y DELETE de la tarjeta creada, para que la tabla no crezca durante la medida */
+    @Benchmark
+    public MvcResult createAndDeleteCashCard() throws Exception {
+        MvcResult created = perform(post("/cashcards")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"amount\": 10.00}"));
+        String location = created.getResponse().getHeader(HttpHeaders.LOCATION);
+        return perform(delete(location));
+    }
+
+    /**
+     * Todas las peticiones pasan por aqui: una respuesta que no sea 2xx (401, 404, 412,
+     * 429...) lanza AssertionError y JMH da el benchmark por fallido, en lugar de medir
+     * la ruta de error como si fuera una muestra buena
+     */
+    private MvcResult perform(MockHttpServletRequestBuilder request) throws Exception {
+        return mockMvc.perform(request.header(HttpHeaders.AUTHORIZATION, SARAH))
+                .andExpect(status().is2xxSuccessful())
+                .andReturn();
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.cashcard;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * Serialización Jackson de una tarjeta y de listas como las de GET /cashcards, y lectura
+ * de una tarjeta como el cuerpo de POST /cashcards
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CashCardJsonBenchmark {
+
+    @Param({ "20", "1000" })
+    int listSize;
+
+    private ObjectWriter cashCardWriter;
+    private ObjectWriter listWriter;
+    private ObjectReader cashCardReader;
+    private CashCard cashCard;
+    private List<CashCard> cashCards;
+    private byte[] cashCardJson;
+
+    @Setup
+    public void setUp() throws JsonProcessingException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        cashCardWriter = objectMapper.writerFor(CashCard.class);
+        listWriter = objectMapper.writerFor(objectMapper.getTypeFactory().constructCollectionType(List.class, CashCard.class));
+        cashCard = new CashCard(99L, 12345, "sarah1", 3L);
+        cashCards = LongStream.range(0, listSize)
+                .mapToObj(i -> new CashCard(i, i * 100 + 1, "sarah1", 0L))
+                .toList();
+        cashCardReader = objectMapper.readerFor(CashCard.class);
+        cashCardJson = cashCardWriter.writeValueAsBytes(cashCard);
+    }
+
+    @Benchmark
+    public byte[] serializeCashCard() throws JsonProcessingException {
+        return cashCardWriter.writeValueAsBytes(cashCard);
+    }
+
+    @Benchmark
+    public byte[] serializeCashCardList() throws JsonProcessingException {
+        return listWriter.writeValueAsBytes(cashCards);
+    }
+
+    @Benchmark
+    public CashCard deserializeCashCard() throws IOException {
+        return cashCardReader.readValue(cashCardJson);
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.cashcard;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Consultas del repositorio contra H2 en memoria con 10^3 a 10^6 filas repartidas
+ * entre OWNERS propietarios, asi cada propietario tiene rows / OWNERS tarjetas
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CashCardRepositoryBenchmark {
+
+    private static final int OWNERS = 100;
+    private static final int INSERT_CHUNK = 10_000;
+
+    @Param({ "1000", "100000", "1000000" })
+    int rows;
+
+    private ConfigurableApplicationContext context;
+    private CashCardRepository repository;
+    private long firstId;
+    private CashCardCursor[] lastPageCursors;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkApplication.start(WebApplicationType.NONE);
+        repository = context.getBean(CashCardRepository.class);
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        firstId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) + 1 FROM cash_card", Long.class);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        List<Object[]> chunk = new ArrayList<>(INSERT_CHUNK);
+        for (int i = 0; i < rows; i++) {
+            chunk.add(new Object[] { firstId + i, random.nextLong(1, 1_000_000), "owner-" + (i % OWNERS) });
+            if (chunk.size() == INSERT_CHUNK || i == rows - 1) {
+                jdbcTemplate.batchUpdate("INSERT INTO cash_card (id, amount, owner, version) VALUES (?, ?, ?, 0)", chunk);
+                chunk.clear();
+            }
+        }
+        jdbcTemplate.execute("ANALYZE");
+        // El cursor que devolvería la página anterior a la última, para leer con keyset la misma página
+        // que findByOwnerLastPage con OFFSET
+        lastPageCursors = new CashCardCursor[OWNERS];
+        int skipped = lastPage() * 20;
+        for (int owner = 0; owner < OWNERS && skipped > 0; owner++) {
+            lastPageCursors[owner] = jdbcTemplate.queryForObject(
+                    "SELECT amount, id FROM cash_card WHERE owner = ? ORDER BY amount, id LIMIT 1 OFFSET ?",
+                    (rs, rowNum) -> new CashCardCursor(rs.getLong("amount"), rs.getLong("id")),
+                    "owner-" + owner, skipped - 1);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public CashCard findByIdAndOwner() {
+        long offset = ThreadLocalRandom.current().nextLong(rows);
+        return repository.findByIdAndOwner(firstId + offset, "owner-" + (offset % OWNERS));
+    }
+
+    /** Lo que hace GET /cashcards?page=0&size=20: una página ordenada por importe mas el COUNT */
+    @Benchmark
+    public Page<CashCard> findByOwnerFirstPage() {
+        String owner = "owner-" + ThreadLocalRandom.current().nextInt(OWNERS);
+        return repository.findByOwner(owner, PageRequest.of(0, 20, Sort.by(Sort.Direction.ASC, "amount")));
+    }
+
+    /** Página profunda por OFFSET, para comparar con el keyset */
+    @Benchmark
+    public Page<CashCard> findByOwnerLastPage() {
+        String owner = "owner-" + ThreadLocalRandom.current().nextInt(OWNERS);
+        return repository.findByOwner(owner, PageRequest.of(lastPage(), 20, Sort.by(Sort.Direction.ASC, "amount")));
+    }
+
+    @Benchmark
+    public Slice<CashCard> findSliceByOwnerFirstPage() {
+        String owner = "owner-" + ThreadLocalRandom.current().nextInt(OWNERS);
+        return repository.findSliceByOwner(owner, null, 20);
+    }
+
+    /** La misma página que findByOwnerLastPage, pero con el cursor de la anterior */
+    @Benchmark
+    public Slice<CashCard> findSliceByOwnerLastPage() {
+        int owner = ThreadLocalRandom.current().nextInt(OWNERS);
+        return repository.findSliceByOwner("owner-" + owner, lastPageCursors[owner], 20);
+    }
+
+    private int lastPage() {
+        return Math.max(0, rows / OWNERS / 20 - 1);
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.cashcard;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Coste de comprobar la contraseña en cada petición con Basic auth: BCrypt a
+ * distintas fuerzas frente a un acierto en la cache de CachingPasswordEncoder
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PasswordEncoderBenchmark {
+
+    private static final String PASSWORD = "abc123";
+
+    @Param({ "4", "10", "12" })
+    int strength;
+
+    private BCryptPasswordEncoder bcrypt;
+    private CachingPasswordEncoder caching;
+    private String encoded;
+
+    @Setup
+    public void setUp() {
+        bcrypt = new BCryptPasswordEncoder(strength);
+        caching = new CachingPasswordEncoder(bcrypt, 10_000, Duration.ofMinutes(5), new SimpleMeterRegistry());
+        encoded = bcrypt.encode(PASSWORD);
+        caching.matches(PASSWORD, encoded);
+    }
+
+    @Benchmark
+    public boolean bcryptMatches() {
+        return bcrypt.matches(PASSWORD, encoded);
+    }
+
+    @Benchmark
+    public boolean cachedMatches() {
+        return caching.matches(PASSWORD, encoded);
+    }
+}
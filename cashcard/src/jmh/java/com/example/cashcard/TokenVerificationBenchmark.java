@@ -0,0 +1,59 @@
+package com.example.cashcard;
+
+import java.time.Instant;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.oauth2.jwt.JwsHeader;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtClaimsSet;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtEncoderParameters;
+
+/**
+ * Coste de verificar un token de /auth/token (firma HMAC y claims), para compararlo
+ * con bcryptMatches de PasswordEncoderBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenVerificationBenchmark {
+
+    private JwtDecoder decoder;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        TokenAuthConfig config = new TokenAuthConfig(Base64.getEncoder().encodeToString(new byte[32]));
+        decoder = config.jwtDecoder();
+        Instant now = Instant.now();
+        JwtClaimsSet claims = JwtClaimsSet.builder()
+                .subject("sarah1")
+                .issuedAt(now)
+                .expiresAt(now.plusSeconds(3600))
+                .claim(TokenController.ROLES_CLAIM, List.of("ROLE_CARD-OWNER"))
+                .build();
+        token = config.jwtEncoder()
+                .encode(JwtEncoderParameters.from(JwsHeader.with(TokenAuthConfig.ALGORITHM).build(), claims))
+                .getTokenValue();
+    }
+
+    @Benchmark
+    public Jwt decode() {
+        return decoder.decode(token);
+    }
+}
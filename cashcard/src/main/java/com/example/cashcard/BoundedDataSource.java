@@ -0,0 +1,156 @@
+package com.example.cashcard;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * DataSource que limita cuantas conexiones pueden estar en uso a la vez.
+ *
+ * Con hilos virtuales puede haber miles de peticiones bloqueadas en JDBC al mismo
+ * tiempo, y todas acabarian esperando dentro del pool. Este envoltorio las hace
+ * esperar antes, en un Semaphore justo (FIFO) que no bloquea el hilo portador, y
+ * si no consiguen permiso en acquireTimeout fallan rápido con una
+ * SQLTransientConnectionException en lugar de saturar la BBDD.
+ * El permiso se devuelve al cerrar la conexión. unwrap no entrega el DataSource de
+ * dentro (ni nada que sea un DataSource), porque sus conexiones no pedirían permiso.
+ *
+ * La espera por el permiso se mide en el timer cashcard.datasource.acquire (con
+ * result=acquired o result=timeout) y los permisos libres en cashcard.datasource.permits.available,
+ * ambos con el tag name del bean, como las métricas jdbc.connections de Spring Boot;
+ * la espera dentro de Hikari ya la publica Spring Boot como hikaricp.connections.acquire.
+ */
+class BoundedDataSource extends DelegatingDataSource {
+
+    private final Semaphore permits;
+    private final Duration acquireTimeout;
+    private final Timer acquiredTimer;
+    private final Timer timeoutTimer;
+
+    /** @param name el nombre del bean, para el tag name de las métricas */
+    BoundedDataSource(DataSource targetDataSource, String name, int maxConcurrentConnections, Duration acquireTimeout,
+            MeterRegistry meterRegistry) {
+        super(targetDataSource);
+        this.permits = new Semaphore(maxConcurrentConnections, true);
+        this.acquireTimeout = acquireTimeout;
+        this.acquiredTimer = acquireTimer(meterRegistry, name, "acquired");
+        this.timeoutTimer = acquireTimer(meterRegistry, name, "timeout");
+        Gauge.builder("cashcard.datasource.permits.available", permits, Semaphore::availablePermits)
+                .description("Conexiones que todavía se pueden abrir sin esperar")
+                .tag("name", name)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        acquire();
+        return guard(() -> super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        acquire();
+        return guard(() -> super.getConnection(username, password));
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        T unwrapped = obtainTargetDataSource().unwrap(iface);
+        if (unwrapped instanceof DataSource) {
+            throw new SQLException("Unwrapping " + iface.getName() + " would bypass the connection limit");
+        }
+        return unwrapped;
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return true;
+        }
+        return obtainTargetDataSource().isWrapperFor(iface)
+                && !(obtainTargetDataSource().unwrap(iface) instanceof DataSource);
+    }
+
+    int availablePermits() {
+        return permits.availablePermits();
+    }
+
+    private void acquire() throws SQLException {
+        long start = System.nanoTime();
+        try {
+            boolean acquired = permits.tryAcquire(acquireTimeout.toNanos(), TimeUnit.NANOSECONDS);
+            (acquired ? acquiredTimer : timeoutTimer).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            if (!acquired) {
+                throw new SQLTransientConnectionException(
+                        "No connection available within " + acquireTimeout.toMillis() + "ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Interrupted while waiting for a connection", e);
+        }
+    }
+
+    private static Timer acquireTimer(MeterRegistry meterRegistry, String name, String result) {
+        return Timer.builder("cashcard.datasource.acquire")
+                .description("Espera por un permiso de conexión en BoundedDataSource")
+                .tag("name", name)
+                .tag("result", result)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private interface ConnectionSupplier {
+        Connection get() throws SQLException;
+    }
+
+    private Connection guard(ConnectionSupplier supplier) throws SQLException {
+        Connection connection;
+        try {
+            connection = supplier.get();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+        AtomicBoolean released = new AtomicBoolean();
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class },
+                (proxy, method, args) -> {
+                    if (method.getName().equals("equals")) {
+                        return proxy == args[0];
+                    }
+                    if (method.getName().equals("hashCode")) {
+                        return System.identityHashCode(proxy);
+                    }
+                    if (method.getName().equals("close") && released.compareAndSet(false, true)) {
+                        try {
+                            return method.invoke(connection, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getTargetException();
+                        } finally {
+                            permits.release();
+                        }
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getTargetException();
+                    }
+                });
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.cashcard;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * PasswordEncoder que se coloca delante de BCrypt para no recalcular el hash
+ * en cada petición HTTP Basic.
+ *
+ * Guardamos solo las credenciales que ya han sido verificadas, indexadas por un
+ * SHA-256 del hash almacenado del usuario junto con la contraseña en claro. Como el
+ * hash almacenado forma parte de la clave, cuando el UserDetailsService cambia la
+ * contraseña de un usuario las entradas antiguas dejan de coincidir solas.
+ * Los fallos nunca se cachean, asi un atacante no puede llenar la cache.
+ * La cache es acotada (tamaño máximo) y las entradas caducan con un TTL.
+ *
+ * Cada comprobación se mide en el timer cashcard.auth.password.match, con el tag
+ * cache=hit cuando no hace falta BCrypt y cache=miss cuando si; la cache se publica
+ * como cache.* con cache=credentials.
+ */
+class CachingPasswordEncoder implements PasswordEncoder {
+
+    private final PasswordEncoder delegate;
+    private final Cache<String, Boolean> verified;
+    private final Timer hitTimer;
+    private final Timer missTimer;
+
+    CachingPasswordEncoder(PasswordEncoder delegate, long maxSize, Duration ttl, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.verified = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        this.hitTimer = matchTimer(meterRegistry, "hit");
+        this.missTimer = matchTimer(meterRegistry, "miss");
+        CaffeineCacheMetrics.monitor(meterRegistry, verified, "credentials");
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return delegate.encode(rawPassword);
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        if (rawPassword == null || encodedPassword == null) {
+            return delegate.matches(rawPassword, encodedPassword);
+        }
+        long start = System.nanoTime();
+        String key = digest(rawPassword, encodedPassword);
+        if (verified.getIfPresent(key) != null) {
+            hitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return true;
+        }
+        boolean matches = delegate.matches(rawPassword, encodedPassword);
+        if (matches) {
+            verified.put(key, Boolean.TRUE);
+        }
+        missTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return matches;
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+
+    /** Vacía la cache, por ejemplo cuando se modifican los usuarios en bloque */
+    void invalidateAll() {
+        verified.invalidateAll();
+    }
+
+    long size() {
+        verified.cleanUp();
+        return verified.estimatedSize();
+    }
+
+    private static Timer matchTimer(MeterRegistry meterRegistry, String cache) {
+        return Timer.builder("cashcard.auth.password.match")
+                .description("Tiempo de comprobar una contraseña")
+                .tag("cache", cache)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private static String digest(CharSequence rawPassword, String encodedPassword) {
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            sha256.update(encodedPassword.getBytes(StandardCharsets.UTF_8));
+            sha256.update((byte) 0);
+            sha256.update(rawPassword.toString().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(sha256.digest());
+        } catch (NoSuchAlgorithmException e) {
+            // Todas las JVM están obligadas a soportar SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.cashcard;
+
+import java.time.Duration;
+
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserCache;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Cache acotada de usuarios ya leidos de la BBDD, delante del UserDetailsService JDBC.
+ *
+ * Solo guarda los usuarios que se han autenticado hace poco, asi el heap no depende de
+ * cuantos usuarios haya en la tabla. El TTL limita cuanto tarda en notarse un cambio
+ * hecho directamente en la BBDD; los que pasan por CashCardUsers la vacian al momento.
+ * Se guardan y se devuelven copias: ProviderManager borra la contraseña del UserDetails
+ * tras autenticar y no puede tocar la que está en la cache.
+ * Se publica como cache.* con cache=users.
+ */
+class CaffeineUserCache implements UserCache {
+
+    private final Cache<String, UserDetails> users;
+
+    CaffeineUserCache(long maxSize, Duration ttl, MeterRegistry meterRegistry) {
+        this.users = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, users, "users");
+    }
+
+    @Override
+    public UserDetails getUserFromCache(String username) {
+        UserDetails user = users.getIfPresent(username);
+        return user != null ? User.withUserDetails(user).build() : null;
+    }
+
+    @Override
+    public void putUserInCache(UserDetails user) {
+        users.put(user.getUsername(), User.withUserDetails(user).build());
+    }
+
+    @Override
+    public void removeUserFromCache(String username) {
+        users.invalidate(username);
+    }
+}
@@ -1,6 +1,12 @@
 package com.example.cashcard;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.PersistenceCreator;
+import org.springframework.data.annotation.Version;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 
 /**
  * Con el modificador record designamos la clase como inmutable, y que solo sirve para contener datos
@@ -8,7 +14,21 @@ import org.springframework.data.annotation.Id;
  * y los getters de los campos sin el prefijo get.
  * Este sería un ejemplo de objeto de dominio de la aplicación
  * Con @Id Spring Data ya reconoce que campo será tomado como id del objeto
+ * Con @Version Spring Data lleva la versión de la fila, que usamos para los ETag.
+ * No forma parte del JSON (@JsonIgnore), el cliente la ve solo en la cabecera ETag
+ * amount va en céntimos (ver Cents), en el JSON se sigue viendo como 123.45
  */
-record CashCard(@Id Long id, Double amount, String owner) {
-    
+record CashCard(@Id Long id,
+        @JsonSerialize(using = Cents.Serializer.class) @JsonDeserialize(using = Cents.Deserializer.class) long amount,
+        String owner, @Version @JsonIgnore Long version) {
+
+    /** Spring Data tiene que usar siempre el constructor completo al leer de la BBDD */
+    @PersistenceCreator
+    CashCard {
+    }
+
+    /** Constructor para tarjetas sin versión conocida, p.ej. las que llegan en una petición */
+    CashCard(Long id, long amount, String owner) {
+        this(id, amount, owner, null);
+    }
 }
@@ -0,0 +1,72 @@
+package com.example.cashcard;
+
+import java.io.IOException;
+import java.security.Principal;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Aplica CashCardRateLimiter a /cashcards. Va en la cadena de SecurityConfig detras de la
+ * autorización, asi ya se sabe el propietario y las peticiones sin credenciales no gastan
+ * su cupo. Primero el bucket del propietario y despues el limite global; si alguno no
+ * deja pasar responde 429 con Retry-After (en segundos, redondeado hacia arriba).
+ * En GET /cashcards/export el hueco global se suelta al pasar a escribir en otro hilo.
+ */
+class CashCardAdmissionFilter extends OncePerRequestFilter {
+
+    private static final String CONCURRENCY_RETRY_AFTER = "1";
+
+    private final CashCardRateLimiter rateLimiter;
+
+    CashCardAdmissionFilter(CashCardRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().startsWith(request.getContextPath() + "/cashcards");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        Principal principal = request.getUserPrincipal();
+        if (principal != null) {
+            long wait = rateLimiter.tryAcquire(principal.getName());
+            if (wait > 0) {
+                reject(response, String.valueOf(Math.max(1, (wait + TimeUnit.SECONDS.toNanos(1) - 1)
+                        / TimeUnit.SECONDS.toNanos(1))));
+                return;
+            }
+        }
+        boolean entered;
+        try {
+            entered = rateLimiter.enter();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            entered = false;
+        }
+        if (!entered) {
+            reject(response, CONCURRENCY_RETRY_AFTER);
+            return;
+        }
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            rateLimiter.release();
+        }
+    }
+
+    private static void reject(HttpServletResponse response, String retryAfterSeconds) {
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, retryAfterSeconds);
+    }
+}
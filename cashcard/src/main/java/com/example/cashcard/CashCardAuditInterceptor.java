@@ -0,0 +1,91 @@
+package com.example.cashcard;
+
+import java.security.Principal;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Log de auditoria de /cashcards: una linea estructurada por petición con el
+ * propietario, la tarjeta, la operación, la latencia y el status.
+ *
+ * Se escribe en el logger cashcard.audit, que en logback-spring.xml va a un
+ * AsyncAppender acotado que nunca bloquea: el hilo de la petición solo encola el
+ * evento, y si la cola esta llena el evento se descarta.
+ * Las escrituras se registran siempre; las lecturas solo en la proporción
+ * cashcard.audit.read-sample-rate (entre 0 y 1).
+ */
+@Component
+class CashCardAuditInterceptor implements HandlerInterceptor {
+
+    static final String AUDIT_LOGGER = "cashcard.audit";
+
+    private static final Logger audit = LoggerFactory.getLogger(AUDIT_LOGGER);
+    private static final String START_ATTRIBUTE = CashCardAuditInterceptor.class.getName() + ".start";
+
+    private final double readSampleRate;
+
+    CashCardAuditInterceptor(@Value("${cashcard.audit.read-sample-rate:1.0}") double readSampleRate) {
+        this.readSampleRate = readSampleRate;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (audit.isInfoEnabled() && sampled(request)) {
+            request.setAttribute(START_ATTRIBUTE, System.nanoTime());
+        }
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+            Exception ex) {
+        Object start = request.getAttribute(START_ATTRIBUTE);
+        if (start == null) {
+            return;
+        }
+        long latencyMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - (Long) start);
+        Principal principal = request.getUserPrincipal();
+        audit.atInfo()
+                .setMessage("cashcard request")
+                .addKeyValue("owner", principal != null ? principal.getName() : null)
+                .addKeyValue("cardId", cardId(request))
+                .addKeyValue("operation", handler instanceof HandlerMethod method ? method.getMethod().getName() : null)
+                .addKeyValue("method", request.getMethod())
+                .addKeyValue("uri", request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE))
+                .addKeyValue("status", response.getStatus())
+                .addKeyValue("latencyMicros", latencyMicros)
+                .log();
+    }
+
+    private boolean sampled(HttpServletRequest request) {
+        if (!HttpMethod.GET.matches(request.getMethod())) {
+            return true;
+        }
+        return readSampleRate >= 1.0 || ThreadLocalRandom.current().nextDouble() < readSampleRate;
+    }
+
+    /** El id de la tarjeta sale de la plantilla de la URI (/cashcards/{requestedId} o /cashcards/{id}) */
+    private static String cardId(HttpServletRequest request) {
+        if (request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE) instanceof Map<?, ?> variables) {
+            Object id = variables.get("requestedId");
+            if (id == null) {
+                id = variables.get("id");
+            }
+            return id != null ? id.toString() : null;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.cashcard;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.example.cashcard.CashCardWriteService.BalanceResult;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Agrupa los cargos y abonos concurrentes sobre una misma tarjeta.
+ *
+ * Con cashcard.balance.coalesce-window a 0 (por defecto) cada delta es su propio UPDATE
+ * atómico. Con una ventana, el primer delta que llega para una tarjeta abre un grupo y
+ * espera la ventana; los que llegan mientras tanto se suman al grupo, y al cerrar se
+ * aplican todos en una transacción con una sola escritura (CashCardWriteService.addAllToBalance).
+ * Cada petición sigue recibiendo su propio resultado. Una tarjeta muy disputada pasa asi
+ * de un bloqueo de fila por petición a uno por ventana, a cambio de hasta una ventana de latencia.
+ * Un grupo no pasa de coalesce-max-batch deltas; el tamaño de los grupos se publica en
+ * cashcard.balance.coalesced.batch.size.
+ */
+@Component
+class CashCardBalanceCoalescer {
+
+    private record Key(Long id, String owner) {
+    }
+
+    private static final class Batch {
+        final List<Long> deltas = new ArrayList<>();
+        final List<CompletableFuture<BalanceResult>> results = new ArrayList<>();
+        boolean closed;
+    }
+
+    private final CashCardWriteService writeService;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final DistributionSummary batchSizes;
+    private final ConcurrentHashMap<Key, Batch> openBatches = new ConcurrentHashMap<>();
+
+    CashCardBalanceCoalescer(CashCardWriteService writeService,
+            @Value("${cashcard.balance.coalesce-window:0ms}") Duration window,
+            @Value("${cashcard.balance.coalesce-max-batch:100}") int maxBatchSize, MeterRegistry meterRegistry) {
+        this.writeService = writeService;
+        this.windowNanos = window.toNanos();
+        this.maxBatchSize = maxBatchSize;
+        this.batchSizes = DistributionSummary.builder("cashcard.balance.coalesced.batch.size")
+                .description("Deltas de saldo aplicados juntos en una sola escritura")
+                .register(meterRegistry);
+    }
+
+    BalanceResult addToBalance(Long id, String owner, long delta) {
+        if (windowNanos == 0) {
+            return writeService.addToBalance(id, owner, delta);
+        }
+        Key key = new Key(id, owner);
+        CompletableFuture<BalanceResult> result = new CompletableFuture<>();
+        while (true) {
+            Batch created = new Batch();
+            Batch batch = openBatches.putIfAbsent(key, created);
+            boolean leader = batch == null;
+            if (leader) {
+                batch = created;
+            }
+            synchronized (batch) {
+                if (batch.closed || batch.deltas.size() >= maxBatchSize) {
+                    // Lleno o cerrándose: que el siguiente delta abra otro grupo
+                    openBatches.remove(key, batch);
+                    continue;
+                }
+                batch.deltas.add(delta);
+                batch.results.add(result);
+            }
+            if (leader) {
+                LockSupport.parkNanos(windowNanos);
+                flush(key, batch);
+            }
+            return await(result);
+        }
+    }
+
+    private void flush(Key key, Batch batch) {
+        openBatches.remove(key, batch);
+        List<Long> deltas;
+        List<CompletableFuture<BalanceResult>> results;
+        synchronized (batch) {
+            batch.closed = true;
+            deltas = List.copyOf(batch.deltas);
+            results = List.copyOf(batch.results);
+        }
+        batchSizes.record(deltas.size());
+        try {
+            List<BalanceResult> applied = deltas.size() == 1
+                    ? List.of(writeService.addToBalance(key.id(), key.owner(), deltas.get(0)))
+                    : writeService.addAllToBalance(key.id(), key.owner(), deltas);
+            for (int i = 0; i < results.size(); i++) {
+                results.get(i).complete(applied.get(i));
+            }
+        } catch (RuntimeException e) {
+            results.forEach(result -> result.completeExceptionally(e));
+        }
+    }
+
+    private static BalanceResult await(CompletableFuture<BalanceResult> result) {
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.example.cashcard;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+
+/**
+ * Cuerpo de PATCH /cashcards/{id}/balance: delta positivo es un abono y negativo un cargo.
+ * Llega como decimal en el JSON y se usa en céntimos, igual que amount en CashCard.
+ */
+record CashCardBalanceDelta(@JsonDeserialize(using = Cents.Deserializer.class) Long delta) {
+}
@@ -0,0 +1,31 @@
+package com.example.cashcard;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+
+/**
+ * Una operación dentro de una petición a /cashcards/batch.
+ * create solo necesita amount, update necesita id y amount, y delete solo id.
+ * El propietario nunca viene en la petición, siempre es el usuario autenticado.
+ * amount llega como decimal en el JSON y se guarda en céntimos, igual que en CashCard.
+ */
+record CashCardBatchOperation(Type op, Long id,
+        @JsonDeserialize(using = Cents.Deserializer.class) Long amount) {
+
+    enum Type {
+        @JsonProperty("create") CREATE,
+        @JsonProperty("update") UPDATE,
+        @JsonProperty("delete") DELETE
+    }
+
+    boolean isValid() {
+        if (op == null) {
+            return false;
+        }
+        return switch (op) {
+            case CREATE -> amount != null;
+            case UPDATE -> id != null && amount != null;
+            case DELETE -> id != null;
+        };
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.cashcard;
+
+/**
+ * Resultado de cada operación del batch, en el mismo orden en el que llegaron.
+ * status usa los mismos códigos HTTP que los endpoints de una sola tarjeta:
+ * 201 creada, 204 actualizada o borrada, 404 no existe o no es del usuario,
+ * 400 operación mal formada. Si una operación ni siquiera se puede leer, su resultado
+ * es un 400 sin op ni id, es el último y las que venían detrás no se ejecutan.
+ */
+record CashCardBatchResult(int index, CashCardBatchOperation.Type op, Long id, int status) {
+}
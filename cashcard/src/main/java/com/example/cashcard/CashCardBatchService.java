@@ -0,0 +1,87 @@
+package com.example.cashcard;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+/**
+ * Ejecuta las operaciones de /cashcards/batch.
+ *
+ * Las operaciones se leen poco a poco y se agrupan en bloques (chunk-size) que ejecuta
+ * el CashCardBatchWriter del motor: con JDBC cada bloque es una transacción con
+ * sentencias batch (JdbcCashCardBatchWriter), con el motor en memoria se aplican una a
+ * una (InMemoryCashCardBatchWriter). Al acabar cada bloque se invalidan de la cache las
+ * tarjetas que ha modificado o borrado.
+ */
+@Service
+class CashCardBatchService {
+
+    private final CashCardBatchWriter batchWriter;
+    private final CashCardCache cashCardCache;
+    private final int chunkSize;
+
+    CashCardBatchService(CashCardBatchWriter batchWriter, CashCardCache cashCardCache,
+            @Value("${cashcard.batch.chunk-size:500}") int chunkSize) {
+        this.batchWriter = batchWriter;
+        this.cashCardCache = cashCardCache;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Si una operación no se puede leer (JSON mal formado o un valor que no encaja) se
+     * ejecuta lo leído hasta ese momento y se para: los bloques anteriores ya están
+     * confirmados, asi que se devuelven sus resultados y uno más con 400 para la operación
+     * que ha fallado. Lo que venga detrás no se ejecuta
+     */
+    List<CashCardBatchResult> execute(String owner, Iterator<CashCardBatchOperation> operations) {
+        List<CashCardBatchResult> results = new ArrayList<>();
+        List<CashCardBatchOperation> chunk = new ArrayList<>(chunkSize);
+        int index = 0;
+        boolean malformed = false;
+        while (true) {
+            CashCardBatchOperation operation;
+            try {
+                if (!operations.hasNext()) {
+                    break;
+                }
+                operation = operations.next();
+            } catch (RuntimeException e) {
+                // MappingIterator envuelve los errores de lectura en excepciones no comprobadas
+                if (!(e.getCause() instanceof JsonProcessingException)) {
+                    throw e;
+                }
+                malformed = true;
+                break;
+            }
+            chunk.add(operation);
+            if (chunk.size() == chunkSize) {
+                results.addAll(evictModified(owner, batchWriter.executeChunk(owner, chunk, index)));
+                index += chunk.size();
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            results.addAll(evictModified(owner, batchWriter.executeChunk(owner, chunk, index)));
+        }
+        if (malformed) {
+            results.add(new CashCardBatchResult(results.size(), null, null, HttpStatus.BAD_REQUEST.value()));
+        }
+        return results;
+    }
+
+    /** Una vez confirmado el bloque, invalidamos de la cache las tarjetas modificadas o borradas */
+    private List<CashCardBatchResult> evictModified(String owner, List<CashCardBatchResult> chunkResults) {
+        for (CashCardBatchResult result : chunkResults) {
+            if (result.status() == HttpStatus.NO_CONTENT.value()) {
+                cashCardCache.evict(result.id(), owner);
+            }
+        }
+        return chunkResults;
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.cashcard;
+
+import java.util.List;
+
+/**
+ * Ejecuta un bloque de operaciones de /cashcards/batch (ver CashCardBatchService).
+ * Hay una implementación por motor: JdbcCashCardBatchWriter manda sentencias batch en
+ * una transacción por bloque e InMemoryCashCardBatchWriter aplica cada operación con
+ * los metodos del motor en memoria.
+ */
+interface CashCardBatchWriter {
+
+    /**
+     * Las operaciones que no son validas devuelven 400 sin tocar nada
+     *
+     * @param firstIndex posición en la petición de la primera operación del bloque
+     */
+    List<CashCardBatchResult> executeChunk(String owner, List<CashCardBatchOperation> chunk, int firstIndex);
+}
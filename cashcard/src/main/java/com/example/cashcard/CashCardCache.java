@@ -0,0 +1,66 @@
+package com.example.cashcard;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Cache de lectura (read-through) para findByIdAndOwner.
+ *
+ * La clave es el par (id, owner), asi una tarjeta solo se devuelve a su propietario
+ * igual que en la consulta. La cache es acotada por tamaño y las entradas caducan
+ * con un TTL, que también limita cuanto puede durar un dato obsoleto si una lectura
+ * concurrente con una escritura vuelve a cargar el valor antiguo.
+ * Los aciertos, fallos y expulsiones se publican en Micrometer como cache.* con cache=cashcards.
+ */
+@Component
+class CashCardCache {
+
+    record Key(Long id, String owner) {
+    }
+
+    private final Cache<Key, CashCard> cache;
+    private final List<CashCardCacheInvalidationHook> invalidationHooks;
+
+    CashCardCache(MeterRegistry meterRegistry, List<CashCardCacheInvalidationHook> invalidationHooks,
+            @Value("${cashcard.cache.cards.max-size:10000}") long maxSize,
+            @Value("${cashcard.cache.cards.ttl:10m}") Duration ttl) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        this.invalidationHooks = invalidationHooks;
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "cashcards");
+    }
+
+    /**
+     * Devuelve la tarjeta cacheada o la carga con loader. Si loader devuelve null
+     * (no existe o no es del usuario) no se guarda nada
+     */
+    CashCard get(Long id, String owner, Supplier<CashCard> loader) {
+        return cache.get(new Key(id, owner), key -> loader.get());
+    }
+
+    /** Invalida la tarjeta en este nodo y avisa a los hooks para el resto de nodos */
+    void evict(Long id, String owner) {
+        evictLocal(id, owner);
+        for (CashCardCacheInvalidationHook hook : invalidationHooks) {
+            hook.onEvict(id, owner);
+        }
+    }
+
+    /** Invalida solo en este nodo, para usar al recibir una invalidación remota */
+    void evictLocal(Long id, String owner) {
+        cache.invalidate(new Key(id, owner));
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.cashcard;
+
+/**
+ * Punto de extensión para mantener coherentes las caches de varios nodos.
+ *
+ * CashCardCache avisa a todos los beans que implementen esta interfaz cada vez que
+ * invalida una tarjeta por una escritura local. Una implementación puede publicar ese
+ * evento (mensajeria, pub/sub de Redis, notificaciones de la BBDD...) y, al recibirlo en
+ * otro nodo, llamar a CashCardCache.evictLocal para que ese nodo también la olvide.
+ */
+interface CashCardCacheInvalidationHook {
+
+    void onEvict(Long id, String owner);
+}
@@ -0,0 +1,18 @@
+package com.example.cashcard;
+
+import java.time.Instant;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * Un cambio sobre cash_card tal y como queda en el outbox (cash_card_change).
+ * seq crece con cada cambio en el orden en que se insertan y lo usa el publicador;
+ * position crece en el orden en que se confirman los cambios de cada propietario y es
+ * lo que el cliente manda en GET /cashcards/changes?since= (ver CashCardChangeLog).
+ * En las bajas amount y version son null; amount va en céntimos como en CashCard.
+ */
+record CashCardChange(long seq, long position, long id, String owner, Operation operation,
+        @JsonSerialize(using = Cents.Serializer.class) Long amount, Long version, Instant changedAt) {
+
+    enum Operation { CREATE, UPDATE, DELETE }
+}
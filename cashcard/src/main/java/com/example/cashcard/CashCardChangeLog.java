@@ -0,0 +1,171 @@
+package com.example.cashcard;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Acceso JDBC al outbox cash_card_change.
+ *
+ * Las escrituras (record y recordCurrent) se tienen que llamar dentro de la transacción
+ * que modifica cash_card, asi el cambio y su fila del outbox se confirman o se deshacen
+ * juntos.
+ *
+ * Con el motor en memoria (perfil memory) eso no se cumple: el outbox sigue estando en
+ * la BBDD, pero la tarjeta va al WAL y a memoria en el momento, fuera de la transacción
+ * JDBC, y no tiene rollback. Hay dos ventanas:
+ * - si la transacción JDBC se deshace, o el proceso se cae antes del commit, el cambio de
+ *   la tarjeta se queda (y vuelve al reproducir el WAL) pero su fila del outbox no: el
+ *   cambio no se publica ni sale en el feed.
+ * - con cashcard.memory.wal-sync=false, si la maquina se cae despues del commit y antes
+ *   de que el WAL llegue a disco, el outbox tiene un cambio que la tarjeta ya no tiene: se
+ *   publica un cambio que nunca se aplicó.
+ * Quien consuma el outbox en ese modo tiene que tolerar cambios perdidos y de más, y
+ * reconciliar contra el estado de la tarjeta (p.ej. con /cashcards/export).
+ *
+ * El feed (findByOwnerSince) no va por seq: la identidad se asigna al insertar y dos
+ * transacciones pueden confirmarse en otro orden, con lo que un cliente que ya ha visto
+ * un seq podría saltarse uno menor confirmado despues. Cada escritura reserva antes su
+ * position en el contador del propietario (cash_card_change_position), cuya fila queda
+ * bloqueada hasta el commit: dos transacciones del mismo propietario reservan y se
+ * confirman en el mismo orden, y un position nunca aparece por detrás de otro ya visible.
+ * El coste es que las transacciones con cambios de un mismo propietario se serializan
+ * desde su primer cambio hasta el commit, que suele ser la última sentencia.
+ */
+@Repository
+class CashCardChangeLog {
+
+    static final String INSERT_SQL = """
+            INSERT INTO cash_card_change (card_id, owner, operation, amount, version, changed_at, position)
+            VALUES (:id, :owner, :operation, :amount, :version, :changedAt, :position)""";
+
+    /** Copia el estado de la tarjeta tras el cambio, si la tarjeta no existe no inserta nada */
+    private static final String INSERT_CURRENT_SQL = """
+            INSERT INTO cash_card_change (card_id, owner, operation, amount, version, changed_at, position)
+            SELECT id, owner, :operation, amount, version, :changedAt, :position FROM cash_card
+            WHERE id = :id AND owner = :owner""";
+
+    /**
+     * Reserva n posiciones del propietario y devuelve la última. Un propietario nuevo
+     * empieza por encima de cualquier seq, que es lo que usaban como cursor los cambios
+     * anteriores a position
+     */
+    static final String RESERVE_POSITIONS_SQL = """
+            SELECT last_position FROM FINAL TABLE (
+                MERGE INTO cash_card_change_position p
+                USING (VALUES (CAST(:owner AS VARCHAR(256)), CAST(:n AS BIGINT))) AS c (owner, n)
+                ON p.owner = c.owner
+                WHEN MATCHED THEN UPDATE SET last_position = p.last_position + c.n
+                WHEN NOT MATCHED THEN INSERT (owner, last_position)
+                    VALUES (c.owner, c.n + (SELECT COALESCE(MAX(seq), 0) FROM cash_card_change)))""";
+
+    private static final String SELECT =
+            "SELECT seq, position, card_id, owner, operation, amount, version, changed_at FROM cash_card_change ";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    CashCardChangeLog(NamedParameterJdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /** @param amount null en las bajas, igual que version */
+    void record(CashCardChange.Operation operation, Long id, String owner, Long amount, Long version) {
+        jdbcTemplate.update(INSERT_SQL, params(operation, id, owner)
+                .addValue("amount", amount)
+                .addValue("version", version)
+                .addValue("position", reservePositions(owner, 1)));
+    }
+
+    /** Para los batch: un cambio por tarjeta leyendo importe y versión de cash_card */
+    void recordCurrent(CashCardChange.Operation operation, String owner, List<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        long first = reservePositions(owner, ids.size()) - ids.size() + 1;
+        SqlParameterSource[] batchArgs = new SqlParameterSource[ids.size()];
+        for (int k = 0; k < batchArgs.length; k++) {
+            batchArgs[k] = params(operation, ids.get(k), owner).addValue("position", first + k);
+        }
+        jdbcTemplate.batchUpdate(INSERT_CURRENT_SQL, batchArgs);
+    }
+
+    /** Para los batch de bajas, donde ya no queda fila que copiar */
+    void recordDeleted(String owner, List<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        long first = reservePositions(owner, ids.size()) - ids.size() + 1;
+        SqlParameterSource[] batchArgs = new SqlParameterSource[ids.size()];
+        for (int k = 0; k < batchArgs.length; k++) {
+            batchArgs[k] = params(CashCardChange.Operation.DELETE, ids.get(k), owner)
+                    .addValue("amount", null)
+                    .addValue("version", null)
+                    .addValue("position", first + k);
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, batchArgs);
+    }
+
+    /** Cambios confirmados del propietario posteriores a la posición since, en orden */
+    List<CashCardChange> findByOwnerSince(String owner, long since, int limit) {
+        return jdbcTemplate.query(SELECT + "WHERE owner = :owner AND position > :since ORDER BY position LIMIT :limit",
+                new MapSqlParameterSource("owner", owner).addValue("since", since).addValue("limit", limit),
+                CashCardChangeLog::toChange);
+    }
+
+    /**
+     * Los cambios más antiguos sin publicar, bloqueados hasta el fin de la transacción para
+     * que dos instancias no publiquen el mismo bloque
+     */
+    List<CashCardChange> lockUnpublished(int limit) {
+        return jdbcTemplate.query(SELECT + "WHERE published = FALSE ORDER BY seq LIMIT :limit FOR UPDATE",
+                new MapSqlParameterSource("limit", limit), CashCardChangeLog::toChange);
+    }
+
+    void markPublished(List<CashCardChange> changes) {
+        List<Long> seqs = changes.stream().map(CashCardChange::seq).toList();
+        jdbcTemplate.update("UPDATE cash_card_change SET published = TRUE WHERE seq IN (:seqs)",
+                new MapSqlParameterSource("seqs", seqs));
+    }
+
+    /** Borra los cambios ya publicados anteriores a before; el feed deja de verlos */
+    int purgePublishedBefore(Instant before) {
+        return jdbcTemplate.update("DELETE FROM cash_card_change WHERE published = TRUE AND changed_at < :before",
+                new MapSqlParameterSource("before", Timestamp.from(before)));
+    }
+
+    /**
+     * Ultima de las n posiciones reservadas; deja bloqueado el contador del propietario
+     * hasta el fin de la transacción
+     */
+    private long reservePositions(String owner, int n) {
+        MapSqlParameterSource params = new MapSqlParameterSource("owner", owner).addValue("n", n);
+        try {
+            return jdbcTemplate.queryForObject(RESERVE_POSITIONS_SQL, params, Long.class);
+        } catch (DuplicateKeyException e) {
+            // Otra transacción ha creado a la vez el contador de este propietario, ahora ya existe
+            return jdbcTemplate.queryForObject(RESERVE_POSITIONS_SQL, params, Long.class);
+        }
+    }
+
+    private static MapSqlParameterSource params(CashCardChange.Operation operation, Long id, String owner) {
+        return new MapSqlParameterSource()
+                .addValue("id", id)
+                .addValue("owner", owner)
+                .addValue("operation", operation.name())
+                .addValue("changedAt", Timestamp.from(Instant.now()));
+    }
+
+    private static CashCardChange toChange(ResultSet rs, int rowNum) throws SQLException {
+        return new CashCardChange(rs.getLong("seq"), rs.getLong("position"), rs.getLong("card_id"), rs.getString("owner"),
+                CashCardChange.Operation.valueOf(rs.getString("operation")), rs.getObject("amount", Long.class),
+                rs.getObject("version", Long.class), rs.getTimestamp("changed_at").toInstant());
+    }
+}
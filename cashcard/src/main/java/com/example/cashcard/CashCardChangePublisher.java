@@ -0,0 +1,96 @@
+package com.example.cashcard;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Vacia el outbox (cash_card_change) hacia el CashCardChangeSink configurado.
+ *
+ * En cada pasada coge bloques de hasta batch-size cambios sin publicar, en orden de seq,
+ * y por cada bloque: lo bloquea (FOR UPDATE), lo manda al sink y lo marca como publicado,
+ * todo en una transacción. Si el sink falla la transacción se deshace y el bloque se
+ * reintenta en la siguiente pasada (entrega al menos una vez). Sigue con otro bloque
+ * mientras los bloques salgan llenos.
+ * Los cambios publicados se borran cuando pasan de cashcard.outbox.retention.
+ * Con sharding (ShardRouter) cada shard tiene su outbox y se vacian uno detras de otro.
+ */
+@Component
+class CashCardChangePublisher {
+
+    private static final Logger log = LoggerFactory.getLogger(CashCardChangePublisher.class);
+
+    private final CashCardChangeLog changeLog;
+    private final CashCardChangeSink sink;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final Duration retention;
+    private final ShardRouter shardRouter;
+
+    CashCardChangePublisher(CashCardChangeLog changeLog, CashCardChangeSink sink,
+            TransactionTemplate transactionTemplate, @Value("${cashcard.outbox.batch-size:500}") int batchSize,
+            @Value("${cashcard.outbox.retention:7d}") Duration retention, ObjectProvider<ShardRouter> shardRouter) {
+        this.changeLog = changeLog;
+        this.sink = sink;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+        this.retention = retention;
+        this.shardRouter = shardRouter.getIfAvailable();
+    }
+
+    @Scheduled(fixedDelayString = "${cashcard.outbox.publish-interval-ms:1000}")
+    void scheduledPublish() {
+        try {
+            publishPending();
+        } catch (RuntimeException e) {
+            log.warn("Publishing cash card changes failed, will retry", e);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${cashcard.outbox.purge-interval-ms:3600000}")
+    void scheduledPurge() {
+        Instant before = Instant.now().minus(retention);
+        int purged = shardRouter == null ? changeLog.purgePublishedBefore(before)
+                : shardRouter.sumOverShards(() -> changeLog.purgePublishedBefore(before));
+        if (purged > 0) {
+            log.info("Purged {} published cash card changes", purged);
+        }
+    }
+
+    /** @return numero de cambios publicados */
+    int publishPending() {
+        return shardRouter == null ? publishPendingOnShard() : shardRouter.sumOverShards(this::publishPendingOnShard);
+    }
+
+    private int publishPendingOnShard() {
+        int published = 0;
+        int last;
+        do {
+            last = transactionTemplate.execute(status -> publishBatch());
+            published += last;
+        } while (last == batchSize);
+        return published;
+    }
+
+    private int publishBatch() {
+        List<CashCardChange> changes = changeLog.lockUnpublished(batchSize);
+        if (changes.isEmpty()) {
+            return 0;
+        }
+        try {
+            sink.publish(changes);
+        } catch (Exception e) {
+            throw new IllegalStateException("Change sink failed", e);
+        }
+        changeLog.markPublished(changes);
+        return changes.size();
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.cashcard;
+
+import java.util.List;
+
+/**
+ * Destino al que CashCardChangePublisher envía los cambios del outbox (un broker, un fichero...).
+ * Se elige con cashcard.outbox.sink; si publish lanza una excepción el bloque no se marca
+ * como publicado y se reintenta en la siguiente pasada, asi que un cambio puede llegar
+ * más de una vez y el destino tiene que tolerar duplicados (seq sirve para descartarlos).
+ */
+interface CashCardChangeSink {
+
+    void publish(List<CashCardChange> changes) throws Exception;
+}
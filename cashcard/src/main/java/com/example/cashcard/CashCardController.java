@@ -1,43 +1,90 @@
 package com.example.cashcard;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.security.Principal;
 import java.util.List;
 //import java.util.Optional;
 
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.util.UriComponentsBuilder;
 
-//import io.micrometer.core.annotation.TimedSet;
-
-//import io.micrometer.core.ipc.http.HttpSender.Response;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
-//import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 
 //import jakarta.websocket.server.PathParam;
 
 @RestController
 @RequestMapping("/cashcards")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class CashCardController {
 
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    static final MediaType TEXT_CSV = new MediaType("text", "csv");
+    static final int MAX_CHANGES_PAGE_SIZE = 1000;
+    static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    static final String IDEMPOTENT_REPLAYED_HEADER = "Idempotent-Replayed";
+    static final String APPLICATION_SMILE_VALUE = "application/x-jackson-smile";
+
     // Inyectamos el repositorio
     private final CashCardRepository cashCardRepository;
+    private final CashCardWriteService cashCardWriteService;
+    private final CashCardSummaryRepository cashCardSummaryRepository;
+    private final CashCardBatchService cashCardBatchService;
+    private final CashCardExporter cashCardExporter;
+    private final CashCardCache cashCardCache;
+    private final CashCardChangeLog cashCardChangeLog;
+    private final CashCardBalanceCoalescer cashCardBalanceCoalescer;
+    private final CashCardIdempotency cashCardIdempotency;
+    private final ObjectMapper cborMapper;
+    private final ObjectMapper smileMapper;
+    private final ObjectMapper objectMapper;
 
-    private CashCardController(CashCardRepository cashCardRepository) {
+    private CashCardController(CashCardRepository cashCardRepository, CashCardWriteService cashCardWriteService,
+            CashCardSummaryRepository cashCardSummaryRepository, CashCardBatchService cashCardBatchService,
+            CashCardExporter cashCardExporter, CashCardCache cashCardCache, CashCardChangeLog cashCardChangeLog,
+            CashCardBalanceCoalescer cashCardBalanceCoalescer, CashCardIdempotency cashCardIdempotency,
+            ObjectMapper objectMapper, MappingJackson2CborHttpMessageConverter cborConverter,
+            MappingJackson2SmileHttpMessageConverter smileConverter) {
         this.cashCardRepository = cashCardRepository;
+        this.cashCardWriteService = cashCardWriteService;
+        this.cashCardSummaryRepository = cashCardSummaryRepository;
+        this.cashCardBatchService = cashCardBatchService;
+        this.cashCardExporter = cashCardExporter;
+        this.cashCardCache = cashCardCache;
+        this.cashCardChangeLog = cashCardChangeLog;
+        this.cashCardBalanceCoalescer = cashCardBalanceCoalescer;
+        this.cashCardIdempotency = cashCardIdempotency;
+        this.cborMapper = cborConverter.getObjectMapper();
+        this.smileMapper = smileConverter.getObjectMapper();
+        this.objectMapper = objectMapper;
     }
 
     // Handler method for GET requests that match
@@ -77,8 +124,10 @@ public class CashCardController {
          */  
         CashCard cashCard = findCashCard(requestedId, principal);
         //Queda ademas implementado que si el usuario no es propietario, no la puede obtener
+        //Con el ETag, si el cliente manda If-None-Match con la misma versión Spring
+        //contesta 304 sin serializar el cuerpo
         if (cashCard != null) {
-            return ResponseEntity.ok(cashCard);
+            return ResponseEntity.ok().eTag(CashCardETags.of(cashCard)).body(cashCard);
         } else {
             return ResponseEntity.notFound().build();
         }
@@ -103,32 +152,116 @@ public class CashCardController {
      * endPoint que acepta GET para listas
       */
     @GetMapping
-    private ResponseEntity<List<CashCard>> findAll(Pageable pageable, Principal principal) {
+    private ResponseEntity<List<CashCard>> findAll(Pageable pageable, Principal principal,
+            @RequestParam(required = false) String after) {
+        if (after != null) {
+            return findAllAfter(after, pageable.getPageSize(), principal);
+        }
         Page<CashCard> page = cashCardRepository.findByOwner(principal.getName(),
                 PageRequest.of(pageable.getPageNumber(), pageable.getPageSize(),pageable.getSortOr(Sort.by(Sort.Direction.ASC,"amount"))));
         
-        return ResponseEntity.ok(page.getContent());
+        return ResponseEntity.ok().eTag(CashCardETags.of(page.getContent())).body(page.getContent());
+
+    }
+
+    /**
+     * Modo keyset (cursor) de GET /cashcards: se activa con el parametro after.
+     * after vacio pide la primera página, y cada respuesta trae en la cabecera
+     * X-Next-Cursor el token para pedir la siguiente (si la hay).
+     * El orden es siempre por amount y luego id, ascendente, y la latencia no depende
+     * de lo profunda que sea la página porque no hay OFFSET
+     */
+    private ResponseEntity<List<CashCard>> findAllAfter(String after, int size, Principal principal) {
+        CashCardCursor cursor = null;
+        if (!after.isEmpty()) {
+            cursor = CashCardCursor.decode(after);
+            if (cursor == null) {
+                return ResponseEntity.badRequest().build();
+            }
+        }
+        Slice<CashCard> slice = cashCardRepository.findSliceByOwner(principal.getName(), cursor, size);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().eTag(CashCardETags.of(slice.getContent()));
+        if (slice.hasNext()) {
+            List<CashCard> content = slice.getContent();
+            response.header(NEXT_CURSOR_HEADER, CashCardCursor.of(content.get(content.size() - 1)).encode());
+        }
+        return response.body(slice.getContent());
+    }
 
+    /**
+     * Resumen de las tarjetas del usuario (numero, total, minimo y maximo).
+     * Se lee de la tabla de resumen que mantienen las escrituras, es una sola fila
+     * por propietario y no depende de cuantas tarjetas tenga
+     */
+    @GetMapping("/summary")
+    private ResponseEntity<CashCardSummary> summary(Principal principal) {
+        return ResponseEntity.ok(cashCardSummaryRepository.findByOwner(principal.getName()));
+    }
+
+    /**
+     * Feed de cambios del usuario para sincronizar sin recorrer todas sus tarjetas:
+     * devuelve hasta size cambios con position mayor que since, en orden. El cliente guarda
+     * el position del último cambio y lo manda como since en la siguiente petición; una lista
+     * vacia es que está al día. Los cambios publicados se purgan tras cashcard.outbox.retention
+     */
+    @GetMapping("/changes")
+    private ResponseEntity<List<CashCardChange>> changes(@RequestParam(defaultValue = "0") long since,
+            @RequestParam(defaultValue = "100") int size, Principal principal) {
+        if (since < 0 || size < 1 || size > MAX_CHANGES_PAGE_SIZE) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(cashCardChangeLog.findByOwnerSince(principal.getName(), since, size));
+    }
+
+    /**
+     * Exporta todas las tarjetas del usuario en streaming, en NDJSON (por defecto)
+     * o en CSV con format=csv. El cuerpo se escribe con StreamingResponseBody según se
+     * leen las filas, sin paginar y sin cargar la lista entera en memoria.
+     * Al ser un path literal, Spring lo prefiere a /{requestedId}
+     */
+    @GetMapping("/export")
+    private ResponseEntity<StreamingResponseBody> export(@RequestParam(defaultValue = "ndjson") String format,
+            Principal principal) {
+        String owner = principal.getName();
+        if (format.equals("ndjson")) {
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_NDJSON)
+                    .body(out -> cashCardExporter.writeNdjson(owner, out));
+        }
+        if (format.equals("csv")) {
+            return ResponseEntity.ok()
+                    .contentType(TEXT_CSV)
+                    .body(out -> cashCardExporter.writeCsv(owner, out));
+        }
+        return ResponseEntity.badRequest().build();
     }
 
     /**
      * Handler method for POST request
      * 
+     * Con la cabecera Idempotency-Key los reintentos con la misma clave no crean otra
+     * tarjeta: devuelven el mismo 201 (con Idempotent-Replayed: true) sin tocar cash_card,
+     * o 422 si la clave se usó con otro importe (ver CashCardIdempotency)
+     * 
      * @param newCashCardRequest
      * @param ucb
      * @return
      */
     @PostMapping
-    private ResponseEntity<Void> createCashCard(@RequestBody CashCard newCashCardRequest, UriComponentsBuilder ucb, Principal principal) {
+    private ResponseEntity<Void> createCashCard(@RequestBody CashCard newCashCardRequest, UriComponentsBuilder ucb, Principal principal,
+            @RequestHeader(name = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
+        if (idempotencyKey != null) {
+            return createIdempotently(newCashCardRequest.amount(), idempotencyKey, ucb, principal);
+        }
         // TODO: process POST request
         /**
          * savedCashCard tendrá ahora el id generado por la base de datos gracias al
          * metodo save,
          * que recibia una CashCard por parametro con el id igual a null
          */
-        CashCard cashCardWithOwner = new CashCard(null, newCashCardRequest.amount(), principal.getName());
         //Ahora si guardamos la cashcard con el usuario propietario(que esta autenticado)
-        CashCard savedCashCard = cashCardRepository.save(cashCardWithOwner);
+        //El servicio la guarda y actualiza el resumen del propietario en la misma transacción
+        CashCard savedCashCard = cashCardWriteService.create(principal.getName(), newCashCardRequest.amount());
 
         /** Ahora puedo construir la URI del recurso guardado */
         URI locationOfNewCashCard = ucb.path("cashcards/{id}").// plantilla con el placeholder que se cambiara en
@@ -144,6 +277,51 @@ public class CashCardController {
         return ResponseEntity.created(locationOfNewCashCard).build();
     }
 
+    private ResponseEntity<Void> createIdempotently(long amount, String idempotencyKey, UriComponentsBuilder ucb,
+            Principal principal) {
+        if (idempotencyKey.isBlank() || idempotencyKey.length() > CashCardIdempotency.MAX_KEY_LENGTH) {
+            return ResponseEntity.badRequest().build();
+        }
+        CashCardIdempotency.Result result = cashCardIdempotency.create(principal.getName(), amount, idempotencyKey);
+        if (result.status() == CashCardIdempotency.Status.MISMATCH) {
+            return ResponseEntity.unprocessableEntity().build();
+        }
+        URI location = ucb.path("cashcards/{id}").buildAndExpand(result.cardId()).toUri();
+        ResponseEntity.BodyBuilder created = ResponseEntity.created(location);
+        if (result.status() == CashCardIdempotency.Status.REPLAYED) {
+            created.header(IDEMPOTENT_REPLAYED_HEADER, "true");
+        }
+        return created.build();
+    }
+
+    /**
+     * Endpoint para altas, modificaciones y bajas en bloque.
+     * Acepta un array JSON o un stream NDJSON (una operación por linea), p.ej.
+     * {"op":"create","amount":10.0}
+     * {"op":"update","id":99,"amount":5.0}
+     * {"op":"delete","id":100}
+     * Las operaciones se van leyendo del cuerpo mientras se ejecutan, sin cargar
+     * toda la petición en memoria, y se devuelve un resultado por operación.
+     * En CBOR o Smile el cuerpo es un array o una secuencia de valores, igual que en JSON.
+     * Una operación que no se puede leer corta el batch (ver CashCardBatchService.execute).
+     */
+    @PostMapping(path = "/batch", consumes = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE,
+            MediaType.APPLICATION_CBOR_VALUE, APPLICATION_SMILE_VALUE })
+    private ResponseEntity<List<CashCardBatchResult>> batch(InputStream body, Principal principal,
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType) throws IOException {
+        ObjectMapper reader = MediaType.APPLICATION_CBOR.isCompatibleWith(contentType) ? cborMapper
+                : MediaType.valueOf(APPLICATION_SMILE_VALUE).isCompatibleWith(contentType) ? smileMapper
+                : objectMapper;
+        try (MappingIterator<CashCardBatchOperation> operations = reader
+                .readerFor(CashCardBatchOperation.class)
+                .readValues(body)) {
+            return ResponseEntity.ok(cashCardBatchService.execute(principal.getName(), operations));
+        } catch (JsonProcessingException e) {
+            // El cuerpo no se puede leer ni siquiera al principio, no se ha ejecutado nada
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     /**PUT request method handler 
      * Con los parametros correspondientes, requestedId y principal, nos aseguramos
      * que solo el usuario autorizado y autenticado(principal es una representación
@@ -155,17 +333,53 @@ public class CashCardController {
      * un recurso en la bbdd, estos ultimos se manejan con if en REST
     */
     @PutMapping("/{requestedId}")
-    private ResponseEntity<Void> putCashCard(@PathVariable Long requestedId, @RequestBody CashCard cashCardUpdate, Principal principal){
-        System.out.println("Usuario autenticado: " + principal.getName());
-        CashCard cashCardToBeUpdated = findCashCard(requestedId, principal);
-        if(cashCardToBeUpdated != null){
-            CashCard updatedCashCard = new CashCard(cashCardToBeUpdated.id(), cashCardUpdate.amount(), principal.getName());
-            cashCardRepository.save(updatedCashCard);
-            return ResponseEntity.noContent().build();
+    private ResponseEntity<Void> putCashCard(@PathVariable Long requestedId, @RequestBody CashCard cashCardUpdate, Principal principal,
+            @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch){
+        // Sin If-Match (o con If-Match: *) la modificación es incondicional. Con un ETag
+        // solo se modifica si coincide la versión, y si no contestamos 412.
+        // Un ETag mal formado nunca coincide con ninguna versión
+        Long expectedVersion = null;
+        if (ifMatch != null && !ifMatch.trim().equals("*")) {
+            Long version = CashCardETags.parseVersion(ifMatch);
+            expectedVersion = version != null ? version : -1L;
+        }
+        CashCardWriteService.UpdateResult result = cashCardWriteService.update(requestedId, principal.getName(),
+                cashCardUpdate.amount(), expectedVersion);
+        switch (result.status()) {
+            case UPDATED:
+                cashCardCache.evict(requestedId, principal.getName());
+                return ResponseEntity.noContent().eTag(CashCardETags.of(result.cashCard())).build();
+            case VERSION_MISMATCH:
+                return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+            default:
+                return ResponseEntity.notFound().build();
         }
         
-        return ResponseEntity.notFound().build();
-        
+    }
+
+    /**
+     * Cargo o abono sobre el saldo, p.ej. {"delta": -12.50}, sin tener que leer la tarjeta
+     * y mandarla entera con PUT: el servidor suma el delta de forma atómica, asi dos clientes
+     * que cargan a la vez la misma tarjeta no se pisan. Si el saldo quedaría negativo no se
+     * aplica y contestamos 409. Devuelve la tarjeta resultante con su ETag
+     */
+    @PatchMapping("/{requestedId}/balance")
+    private ResponseEntity<CashCard> patchBalance(@PathVariable Long requestedId,
+            @RequestBody CashCardBalanceDelta balanceDelta, Principal principal) {
+        if (balanceDelta.delta() == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        CashCardWriteService.BalanceResult result = cashCardBalanceCoalescer.addToBalance(requestedId,
+                principal.getName(), balanceDelta.delta());
+        switch (result.status()) {
+            case APPLIED:
+                cashCardCache.evict(requestedId, principal.getName());
+                return ResponseEntity.ok().eTag(CashCardETags.of(result.cashCard())).body(result.cashCard());
+            case INSUFFICIENT_FUNDS:
+                return ResponseEntity.status(HttpStatus.CONFLICT).build();
+            default:
+                return ResponseEntity.notFound().build();
+        }
     }
 
     /**
@@ -177,9 +391,9 @@ public class CashCardController {
      */
     @DeleteMapping("/{id}")
     private ResponseEntity<Void> deleteCashCard(@PathVariable Long id, Principal principal) {
-        // Si no existe el cashcard, forzando comprobación de pertenencia al usuario
-        if (cashCardRepository.existsByIdAndOwner(id, principal.getName())) {
-            cashCardRepository.deleteById(id);
+        // El DELETE ya fuerza la comprobación de pertenencia al usuario, si no borra nada es un 404
+        if (cashCardWriteService.delete(id, principal.getName())) {
+            cashCardCache.evict(id, principal.getName());
             return ResponseEntity.noContent().build();
         } else {
 
@@ -192,12 +406,14 @@ public class CashCardController {
 
     /**
      * Con este metodo refactorizamos código y simplificamos 
+     * Ahora pasa por la cache de lectura, y solo va a la BBDD si la tarjeta no está cacheada
      * @param requestedId
      * @param principal
      * @return
      */
     private CashCard findCashCard(Long requestedId,Principal principal){
-        return cashCardRepository.findByIdAndOwner(requestedId, principal.getName());
+        String owner = principal.getName();
+        return cashCardCache.get(requestedId, owner, () -> cashCardRepository.findByIdAndOwner(requestedId, owner));
     }
 
     
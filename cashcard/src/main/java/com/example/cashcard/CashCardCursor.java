@@ -0,0 +1,41 @@
+package com.example.cashcard;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Cursor opaco para la paginación por keyset (seek) de GET /cashcards.
+ * Guarda la clave de ordenación (amount, id) de la última tarjeta devuelta, asi la
+ * siguiente página empieza justo después sin OFFSET ni COUNT(*).
+ * Para el cliente es solo un token en Base64 que tiene que devolver en el parametro after.
+ */
+record CashCardCursor(long amount, Long id) {
+
+    static CashCardCursor of(CashCard cashCard) {
+        return new CashCardCursor(cashCard.amount(), cashCard.id());
+    }
+
+    String encode() {
+        String raw = amount + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Devuelve null si el token no es un cursor valido, asi el controlador
+     * puede contestar con un 400 sin usar excepciones para el flujo
+     */
+    static CashCardCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = raw.lastIndexOf(':');
+            if (separator < 0) {
+                return null;
+            }
+            return new CashCardCursor(Long.parseLong(raw.substring(0, separator)),
+                    Long.valueOf(raw.substring(separator + 1)));
+        } catch (IllegalArgumentException e) {
+            // NumberFormatException también es una IllegalArgumentException
+            return null;
+        }
+    }
+}
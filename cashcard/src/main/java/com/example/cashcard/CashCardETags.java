@@ -0,0 +1,55 @@
+package com.example.cashcard;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * ETags fuertes para las respuestas de /cashcards.
+ * Para una tarjeta el ETag es su versión de fila; para una lista es un hash de los
+ * pares (id, versión) de las tarjetas que contiene, asi cambia si cambia cualquier
+ * tarjeta, el orden o el numero de tarjetas de la página.
+ */
+final class CashCardETags {
+
+    private CashCardETags() {
+    }
+
+    static String of(CashCard cashCard) {
+        return "\"" + cashCard.version() + "\"";
+    }
+
+    static String of(List<CashCard> cashCards) {
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            ByteBuffer buffer = ByteBuffer.allocate(2 * Long.BYTES);
+            for (CashCard cashCard : cashCards) {
+                buffer.clear();
+                buffer.putLong(cashCard.id()).putLong(cashCard.version());
+                sha256.update(buffer.array());
+            }
+            // Con 16 bytes del hash es suficiente para que no haya colisiones en la práctica
+            return "\"" + HexFormat.of().formatHex(sha256.digest(), 0, 16) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Extrae la versión de un If-Match. Solo admite un ETag fuerte de tarjeta ("3");
+     * un ETag débil o mal formado devuelve null y el controlador contesta 412
+     */
+    static Long parseVersion(String ifMatch) {
+        String value = ifMatch.trim();
+        if (value.length() < 3 || value.charAt(0) != '"' || value.charAt(value.length() - 1) != '"') {
+            return null;
+        }
+        try {
+            return Long.valueOf(value.substring(1, value.length() - 1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.cashcard;
+
+import java.util.function.Consumer;
+
+/**
+ * De donde lee CashCardExporter: todas las tarjetas de un propietario por (amount, id),
+ * entregadas según se leen. JdbcCashCardExportSource usa un cursor JDBC de solo avance y
+ * con el motor en memoria lo implementa InMemoryCashCardRepository.
+ */
+interface CashCardExportSource {
+
+    void forEachByOwner(String owner, Consumer<CashCard> action);
+}
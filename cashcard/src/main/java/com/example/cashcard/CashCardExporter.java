@@ -0,0 +1,74 @@
+package com.example.cashcard;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Vuelca todas las tarjetas de un propietario directamente sobre la respuesta HTTP.
+ *
+ * Cada tarjeta se escribe en cuanto la entrega CashCardExportSource (un cursor JDBC o,
+ * con el motor en memoria, su indice por propietario en bloques), asi la memoria usada
+ * no depende del numero de tarjetas.
+ */
+@Component
+class CashCardExporter {
+
+    private final CashCardExportSource exportSource;
+    private final ObjectMapper objectMapper;
+
+    CashCardExporter(CashCardExportSource exportSource, ObjectMapper objectMapper) {
+        this.exportSource = exportSource;
+        this.objectMapper = objectMapper;
+    }
+
+    /** Una tarjeta por linea en JSON (NDJSON) */
+    void writeNdjson(String owner, OutputStream out) throws IOException {
+        try (JsonGenerator generator = objectMapper.createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            exportSource.forEachByOwner(owner, cashCard -> {
+                try {
+                    objectMapper.writeValue(generator, cashCard);
+                    generator.writeRaw('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    /** CSV con cabecera id,amount,owner */
+    void writeCsv(String owner, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writer.write("id,amount,owner\n");
+        exportSource.forEachByOwner(owner, cashCard -> {
+            try {
+                writer.write(Long.toString(cashCard.id()));
+                writer.write(',');
+                writer.write(Cents.toDecimal(cashCard.amount()).toPlainString());
+                writer.write(',');
+                writer.write(csvField(cashCard.owner()));
+                writer.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        writer.flush();
+    }
+
+    private static String csvField(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
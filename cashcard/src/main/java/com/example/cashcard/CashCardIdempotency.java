@@ -0,0 +1,126 @@
+package com.example.cashcard;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * Altas con Idempotency-Key: la misma clave del mismo propietario crea una sola tarjeta.
+ *
+ * En memoria hay una cache acotada (cashcard.idempotency.cache-max-size, con TTL cache-ttl)
+ * de (propietario, clave) al futuro con el resultado del alta. La primera petición mete su
+ * futuro y hace el alta; las que llegan a la vez con la misma clave esperan ese futuro en
+ * vez de insertar, y los reintentos posteriores lo encuentran ya resuelto sin ir a la BBDD.
+ * Si la clave no está en la cache (otro nodo, reinicio, ya expiró) se busca en
+ * cash_card_idempotency_key, que se guarda en la transacción del alta y dura
+ * cashcard.idempotency.retention. Si dos nodos crean a la vez, la clave primaria de esa
+ * tabla deja pasar solo uno y el otro devuelve la tarjeta del primero.
+ * Si el alta falla se quita el futuro, asi el reintento vuelve a probar.
+ *
+ * Reutilizar una clave con otro importe es un error del cliente (MISMATCH).
+ */
+@Component
+class CashCardIdempotency {
+
+    enum Status { CREATED, REPLAYED, MISMATCH }
+
+    /** cardId es la tarjeta creada con la clave, en MISMATCH también */
+    record Result(Status status, Long cardId) {
+    }
+
+    static final int MAX_KEY_LENGTH = 255;
+
+    private static final Logger log = LoggerFactory.getLogger(CashCardIdempotency.class);
+
+    private record Key(String owner, String idempotencyKey) {
+    }
+
+    private final CashCardWriteService writeService;
+    private final CashCardIdempotencyKeys idempotencyKeys;
+    private final Cache<Key, CompletableFuture<CashCardIdempotencyKeys.Created>> inFlight;
+    private final Duration retention;
+    private final ShardRouter shardRouter;
+
+    CashCardIdempotency(CashCardWriteService writeService, CashCardIdempotencyKeys idempotencyKeys,
+            @Value("${cashcard.idempotency.cache-max-size:100000}") long cacheMaxSize,
+            @Value("${cashcard.idempotency.cache-ttl:10m}") Duration cacheTtl,
+            @Value("${cashcard.idempotency.retention:24h}") Duration retention,
+            ObjectProvider<ShardRouter> shardRouter) {
+        this.writeService = writeService;
+        this.idempotencyKeys = idempotencyKeys;
+        this.inFlight = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfterWrite(cacheTtl)
+                .build();
+        this.retention = retention;
+        this.shardRouter = shardRouter.getIfAvailable();
+    }
+
+    Result create(String owner, long amount, String idempotencyKey) {
+        Key key = new Key(owner, idempotencyKey);
+        CompletableFuture<CashCardIdempotencyKeys.Created> mine = new CompletableFuture<>();
+        CompletableFuture<CashCardIdempotencyKeys.Created> existing = inFlight.asMap().putIfAbsent(key, mine);
+        if (existing != null) {
+            return replay(await(existing), amount);
+        }
+        try {
+            CashCardIdempotencyKeys.Created created = idempotencyKeys.find(owner, idempotencyKey);
+            if (created != null) {
+                mine.complete(created);
+                return replay(created, amount);
+            }
+            try {
+                CashCard saved = writeService.create(owner, amount, idempotencyKey);
+                mine.complete(new CashCardIdempotencyKeys.Created(saved.id(), amount));
+                return new Result(Status.CREATED, saved.id());
+            } catch (DuplicateKeyException e) {
+                // Otro nodo ha confirmado la misma clave mientras tanto
+                created = idempotencyKeys.find(owner, idempotencyKey);
+                mine.complete(created);
+                return replay(created, amount);
+            }
+        } catch (RuntimeException e) {
+            inFlight.asMap().remove(key, mine);
+            mine.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${cashcard.idempotency.purge-interval-ms:3600000}")
+    void scheduledPurge() {
+        Instant before = Instant.now().minus(retention);
+        int purged = shardRouter == null ? idempotencyKeys.purgeBefore(before)
+                : shardRouter.sumOverShards(() -> idempotencyKeys.purgeBefore(before));
+        if (purged > 0) {
+            log.info("Purged {} expired idempotency keys", purged);
+        }
+    }
+
+    /** Lo que se devuelve al reintentar con una clave ya usada, también en ReactiveCashCardWriteService */
+    static Result replay(CashCardIdempotencyKeys.Created created, long amount) {
+        return new Result(created.amount() == amount ? Status.REPLAYED : Status.MISMATCH, created.cardId());
+    }
+
+    private static CashCardIdempotencyKeys.Created await(CompletableFuture<CashCardIdempotencyKeys.Created> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
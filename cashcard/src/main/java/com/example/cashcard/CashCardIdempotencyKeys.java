@@ -0,0 +1,55 @@
+package com.example.cashcard;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Acceso JDBC a cash_card_idempotency_key.
+ *
+ * record se llama dentro de la transacción que crea la tarjeta: si otra petición con la
+ * misma clave ya la ha confirmado, la clave primaria (owner, idempotency_key) hace fallar
+ * el INSERT con DuplicateKeyException y la tarjeta nueva se deshace con el resto.
+ */
+@Repository
+class CashCardIdempotencyKeys {
+
+    /** Lo que se creó con una clave: la tarjeta y el importe que se pidió */
+    record Created(Long cardId, long amount) {
+    }
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    CashCardIdempotencyKeys(NamedParameterJdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    void record(String owner, String key, Long cardId, long amount) {
+        jdbcTemplate.update("""
+                INSERT INTO cash_card_idempotency_key (owner, idempotency_key, card_id, amount, created_at)
+                VALUES (:owner, :key, :cardId, :amount, :createdAt)""",
+                new MapSqlParameterSource("owner", owner)
+                        .addValue("key", key)
+                        .addValue("cardId", cardId)
+                        .addValue("amount", amount)
+                        .addValue("createdAt", Timestamp.from(Instant.now())));
+    }
+
+    /** @return null si la clave no se ha usado (o ya se ha purgado) */
+    Created find(String owner, String key) {
+        List<Created> found = jdbcTemplate.query(
+                "SELECT card_id, amount FROM cash_card_idempotency_key WHERE owner = :owner AND idempotency_key = :key",
+                new MapSqlParameterSource("owner", owner).addValue("key", key),
+                (rs, rowNum) -> new Created(rs.getLong("card_id"), rs.getLong("amount")));
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    int purgeBefore(Instant before) {
+        return jdbcTemplate.update("DELETE FROM cash_card_idempotency_key WHERE created_at < :before",
+                new MapSqlParameterSource("before", Timestamp.from(before)));
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.cashcard;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Control de admisión de /cashcards (lo aplica CashCardAdmissionFilter).
+ *
+ * Por propietario, un token bucket de owner-rate peticiones por segundo con ráfagas de
+ * hasta owner-burst. Cada bucket es un solo AtomicLong con el instante teórico en que
+ * se vaciaria (GCRA, equivalente a un token bucket) y se actualiza con CAS, sin locks.
+ * Los buckets viven en una cache de Caffeine que los quita cuando llevan el tiempo de
+ * rellenarse sin usarse: un bucket lleno es igual que uno nuevo, asi que no se pierde
+ * nada y la memoria solo depende de los propietarios activos (max-owners como tope).
+ *
+ * Para todos a la vez, como mucho max-concurrent peticiones dentro del controlador; una
+ * petición espera hasta max-wait a que quede sitio. Se deja por debajo de los hilos de
+ * Tomcat para que un propietario con muchas peticiones lentas no se quede con todos.
+ *
+ * Metricas: cashcard.ratelimit.rejected (tag reason, rate o concurrency),
+ * cashcard.ratelimit.in-flight y cashcard.ratelimit.owners.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnProperty(name = "cashcard.ratelimit.enabled", havingValue = "true", matchIfMissing = true)
+class CashCardRateLimiter {
+
+    private final long emissionIntervalNanos;
+    private final long burstNanos;
+    private final Cache<String, AtomicLong> buckets;
+    private final Semaphore permits;
+    private final Duration maxWait;
+    private final LongSupplier nanoTime;
+    private final Counter rateRejections;
+    private final Counter concurrencyRejections;
+
+    @Autowired
+    CashCardRateLimiter(@Value("${cashcard.ratelimit.owner-rate:50}") double ownerRate,
+            @Value("${cashcard.ratelimit.owner-burst:100}") int ownerBurst,
+            @Value("${cashcard.ratelimit.max-owners:1000000}") long maxOwners,
+            @Value("${cashcard.ratelimit.max-concurrent:100}") int maxConcurrent,
+            @Value("${cashcard.ratelimit.max-wait:100ms}") Duration maxWait, MeterRegistry meterRegistry) {
+        this(ownerRate, ownerBurst, maxOwners, maxConcurrent, maxWait, meterRegistry, System::nanoTime);
+    }
+
+    CashCardRateLimiter(double ownerRate, int ownerBurst, long maxOwners, int maxConcurrent, Duration maxWait,
+            MeterRegistry meterRegistry, LongSupplier nanoTime) {
+        this.emissionIntervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / ownerRate);
+        this.burstNanos = emissionIntervalNanos * ownerBurst;
+        this.buckets = Caffeine.newBuilder()
+                .expireAfterAccess(Duration.ofNanos(burstNanos))
+                .maximumSize(maxOwners)
+                .build();
+        this.permits = new Semaphore(maxConcurrent);
+        this.maxWait = maxWait;
+        this.nanoTime = nanoTime;
+        this.rateRejections = rejections(meterRegistry, "rate");
+        this.concurrencyRejections = rejections(meterRegistry, "concurrency");
+        Gauge.builder("cashcard.ratelimit.in-flight", permits, semaphore -> maxConcurrent - semaphore.availablePermits())
+                .description("Peticiones de /cashcards dentro del controlador")
+                .register(meterRegistry);
+        Gauge.builder("cashcard.ratelimit.owners", buckets, Cache::estimatedSize)
+                .description("Propietarios con bucket en memoria")
+                .register(meterRegistry);
+    }
+
+    /** @return 0 si el propietario puede hacer la petición, si no los nanos que le quedan para poder */
+    long tryAcquire(String owner) {
+        AtomicLong bucket = buckets.get(owner, key -> new AtomicLong(Long.MIN_VALUE));
+        long now = nanoTime.getAsLong();
+        while (true) {
+            long emptyAt = bucket.get();
+            // Long.MIN_VALUE: bucket nuevo, lleno
+            long next = (emptyAt == Long.MIN_VALUE || emptyAt - now < 0 ? now : emptyAt) + emissionIntervalNanos;
+            long wait = next - burstNanos - now;
+            if (wait > 0) {
+                rateRejections.increment();
+                return wait;
+            }
+            if (bucket.compareAndSet(emptyAt, next)) {
+                return 0;
+            }
+        }
+    }
+
+    /** Reserva un hueco de max-concurrent, si devuelve true hay que llamar a release */
+    boolean enter() throws InterruptedException {
+        if (permits.tryAcquire(maxWait.toNanos(), TimeUnit.NANOSECONDS)) {
+            return true;
+        }
+        concurrencyRejections.increment();
+        return false;
+    }
+
+    void release() {
+        permits.release();
+    }
+
+    private static Counter rejections(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("cashcard.ratelimit.rejected")
+                .description("Peticiones de /cashcards rechazadas con 429")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+}
@@ -1,9 +1,16 @@
 package com.example.cashcard;
 
+import java.util.List;
+
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.jdbc.repository.query.Modifying;
+import org.springframework.data.jdbc.repository.query.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.data.repository.PagingAndSortingRepository;
+import org.springframework.transaction.annotation.Transactional;
 
 /**
  * Con CrudRepository<CashCard, Long> estamos diciendo que el repositorio 
@@ -15,8 +22,89 @@ interface CashCardRepository extends CrudRepository<CashCard, Long>,PagingAndSor
      * parseando el nombre de los metodos: 
      * Spring genera una consulta SQL automáticamente gracias
      * al parsing del nombre del método (method name query derivation).
-     * https://docs.spring.io/spring-data/relational/reference/repositories/query-methods-details.html */
+     * https://docs.spring.io/spring-data/relational/reference/repositories/query-methods-details.html
+     * Las lecturas van en transacciones readOnly, que con réplicas se sirven desde ellas (ReplicaRoutingConfig) */
+    @Transactional(readOnly = true)
     CashCard findByIdAndOwner(Long id, String owner);
+    @Transactional(readOnly = true)
     Page<CashCard> findByOwner(String owner, PageRequest pageRequest);
+    @Transactional(readOnly = true)
     boolean existsByIdAndOwner(Long id, String owner);
+
+    /**
+     * Escrituras de CashCardWriteService que devuelven la fila en la misma sentencia:
+     * con las tablas delta de H2 (OLD TABLE / FINAL TABLE) el UPDATE o el DELETE
+     * devuelve la tarjeta como estaba antes o como ha quedado, y no hace falta leerla
+     * aparte con SELECT ... FOR UPDATE. null significa que no se ha modificado nada.
+     * https://h2database.com/html/grammar.html#data_change_delta_table
+     * @param expectedVersion null para no comprobar la versión
+     */
+    @Query("""
+            SELECT * FROM OLD TABLE (
+                UPDATE cash_card SET amount = :amount, version = version + 1
+                WHERE id = :id AND owner = :owner
+                  AND (CAST(:expectedVersion AS BIGINT) IS NULL OR version = :expectedVersion))""")
+    CashCard updateAmountReturningPrevious(Long id, String owner, long amount, Long expectedVersion);
+
+    @Query("SELECT * FROM OLD TABLE (DELETE FROM cash_card WHERE id = :id AND owner = :owner)")
+    CashCard deleteReturningPrevious(Long id, String owner);
+
+    /**
+     * Suma delta al saldo sin leer antes la tarjeta y solo si el saldo antes de sumar es
+     * al menos required (para un cargo, -delta: que no quede negativo). changes es el
+     * numero de cambios que se apuntan en la versión
+     */
+    @Query("""
+            SELECT * FROM FINAL TABLE (
+                UPDATE cash_card SET amount = amount + :delta, version = version + :changes
+                WHERE id = :id AND owner = :owner AND amount >= :required)""")
+    CashCard addToAmountReturningUpdated(Long id, String owner, long delta, long changes, long required);
+
+    /** Saldo final de varios deltas, solo si nadie ha cambiado la tarjeta desde que se leyó con expectedVersion */
+    @Modifying
+    @Query("""
+            UPDATE cash_card SET amount = :amount, version = version + :changes
+            WHERE id = :id AND owner = :owner AND version = :expectedVersion""")
+    int updateAmountAndVersionIfUnchanged(Long id, String owner, long amount, long changes, long expectedVersion);
+
+    /**
+     * Paginación por keyset: en vez de saltar filas con OFFSET buscamos directamente
+     * a partir de la clave (amount, id) de la última tarjeta de la página anterior,
+     * y no hace falta la consulta COUNT(*) que lanza Page.
+     * El amount >= :amount redundante es lo que le deja a H2 empezar el recorrido del
+     * indice (OWNER, AMOUNT, ID) en la clave: con solo el OR se queda en OWNER = :owner
+     * y lee todas las tarjetas anteriores; (amount, id) > (:amount, :id) tampoco lo usa.
+     * owner en el ORDER BY no cambia el orden (es constante) pero sin él H2 no se da cuenta
+     * de que el indice ya devuelve las filas ordenadas: lee todo el tramo hasta el final,
+     * lo ordena y se queda con las primeras, en vez de parar en LIMIT
+     */
+    @Query("""
+            SELECT * FROM cash_card
+            WHERE owner = :owner
+            ORDER BY owner, amount, id
+            LIMIT :limit""")
+    List<CashCard> findByOwnerFromStart(String owner, int limit);
+
+    @Query("""
+            SELECT * FROM cash_card
+            WHERE owner = :owner
+              AND amount >= :amount AND (amount > :amount OR id > :id)
+            ORDER BY owner, amount, id
+            LIMIT :limit""")
+    List<CashCard> findByOwnerAfter(String owner, long amount, Long id, int limit);
+
+    /**
+     * Pedimos una fila de más para saber si hay página siguiente sin contar,
+     * y devolvemos un Slice en lugar de un Page
+     * @param after null para la primera página
+     */
+    @Transactional(readOnly = true)
+    default Slice<CashCard> findSliceByOwner(String owner, CashCardCursor after, int size) {
+        List<CashCard> rows = after == null
+                ? findByOwnerFromStart(owner, size + 1)
+                : findByOwnerAfter(owner, after.amount(), after.id(), size + 1);
+        boolean hasNext = rows.size() > size;
+        List<CashCard> content = hasNext ? rows.subList(0, size) : rows;
+        return new SliceImpl<>(content, PageRequest.ofSize(size), hasNext);
+    }
 }
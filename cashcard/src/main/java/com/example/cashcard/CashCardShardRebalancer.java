@@ -0,0 +1,165 @@
+package com.example.cashcard;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.Lock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.JdbcTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Mueve los propietarios a su shard cuando se añaden shards (ver ShardRouter).
+ *
+ * Recorre los propietarios de cada shard y los que en el anillo con todos los shards
+ * caen en otro se mueven de uno en uno, con su lock de escritura cogido: se copian sus
+ * tarjetas, su resumen, sus cambios del outbox y sus Idempotency-Key al shard destino
+ * (MERGE, se puede repetir si algo falla a medias), se apunta en el router (y en
+ * cash_card_owner_shard) que ya están alli y se borran del origen. Si un rebalanceo anterior
+ * ya lo había apuntado solo falta borrar lo que quedara en el origen: volver a copiarlo
+ * pisaría lo que el propietario haya escrito despues en su shard nuevo.
+ * Las peticiones del resto de propietarios siguen mientras tanto, pero solo las de esta
+ * instancia respetan el lock: ver ShardRouter para lo que eso exige con varias.
+ * Al acabar el anillo nuevo pasa a ser el activo y se hace otra pasada para los
+ * propietarios que escribieron por primera vez en su shard viejo durante la primera.
+ *
+ * Se lanza al arrancar si hay shards JOINING (cashcard.sharding.rebalance-on-startup) o
+ * con POST /actuator/shards (hay que añadir shards a management.endpoints.web.exposure.include).
+ * El contador de posiciones del feed (cash_card_change_position) se mueve con el
+ * propietario, asi que GET /cashcards/changes?since= le sigue sirviendo en su shard nuevo.
+ */
+@Component
+@Endpoint(id = "shards")
+@ConditionalOnProperty("cashcard.sharding.shards[0].url")
+class CashCardShardRebalancer {
+
+    /** Resultado de un rebalanceo */
+    record Report(int ownersMoved, int cardsMoved, Set<Integer> ring) {
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(CashCardShardRebalancer.class);
+
+    private static final String OWNERS_SQL = "SELECT owner FROM cash_card UNION SELECT owner FROM cash_card_owner_summary "
+            + "UNION SELECT owner FROM cash_card_change UNION SELECT owner FROM cash_card_change_position "
+            + "UNION SELECT owner FROM cash_card_idempotency_key";
+
+    private static final String CARD_COLUMNS = "id, amount, owner, version";
+    private static final String SUMMARY_COLUMNS = "owner, card_count, total_amount, min_amount, max_amount";
+    private static final String CHANGE_COLUMNS = "seq, position, card_id, owner, operation, amount, version, changed_at, "
+            + "published";
+    private static final String CHANGE_POSITION_COLUMNS = "owner, last_position";
+    private static final String IDEMPOTENCY_KEY_COLUMNS = "owner, idempotency_key, card_id, amount, created_at";
+
+    private final ShardRouter shardRouter;
+    private final boolean rebalanceOnStartup;
+    private final Map<Integer, JdbcTemplate> jdbcTemplates = new HashMap<>();
+    private final Map<Integer, TransactionTemplate> transactionTemplates = new HashMap<>();
+
+    CashCardShardRebalancer(ShardRouter shardRouter,
+            @Value("${cashcard.sharding.rebalance-on-startup:true}") boolean rebalanceOnStartup) {
+        this.shardRouter = shardRouter;
+        this.rebalanceOnStartup = rebalanceOnStartup;
+        for (int shard : shardRouter.shardIds()) {
+            jdbcTemplates.put(shard, new JdbcTemplate(shardRouter.dataSource(shard)));
+            transactionTemplates.put(shard,
+                    new TransactionTemplate(new JdbcTransactionManager(shardRouter.dataSource(shard))));
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void rebalanceJoiningShards() {
+        if (rebalanceOnStartup && shardRouter.hasJoiningShards()) {
+            rebalance();
+        }
+    }
+
+    @ReadOperation
+    Map<String, Object> shards() {
+        Set<Integer> joining = new TreeSet<>(shardRouter.shardIds());
+        joining.removeAll(shardRouter.activeShards());
+        return Map.of("active", new TreeSet<>(shardRouter.activeShards()), "joining", joining);
+    }
+
+    @WriteOperation
+    synchronized Report rebalance() {
+        ConsistentHashRing target = shardRouter.fullRing();
+        int owners = 0;
+        int cards = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            for (int shard : shardRouter.shardIds()) {
+                for (String owner : jdbcTemplates.get(shard).queryForList(OWNERS_SQL, String.class)) {
+                    int destination = target.shardFor(owner);
+                    if (destination != shard) {
+                        cards += move(owner, shard, destination);
+                        owners++;
+                    }
+                }
+            }
+            shardRouter.activate(target);
+        }
+        log.info("Rebalanced {} owners ({} cards) over shards {}", owners, cards, target.shards());
+        return new Report(owners, cards, new TreeSet<>(target.shards()));
+    }
+
+    private int move(String owner, int from, int to) {
+        Lock lock = shardRouter.ownerLock(owner).writeLock();
+        lock.lock();
+        try {
+            JdbcTemplate source = jdbcTemplates.get(from);
+            JdbcTemplate destination = jdbcTemplates.get(to);
+            int[] cards = new int[1];
+            boolean alreadyCopied = Integer.valueOf(to).equals(shardRouter.movedTo(owner));
+            transactionTemplates.get(to).executeWithoutResult(status -> {
+                if (alreadyCopied) {
+                    return;
+                }
+                cards[0] = copy(source, destination, "cash_card", CARD_COLUMNS, "id", owner);
+                copy(source, destination, "cash_card_owner_summary", SUMMARY_COLUMNS, "owner", owner);
+                copy(source, destination, "cash_card_change", CHANGE_COLUMNS, "seq", owner);
+                copy(source, destination, "cash_card_change_position", CHANGE_POSITION_COLUMNS, "owner", owner);
+                copy(source, destination, "cash_card_idempotency_key", IDEMPOTENCY_KEY_COLUMNS,
+                        "owner, idempotency_key", owner);
+            });
+            if (!alreadyCopied) {
+                shardRouter.moved(owner, to);
+            }
+            transactionTemplates.get(from).executeWithoutResult(status -> {
+                source.update("DELETE FROM cash_card WHERE owner = ?", owner);
+                source.update("DELETE FROM cash_card_owner_summary WHERE owner = ?", owner);
+                source.update("DELETE FROM cash_card_change WHERE owner = ?", owner);
+                source.update("DELETE FROM cash_card_change_position WHERE owner = ?", owner);
+                source.update("DELETE FROM cash_card_idempotency_key WHERE owner = ?", owner);
+            });
+            return cards[0];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static int copy(JdbcTemplate source, JdbcTemplate destination, String table, String columns, String key,
+            String owner) {
+        List<Object[]> rows = source.queryForList("SELECT " + columns + " FROM " + table + " WHERE owner = ?", owner)
+                .stream()
+                .map(row -> row.values().toArray())
+                .toList();
+        if (!rows.isEmpty()) {
+            String placeholders = "?" + ", ?".repeat(columns.split(",").length - 1);
+            destination.batchUpdate("MERGE INTO " + table + " (" + columns + ") KEY (" + key + ") VALUES ("
+                    + placeholders + ")", rows);
+        }
+        return rows.size();
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.cashcard;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * Resumen de las tarjetas de un propietario que devuelve GET /cashcards/summary.
+ * Los importes van en céntimos como en CashCard; minAmount y maxAmount son null
+ * si el propietario no tiene tarjetas.
+ */
+record CashCardSummary(String owner, long cardCount,
+        @JsonSerialize(using = Cents.Serializer.class) long totalAmount,
+        @JsonSerialize(using = Cents.Serializer.class) Long minAmount,
+        @JsonSerialize(using = Cents.Serializer.class) Long maxAmount) {
+
+    static CashCardSummary empty(String owner) {
+        return new CashCardSummary(owner, 0, 0, null, null);
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.cashcard;
+
+/**
+ * Cambio acumulado en el resumen de un propietario por varias escrituras (un bloque de
+ * /cashcards/batch), para aplicarlo de una vez con CashCardSummaryRepository.apply.
+ *
+ * El numero de tarjetas y el total son una suma. Para el minimo y el maximo se guardan
+ * los extremos de los importes que entran (altas y nuevos importes) y de los que salen
+ * (bajas e importes anteriores): los que entran se combinan con LEAST/GREATEST, y solo
+ * si alguno de los que salen puede ser el minimo o el maximo guardado hay que volver a
+ * calcularlo con el indice (OWNER, AMOUNT), igual que en cardChanged y cardRemoved.
+ */
+final class CashCardSummaryDelta {
+
+    private long cardCount;
+    private long totalAmount;
+    private Long addedLow;
+    private Long addedHigh;
+    private Long removedLow;
+    private Long removedHigh;
+
+    void added(long amount) {
+        cardCount++;
+        totalAmount += amount;
+        in(amount);
+    }
+
+    void changed(long oldAmount, long newAmount) {
+        totalAmount += newAmount - oldAmount;
+        out(oldAmount);
+        in(newAmount);
+    }
+
+    void removed(long amount) {
+        cardCount--;
+        totalAmount -= amount;
+        out(amount);
+    }
+
+    boolean isEmpty() {
+        return addedLow == null && removedLow == null;
+    }
+
+    long cardCount() {
+        return cardCount;
+    }
+
+    long totalAmount() {
+        return totalAmount;
+    }
+
+    Long addedLow() {
+        return addedLow;
+    }
+
+    Long addedHigh() {
+        return addedHigh;
+    }
+
+    Long removedLow() {
+        return removedLow;
+    }
+
+    Long removedHigh() {
+        return removedHigh;
+    }
+
+    private void in(long amount) {
+        addedLow = addedLow == null ? amount : Math.min(addedLow, amount);
+        addedHigh = addedHigh == null ? amount : Math.max(addedHigh, amount);
+    }
+
+    private void out(long amount) {
+        removedLow = removedLow == null ? amount : Math.min(removedLow, amount);
+        removedHigh = removedHigh == null ? amount : Math.max(removedHigh, amount);
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.cashcard;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Corrige cash_card_owner_summary a partir de cash_card.
+ *
+ * El rango de ids se parte en tantos tramos como parallelism y cada tramo se agrega
+ * (GROUP BY owner) en su propio hilo y con su propia conexión; despues se juntan los
+ * parciales y se comparan con los resumenes guardados. Esa pasada no es una foto
+ * consistente, solo sirve para encontrar los propietarios que pueden estar desviados:
+ * cada uno de ellos se recalcula despues en su propia transacción con
+ * CashCardSummaryRepository.recompute, que bloquea su fila del resumen y agrega sus
+ * tarjetas en ese momento. Asi no se pisa ninguna escritura que llegue mientras tanto
+ * y la tabla no se vacía nunca.
+ * Se programa con cashcard.summary.reconcile-cron (por defecto desactivado, "-").
+ * Con el motor en memoria no existe: alli el resumen sale del indice y no se desvía.
+ * Con sharding (ShardRouter) se reconstruye cada shard por separado.
+ */
+@Component
+@Profile("!memory")
+class CashCardSummaryReconciler {
+
+    private static final Logger log = LoggerFactory.getLogger(CashCardSummaryReconciler.class);
+
+    private static final String PARTIAL_SQL = """
+            SELECT owner, COUNT(*) AS card_count, SUM(amount) AS total_amount,
+                   MIN(amount) AS min_amount, MAX(amount) AS max_amount
+            FROM cash_card WHERE id BETWEEN ? AND ? GROUP BY owner""";
+
+    private static final String STORED_SQL = """
+            SELECT owner, card_count, total_amount, min_amount, max_amount FROM cash_card_owner_summary""";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final CashCardSummaryRepository summaryRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int parallelism;
+    private final ShardRouter shardRouter;
+
+    CashCardSummaryReconciler(JdbcTemplate jdbcTemplate, CashCardSummaryRepository summaryRepository,
+            TransactionTemplate transactionTemplate, @Value("${cashcard.summary.reconcile-parallelism:4}") int parallelism,
+            ObjectProvider<ShardRouter> shardRouter) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.summaryRepository = summaryRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.parallelism = parallelism;
+        this.shardRouter = shardRouter.getIfAvailable();
+    }
+
+    @Scheduled(cron = "${cashcard.summary.reconcile-cron:-}")
+    void scheduledRebuild() {
+        int owners = rebuild();
+        log.info("Owner summary corrected for {} owners", owners);
+    }
+
+    /** @return numero de propietarios cuyo resumen se ha recalculado */
+    int rebuild() {
+        return shardRouter == null ? rebuildShard() : shardRouter.sumOverShards(this::rebuildShard);
+    }
+
+    private int rebuildShard() {
+        Map<String, Object> range = jdbcTemplate.queryForMap("SELECT MIN(id) AS min_id, MAX(id) AS max_id FROM cash_card");
+        Map<String, CashCardSummary> merged = new HashMap<>();
+        if (range.get("min_id") != null) {
+            long minId = ((Number) range.get("min_id")).longValue();
+            long maxId = ((Number) range.get("max_id")).longValue();
+            for (Map<String, CashCardSummary> partial : scanInParallel(minId, maxId)) {
+                partial.forEach((owner, summary) -> merged.merge(owner, summary, CashCardSummaryReconciler::combine));
+            }
+        }
+        Set<String> drifted = new HashSet<>(merged.keySet());
+        jdbcTemplate.query(STORED_SQL, rs -> {
+            String owner = rs.getString("owner");
+            CashCardSummary stored = new CashCardSummary(owner, rs.getLong("card_count"), rs.getLong("total_amount"),
+                    rs.getObject("min_amount", Long.class), rs.getObject("max_amount", Long.class));
+            CashCardSummary scanned = merged.getOrDefault(owner, CashCardSummary.empty(owner));
+            if (stored.equals(scanned)) {
+                drifted.remove(owner);
+            } else {
+                drifted.add(owner);
+            }
+        });
+        for (String owner : drifted) {
+            transactionTemplate.executeWithoutResult(status -> summaryRepository.recompute(owner));
+        }
+        return drifted.size();
+    }
+
+    private List<Map<String, CashCardSummary>> scanInParallel(long minId, long maxId) {
+        long span = (maxId - minId) / parallelism + 1;
+        // Los hilos del pool tienen que leer del mismo shard que este
+        Integer shard = ShardRouter.currentShard();
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try {
+            List<Future<Map<String, CashCardSummary>>> futures = new ArrayList<>();
+            for (long from = minId; from <= maxId; from += span) {
+                long to = Math.min(from + span - 1, maxId);
+                long rangeFrom = from;
+                futures.add(executor.submit(() -> ShardRouter.onShard(shard, () -> scan(rangeFrom, to))));
+            }
+            List<Map<String, CashCardSummary>> partials = new ArrayList<>();
+            for (Future<Map<String, CashCardSummary>> future : futures) {
+                partials.add(future.get());
+            }
+            return partials;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Summary reconciliation interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Summary reconciliation failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Map<String, CashCardSummary> scan(long fromId, long toId) {
+        Map<String, CashCardSummary> partial = new HashMap<>();
+        jdbcTemplate.query(PARTIAL_SQL, rs -> {
+            String owner = rs.getString("owner");
+            partial.put(owner, new CashCardSummary(owner, rs.getLong("card_count"), rs.getLong("total_amount"),
+                    rs.getObject("min_amount", Long.class), rs.getObject("max_amount", Long.class)));
+        }, fromId, toId);
+        return partial;
+    }
+
+    private static CashCardSummary combine(CashCardSummary a, CashCardSummary b) {
+        return new CashCardSummary(a.owner(), a.cardCount() + b.cardCount(), a.totalAmount() + b.totalAmount(),
+                Math.min(a.minAmount(), b.minAmount()), Math.max(a.maxAmount(), b.maxAmount()));
+    }
+}
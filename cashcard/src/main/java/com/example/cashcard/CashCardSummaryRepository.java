@@ -0,0 +1,32 @@
+package com.example.cashcard;
+
+/**
+ * Resumen por propietario (numero de tarjetas, total, minimo y maximo).
+ *
+ * Los metodos cardAdded, cardChanged y cardRemoved aplican el cambio de una sola
+ * tarjeta de forma incremental y tienen que llamarse dentro de la misma transacción
+ * que la escritura de la tarjeta, despues de ella.
+ * Hay una implementación por motor: JdbcCashCardSummaryRepository mantiene la tabla
+ * cash_card_owner_summary e InMemoryCashCardSummaryRepository lo calcula del indice
+ * del motor en memoria.
+ */
+interface CashCardSummaryRepository {
+
+    CashCardSummary findByOwner(String owner);
+
+    void cardAdded(String owner, long amount);
+
+    void cardChanged(String owner, long oldAmount, long newAmount);
+
+    void cardRemoved(String owner, long amount);
+
+    /** Aplica de una vez el cambio de varias escrituras (p.ej. un bloque del batch), en su misma transacción */
+    void apply(String owner, CashCardSummaryDelta delta);
+
+    /**
+     * Recalcula el resumen de un propietario a partir de sus tarjetas, lo usa la
+     * reconciliación. Bloquea antes la fila del resumen, asi que una escritura
+     * concurrente del mismo propietario espera y aplica su delta sobre el valor recalculado
+     */
+    void recompute(String owner);
+}
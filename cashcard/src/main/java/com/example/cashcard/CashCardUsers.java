@@ -0,0 +1,87 @@
+package com.example.cashcard;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserCache;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.provisioning.JdbcUserDetailsManager;
+import org.springframework.stereotype.Component;
+
+/**
+ * Altas, bajas y bloqueos de usuarios en caliente, sobre las tablas users y authorities.
+ *
+ * Cada cambio saca al usuario de la CaffeineUserCache, asi la siguiente petición ya
+ * lo lee de la BBDD. Un usuario deshabilitado deja de poder autenticarse con Basic;
+ * los tokens que ya tuviera (modo token) siguen valiendo hasta que caducan.
+ * Desde fuera se usa con /actuator/users (CashCardUsersEndpoint), que pide ROLE_ADMIN.
+ *
+ * Para el primer administrador: si la tabla users está vacia al arrancar y hay
+ * cashcard.auth.bootstrap-admin.username y .password, se da de alta con el rol ADMIN.
+ */
+@Component
+class CashCardUsers {
+
+    private static final Logger log = LoggerFactory.getLogger(CashCardUsers.class);
+
+    private final JdbcUserDetailsManager users;
+    private final UserCache userCache;
+    private final PasswordEncoder passwordEncoder;
+    private final String bootstrapAdminUsername;
+    private final String bootstrapAdminPassword;
+
+    CashCardUsers(DataSource dataSource, UserCache userCache, PasswordEncoder passwordEncoder,
+            @Value("${cashcard.auth.bootstrap-admin.username:}") String bootstrapAdminUsername,
+            @Value("${cashcard.auth.bootstrap-admin.password:}") String bootstrapAdminPassword) {
+        this.users = new JdbcUserDetailsManager(dataSource);
+        this.userCache = userCache;
+        this.passwordEncoder = passwordEncoder;
+        this.bootstrapAdminUsername = bootstrapAdminUsername;
+        this.bootstrapAdminPassword = bootstrapAdminPassword;
+    }
+
+    /** Da de alta el administrador de cashcard.auth.bootstrap-admin si todavía no hay ningún usuario */
+    @EventListener(ApplicationReadyEvent.class)
+    void createBootstrapAdmin() {
+        if (bootstrapAdminUsername.isEmpty()) {
+            return;
+        }
+        if (bootstrapAdminPassword.isEmpty()) {
+            throw new IllegalStateException("cashcard.auth.bootstrap-admin.password is required");
+        }
+        Integer count = users.getJdbcTemplate().queryForObject("SELECT COUNT(*) FROM users", Integer.class);
+        if (count == 0) {
+            create(bootstrapAdminUsername, bootstrapAdminPassword, "ADMIN");
+            log.info("Created bootstrap admin {}", bootstrapAdminUsername);
+        }
+    }
+
+    /** @param roles sin el prefijo ROLE_, p.ej. CARD-OWNER */
+    void create(String username, String rawPassword, String... roles) {
+        users.createUser(User.builder()
+                .username(username)
+                .password(passwordEncoder.encode(rawPassword))
+                .roles(roles)
+                .build());
+        userCache.removeUserFromCache(username);
+    }
+
+    void setEnabled(String username, boolean enabled) {
+        users.getJdbcTemplate().update("UPDATE users SET enabled = ? WHERE username = ?", enabled, username);
+        userCache.removeUserFromCache(username);
+    }
+
+    void delete(String username) {
+        users.deleteUser(username);
+        userCache.removeUserFromCache(username);
+    }
+
+    boolean exists(String username) {
+        return users.userExists(username);
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.cashcard;
+
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.actuate.endpoint.web.WebEndpointResponse;
+import org.springframework.http.HttpStatus;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+/**
+ * Gestión de usuarios (CashCardUsers) por actuator, solo para ROLE_ADMIN (ver
+ * SecurityConfig); hay que añadir users a management.endpoints.web.exposure.include.
+ *
+ * POST /actuator/users/{username} con {"password": ..., "roles": "CARD-OWNER,..."} da de
+ * alta al usuario (201, o 409 si ya existe; sin roles es CARD-OWNER) y con {"enabled": false}
+ * lo bloquea o desbloquea (204). DELETE /actuator/users/{username} lo borra.
+ */
+@Component
+@Endpoint(id = "users")
+class CashCardUsersEndpoint {
+
+    private static final String DEFAULT_ROLE = "CARD-OWNER";
+
+    private final CashCardUsers users;
+
+    CashCardUsersEndpoint(CashCardUsers users) {
+        this.users = users;
+    }
+
+    @WriteOperation
+    WebEndpointResponse<Void> write(@Selector String username, @Nullable String password, @Nullable String roles,
+            @Nullable Boolean enabled) {
+        if (password != null) {
+            if (users.exists(username)) {
+                return new WebEndpointResponse<>(HttpStatus.CONFLICT.value());
+            }
+            users.create(username, password, roles == null ? new String[] { DEFAULT_ROLE } : roles.split(","));
+            if (Boolean.FALSE.equals(enabled)) {
+                users.setEnabled(username, false);
+            }
+            return new WebEndpointResponse<>(HttpStatus.CREATED.value());
+        }
+        if (enabled == null) {
+            return new WebEndpointResponse<>(WebEndpointResponse.STATUS_BAD_REQUEST);
+        }
+        if (!users.exists(username)) {
+            return new WebEndpointResponse<>(WebEndpointResponse.STATUS_NOT_FOUND);
+        }
+        users.setEnabled(username, enabled);
+        return new WebEndpointResponse<>(WebEndpointResponse.STATUS_NO_CONTENT);
+    }
+
+    @DeleteOperation
+    WebEndpointResponse<Void> delete(@Selector String username) {
+        if (!users.exists(username)) {
+            return new WebEndpointResponse<>(WebEndpointResponse.STATUS_NOT_FOUND);
+        }
+        users.delete(username);
+        return new WebEndpointResponse<>(WebEndpointResponse.STATUS_NO_CONTENT);
+    }
+}
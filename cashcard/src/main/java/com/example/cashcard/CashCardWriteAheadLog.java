@@ -0,0 +1,266 @@
+package com.example.cashcard;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Durabilidad del motor en memoria: un snapshot con todas las tarjetas mas un log
+ * de escritura anticipada (WAL) con los cambios posteriores.
+ *
+ * El WAL es un fichero de tamaño fijo mapeado en memoria. Cada registro lleva su
+ * longitud, un CRC32 y el estado completo de la tarjeta (o su id si es un borrado),
+ * asi reaplicarlo es idempotente. Al arrancar se carga el snapshot y se reaplican
+ * los registros del WAL hasta el primero incompleto o con el CRC mal.
+ *
+ * Cuando el WAL se llena se escribe un snapshot nuevo (a un fichero temporal que
+ * luego se renombra) y el WAL vuelve a empezar con una época nueva. Los registros
+ * llevan la época, asi los restos de la época anterior que queden detrás del último
+ * registro nunca se confunden con cambios nuevos.
+ *
+ * Sin sync los registros quedan en la cache de paginas del sistema operativo: se
+ * sobrevive a una caida del proceso pero no a la de la máquina. Con sync cada
+ * registro se fuerza a disco antes de confirmar la escritura.
+ */
+final class CashCardWriteAheadLog implements Closeable {
+
+    /** Recibe las tarjetas al reaplicar el snapshot y el WAL */
+    interface CardSink {
+        void put(long id, long amount, String owner, long version);
+
+        void delete(long id);
+    }
+
+    /** Recibe las tarjetas al escribir un snapshot, que solo tiene altas */
+    @FunctionalInterface
+    interface SnapshotWriter {
+        void put(long id, long amount, String owner, long version);
+    }
+
+    private static final int WAL_MAGIC = 0x43435741;
+    private static final int SNAPSHOT_MAGIC = 0x43435353;
+    // magic (4) + reservado (4) + época (8)
+    private static final int HEADER_SIZE = 16;
+    // longitud (4) + crc (4)
+    private static final int RECORD_HEADER_SIZE = 8;
+    // época (8) + tipo (1) + id (8) + amount (8) + version (8) + longitud del owner (2)
+    private static final int PAYLOAD_FIXED_SIZE = 35;
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+
+    private final Path walFile;
+    private final Path snapshotFile;
+    private final boolean sync;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final CRC32 crc = new CRC32();
+    private long epoch;
+    private int writePosition = HEADER_SIZE;
+
+    private CashCardWriteAheadLog(Path directory, int size, boolean sync) throws IOException {
+        Files.createDirectories(directory);
+        this.walFile = directory.resolve("cashcards.wal");
+        this.snapshotFile = directory.resolve("cashcards.snapshot");
+        this.sync = sync;
+        boolean created = !Files.exists(walFile);
+        this.channel = FileChannel.open(walFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        int mappedSize = created ? size : (int) Math.max(size, channel.size());
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, mappedSize);
+        if (created || buffer.getInt(0) != WAL_MAGIC) {
+            writeHeader(1);
+        }
+        this.epoch = buffer.getLong(8);
+    }
+
+    static CashCardWriteAheadLog open(Path directory, int size, boolean sync) {
+        try {
+            return new CashCardWriteAheadLog(directory, size, sync);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open write-ahead log in " + directory, e);
+        }
+    }
+
+    /**
+     * Carga el snapshot y reaplica el WAL sobre sink.
+     * @return false si no habia nada que cargar (ni snapshot ni registros)
+     */
+    boolean replay(CardSink sink) {
+        boolean loaded = false;
+        if (Files.exists(snapshotFile)) {
+            epoch = readSnapshot(sink);
+            loaded = true;
+        }
+        writePosition = HEADER_SIZE;
+        while (true) {
+            int length = writePosition + RECORD_HEADER_SIZE <= buffer.capacity() ? buffer.getInt(writePosition) : 0;
+            if (length < PAYLOAD_FIXED_SIZE || writePosition + RECORD_HEADER_SIZE + length > buffer.capacity()) {
+                break;
+            }
+            int payloadStart = writePosition + RECORD_HEADER_SIZE;
+            crc.reset();
+            crc.update(buffer.slice(payloadStart, length));
+            if ((int) crc.getValue() != buffer.getInt(writePosition + 4) || buffer.getLong(payloadStart) != epoch) {
+                break;
+            }
+            applyRecord(payloadStart, sink);
+            writePosition = payloadStart + length;
+            loaded = true;
+        }
+        // Si la última época del fichero no era la del snapshot (caida a mitad de un
+        // snapshot) el WAL se reinicia con la época del snapshot
+        if (buffer.getLong(8) != epoch) {
+            writeHeader(epoch);
+        }
+        return loaded;
+    }
+
+    /** @return false si el registro no cabe, hay que hacer un snapshot y volver a intentarlo */
+    boolean appendPut(long id, long amount, String owner, long version) {
+        return append(PUT, id, amount, owner.getBytes(StandardCharsets.UTF_8), version);
+    }
+
+    boolean appendDelete(long id) {
+        return append(DELETE, id, 0, new byte[0], 0);
+    }
+
+    /**
+     * Escribe un snapshot con las tarjetas que cards entregue al writer y vacía el WAL.
+     * Quien lo llama tiene que impedir escrituras mientras tanto
+     */
+    void snapshot(Consumer<SnapshotWriter> cards) {
+        long nextEpoch = epoch + 1;
+        Path tmp = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(tmp.toFile());
+                CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(file, 1 << 16), new CRC32());
+                DataOutputStream out = new DataOutputStream(checked)) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeLong(nextEpoch);
+            cards.accept((id, amount, owner, version) -> {
+                try {
+                    out.writeBoolean(true);
+                    out.writeLong(id);
+                    out.writeLong(amount);
+                    out.writeLong(version);
+                    out.writeUTF(owner);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            out.writeBoolean(false);
+            out.writeLong(checked.getChecksum().getValue());
+            out.flush();
+            file.getFD().sync();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write snapshot " + tmp, e);
+        }
+        try {
+            Files.move(tmp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot replace snapshot " + snapshotFile, e);
+        }
+        epoch = nextEpoch;
+        writeHeader(nextEpoch);
+        writePosition = HEADER_SIZE;
+    }
+
+    @Override
+    public void close() {
+        try {
+            buffer.force();
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private boolean append(byte type, long id, long amount, byte[] owner, long version) {
+        int length = PAYLOAD_FIXED_SIZE + owner.length;
+        if (HEADER_SIZE + RECORD_HEADER_SIZE + length > buffer.capacity()) {
+            throw new IllegalArgumentException("Record larger than the write-ahead log");
+        }
+        if (writePosition + RECORD_HEADER_SIZE + length > buffer.capacity()) {
+            return false;
+        }
+        int payloadStart = writePosition + RECORD_HEADER_SIZE;
+        buffer.putLong(payloadStart, epoch)
+                .put(payloadStart + 8, type)
+                .putLong(payloadStart + 9, id)
+                .putLong(payloadStart + 17, amount)
+                .putLong(payloadStart + 25, version)
+                .putShort(payloadStart + 33, (short) owner.length)
+                .put(payloadStart + PAYLOAD_FIXED_SIZE, owner);
+        crc.reset();
+        crc.update(buffer.slice(payloadStart, length));
+        buffer.putInt(writePosition + 4, (int) crc.getValue());
+        buffer.putInt(writePosition, length);
+        if (sync) {
+            buffer.force(writePosition, RECORD_HEADER_SIZE + length);
+        }
+        writePosition = payloadStart + length;
+        return true;
+    }
+
+    private void applyRecord(int payloadStart, CardSink sink) {
+        long id = buffer.getLong(payloadStart + 9);
+        if (buffer.get(payloadStart + 8) == DELETE) {
+            sink.delete(id);
+            return;
+        }
+        byte[] owner = new byte[Short.toUnsignedInt(buffer.getShort(payloadStart + 33))];
+        buffer.get(payloadStart + PAYLOAD_FIXED_SIZE, owner);
+        sink.put(id, buffer.getLong(payloadStart + 17), new String(owner, StandardCharsets.UTF_8),
+                buffer.getLong(payloadStart + 25));
+    }
+
+    private long readSnapshot(CardSink sink) {
+        try (InputStream file = Files.newInputStream(snapshotFile);
+                CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(file, 1 << 16), new CRC32());
+                DataInputStream in = new DataInputStream(checked)) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IllegalStateException("Not a cash card snapshot: " + snapshotFile);
+            }
+            long snapshotEpoch = in.readLong();
+            while (in.readBoolean()) {
+                long id = in.readLong();
+                long amount = in.readLong();
+                long version = in.readLong();
+                sink.put(id, amount, in.readUTF(), version);
+            }
+            long expected = checked.getChecksum().getValue();
+            if (in.readLong() != expected) {
+                throw new IllegalStateException("Corrupted cash card snapshot: " + snapshotFile);
+            }
+            return snapshotEpoch;
+        } catch (EOFException e) {
+            throw new IllegalStateException("Truncated cash card snapshot: " + snapshotFile, e);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read snapshot " + snapshotFile, e);
+        }
+    }
+
+    private void writeHeader(long headerEpoch) {
+        buffer.putInt(0, WAL_MAGIC).putInt(4, 0).putLong(8, headerEpoch);
+        // Marca de fin para que un arranque no lea registros de la época anterior
+        buffer.putInt(HEADER_SIZE, 0);
+        buffer.force(0, HEADER_SIZE + 4);
+    }
+}
@@ -0,0 +1,189 @@
+package com.example.cashcard;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Escrituras de una sola tarjeta (alta, modificación y baja).
+ *
+ * Cada metodo es una transacción que modifica cash_card y, en la misma transacción,
+ * el resumen del propietario en cash_card_owner_summary. Para actualizar el resumen
+ * de forma incremental hace falta el importe anterior, y lo devuelve la propia
+ * sentencia que modifica la tarjeta (OLD TABLE / FINAL TABLE, ver CashCardRepository):
+ * una sola ida y vuelta por escritura, sin leer antes la fila con SELECT ... FOR UPDATE,
+ * y la comprobación (propietario, versión, saldo) va en el WHERE de la misma sentencia.
+ * Cada cambio deja además su fila en el outbox (CashCardChangeLog), también en la misma transacción.
+ */
+@Service
+@Transactional
+class CashCardWriteService {
+
+    enum UpdateStatus { UPDATED, NOT_FOUND, VERSION_MISMATCH }
+
+    /** Resultado de una modificación; cashCard es la tarjeta ya modificada si status es UPDATED */
+    record UpdateResult(UpdateStatus status, CashCard cashCard) {
+    }
+
+    enum BalanceStatus { APPLIED, NOT_FOUND, INSUFFICIENT_FUNDS }
+
+    /** Resultado de un cargo o abono; cashCard es la tarjeta tras aplicarlo si status es APPLIED */
+    record BalanceResult(BalanceStatus status, CashCard cashCard) {
+    }
+
+    private final CashCardRepository cashCardRepository;
+    private final CashCardSummaryRepository summaryRepository;
+    private final CashCardChangeLog changeLog;
+    private final CashCardIdempotencyKeys idempotencyKeys;
+
+    CashCardWriteService(CashCardRepository cashCardRepository, CashCardSummaryRepository summaryRepository,
+            CashCardChangeLog changeLog, CashCardIdempotencyKeys idempotencyKeys) {
+        this.cashCardRepository = cashCardRepository;
+        this.summaryRepository = summaryRepository;
+        this.changeLog = changeLog;
+        this.idempotencyKeys = idempotencyKeys;
+    }
+
+    CashCard create(String owner, long amount) {
+        CashCard saved = cashCardRepository.save(new CashCard(null, amount, owner));
+        summaryRepository.cardAdded(owner, amount);
+        changeLog.record(CashCardChange.Operation.CREATE, saved.id(), owner, amount, saved.version());
+        return saved;
+    }
+
+    /**
+     * Alta con Idempotency-Key (ver CashCardIdempotency): la clave se guarda en la misma
+     * transacción y, si ya existe, se lanza DuplicateKeyException y no queda nada creado
+     */
+    CashCard create(String owner, long amount, String idempotencyKey) {
+        CashCard saved = create(owner, amount);
+        idempotencyKeys.record(owner, idempotencyKey, saved.id(), amount);
+        return saved;
+    }
+
+    /**
+     * @param expectedVersion versión que manda el cliente en If-Match, o null si la
+     * modificación es incondicional
+     */
+    UpdateResult update(Long id, String owner, long amount, Long expectedVersion) {
+        CashCard previous = cashCardRepository.updateAmountReturningPrevious(id, owner, amount, expectedVersion);
+        if (previous == null) {
+            // Solo cuando no se aplica se mira si es que no existe o si cambió la versión
+            return new UpdateResult(expectedVersion != null && cashCardRepository.existsByIdAndOwner(id, owner)
+                    ? UpdateStatus.VERSION_MISMATCH : UpdateStatus.NOT_FOUND, null);
+        }
+        summaryRepository.cardChanged(owner, previous.amount(), amount);
+        CashCard updated = new CashCard(id, amount, owner, previous.version() + 1);
+        changeLog.record(CashCardChange.Operation.UPDATE, id, owner, amount, updated.version());
+        return new UpdateResult(UpdateStatus.UPDATED, updated);
+    }
+
+    /**
+     * Cargo (delta negativo) o abono sin leer antes la tarjeta: un solo UPDATE con
+     * amount = amount + delta que además comprueba que el saldo no quede negativo.
+     * Solo si no se aplica se mira si es que la tarjeta no existe
+     */
+    BalanceResult addToBalance(Long id, String owner, long delta) {
+        CashCard updated = cashCardRepository.addToAmountReturningUpdated(id, owner, delta, 1, -delta);
+        if (updated == null) {
+            return new BalanceResult(cashCardRepository.existsByIdAndOwner(id, owner)
+                    ? BalanceStatus.INSUFFICIENT_FUNDS : BalanceStatus.NOT_FOUND, null);
+        }
+        summaryRepository.cardChanged(owner, updated.amount() - delta, updated.amount());
+        changeLog.record(CashCardChange.Operation.UPDATE, id, owner, updated.amount(), updated.version());
+        return new BalanceResult(BalanceStatus.APPLIED, updated);
+    }
+
+    /**
+     * Varios deltas de la misma tarjeta (CashCardBalanceCoalescer) con una sola escritura,
+     * con el mismo resultado que si se hubieran ejecutado una detrás de otra: cada delta
+     * tiene su propia comprobación de saldo y cada petición recibe la tarjeta tal y como
+     * quedó tras el suyo.
+     *
+     * Lo normal es que se apliquen todos, y eso pasa justo cuando el saldo inicial cubre
+     * la suma parcial más negativa; se intenta primero con un solo UPDATE condicionado a
+     * eso. Si no se aplica (no existe o algún cargo se rechaza) se lee la tarjeta, se
+     * aplican los deltas en orden y se guarda el saldo resultante solo si la versión no
+     * ha cambiado desde la lectura; si ha cambiado se vuelve a intentar
+     */
+    List<BalanceResult> addAllToBalance(Long id, String owner, List<Long> deltas) {
+        long total = 0;
+        long lowest = Long.MAX_VALUE;
+        for (long delta : deltas) {
+            total += delta;
+            lowest = Math.min(lowest, total);
+        }
+        CashCard updated = cashCardRepository.addToAmountReturningUpdated(id, owner, total, deltas.size(), -lowest);
+        if (updated != null) {
+            long before = updated.amount() - total;
+            List<BalanceResult> results = applyInOrder(before, updated.version() - deltas.size(), id, owner, deltas);
+            recordApplied(id, owner, before, results);
+            return results;
+        }
+        while (true) {
+            CashCard current = cashCardRepository.findByIdAndOwner(id, owner);
+            if (current == null) {
+                return Collections.nCopies(deltas.size(), new BalanceResult(BalanceStatus.NOT_FOUND, null));
+            }
+            List<BalanceResult> results = applyInOrder(current.amount(), current.version(), id, owner, deltas);
+            CashCard last = lastApplied(results);
+            if (last == null) {
+                return results;
+            }
+            long applied = last.version() - current.version();
+            if (cashCardRepository.updateAmountAndVersionIfUnchanged(id, owner, last.amount(), applied,
+                    current.version()) > 0) {
+                recordApplied(id, owner, current.amount(), results);
+                return results;
+            }
+        }
+    }
+
+    /** Resultado de cada delta aplicado en orden a partir de amount y version */
+    private List<BalanceResult> applyInOrder(long amount, long version, Long id, String owner, List<Long> deltas) {
+        List<BalanceResult> results = new ArrayList<>(deltas.size());
+        for (long delta : deltas) {
+            if (amount + delta < 0) {
+                results.add(new BalanceResult(BalanceStatus.INSUFFICIENT_FUNDS, null));
+                continue;
+            }
+            amount += delta;
+            version++;
+            results.add(new BalanceResult(BalanceStatus.APPLIED, new CashCard(id, amount, owner, version)));
+        }
+        return results;
+    }
+
+    /** Un cambio en el outbox por delta aplicado y el resumen con el saldo de antes y el final */
+    private void recordApplied(Long id, String owner, long before, List<BalanceResult> results) {
+        for (BalanceResult result : results) {
+            if (result.status() == BalanceStatus.APPLIED) {
+                changeLog.record(CashCardChange.Operation.UPDATE, id, owner, result.cashCard().amount(),
+                        result.cashCard().version());
+            }
+        }
+        summaryRepository.cardChanged(owner, before, lastApplied(results).amount());
+    }
+
+    private static CashCard lastApplied(List<BalanceResult> results) {
+        for (int i = results.size() - 1; i >= 0; i--) {
+            if (results.get(i).status() == BalanceStatus.APPLIED) {
+                return results.get(i).cashCard();
+            }
+        }
+        return null;
+    }
+
+    boolean delete(Long id, String owner) {
+        CashCard previous = cashCardRepository.deleteReturningPrevious(id, owner);
+        if (previous == null) {
+            return false;
+        }
+        summaryRepository.cardRemoved(owner, previous.amount());
+        changeLog.record(CashCardChange.Operation.DELETE, id, owner, null, null);
+        return true;
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.cashcard;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.exc.InvalidFormatException;
+
+/**
+ * Los importes se guardan como un long en céntimos (unidades menores), tanto en
+ * Java como en la columna AMOUNT, asi no hay errores de redondeo al sumar, ni boxing
+ * al mapear filas, y ordenar por importe es comparar enteros.
+ *
+ * En el JSON el importe sigue siendo un número decimal (123.45), para que el contrato
+ * de la API no cambie: estos serializadores hacen la conversión.
+ */
+final class Cents {
+
+    private static final int SCALE = 2;
+
+    private Cents() {
+    }
+
+    /** 12345 -> 123.45 */
+    static BigDecimal toDecimal(long cents) {
+        return BigDecimal.valueOf(cents, SCALE);
+    }
+
+    /**
+     * 123.45 -> 12345. Lanza ArithmeticException si el importe tiene más de dos
+     * decimales o no cabe en un long, nunca redondeamos dinero en silencio
+     */
+    static long fromDecimal(BigDecimal amount) {
+        return amount.movePointRight(SCALE).longValueExact();
+    }
+
+    static class Serializer extends JsonSerializer<Long> {
+
+        @Override
+        public void serialize(Long cents, JsonGenerator generator, SerializerProvider serializers) throws IOException {
+            generator.writeNumber(toDecimal(cents));
+        }
+    }
+
+    static class Deserializer extends JsonDeserializer<Long> {
+
+        @Override
+        public Long deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            JsonToken token = parser.currentToken();
+            BigDecimal amount;
+            if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT) {
+                amount = parser.getDecimalValue();
+            } else if (token == JsonToken.VALUE_STRING) {
+                try {
+                    amount = new BigDecimal(parser.getText().trim());
+                } catch (NumberFormatException e) {
+                    throw InvalidFormatException.from(parser, "Amount is not a number", parser.getText(), Long.class);
+                }
+            } else {
+                return (Long) context.handleUnexpectedToken(Long.class, parser);
+            }
+            try {
+                return fromDecimal(amount);
+            } catch (ArithmeticException e) {
+                throw InvalidFormatException.from(parser, "Amount must have at most two decimals", amount, Long.class);
+            }
+        }
+    }
+}
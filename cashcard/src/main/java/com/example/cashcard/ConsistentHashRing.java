@@ -0,0 +1,80 @@
+package com.example.cashcard;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Anillo de hash consistente que reparte los propietarios entre los shards.
+ *
+ * Cada shard pone virtualNodes puntos en el anillo y un propietario va al primer punto
+ * igual o mayor que el hash de su nombre (dando la vuelta al final). Al añadir un shard
+ * solo cambian de sitio los propietarios que caen en sus puntos nuevos, alrededor de
+ * 1/(n+1) del total, y todos van al shard nuevo.
+ * El hash es FNV-1a de 64 bits con la mezcla final de MurmurHash3: String.hashCode deja
+ * muy juntos los nombres parecidos (user1, user2...) y el reparto saldría desigual.
+ */
+final class ConsistentHashRing {
+
+    private final Set<Integer> shards;
+    private final long[] points;
+    private final int[] pointShards;
+
+    ConsistentHashRing(Collection<Integer> shards, int virtualNodes) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("A hash ring needs at least one shard");
+        }
+        this.shards = Set.copyOf(new TreeSet<>(shards));
+        List<long[]> nodes = new ArrayList<>(shards.size() * virtualNodes);
+        for (int shard : this.shards) {
+            for (int node = 0; node < virtualNodes; node++) {
+                nodes.add(new long[] { hash("shard-" + shard + "#" + node), shard });
+            }
+        }
+        nodes.sort(Comparator.comparingLong(node -> node[0]));
+        this.points = new long[nodes.size()];
+        this.pointShards = new int[nodes.size()];
+        for (int i = 0; i < nodes.size(); i++) {
+            points[i] = nodes.get(i)[0];
+            pointShards[i] = (int) nodes.get(i)[1];
+        }
+    }
+
+    int shardFor(String owner) {
+        long hash = hash(owner);
+        int low = 0;
+        int high = points.length;
+        // Primer punto >= hash
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (points[middle] < hash) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return pointShards[low == points.length ? 0 : low];
+    }
+
+    Set<Integer> shards() {
+        return shards;
+    }
+
+    static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.cashcard;
+
+import java.time.Duration;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Configuración adicional del DataSource que crea Spring Boot.
+ * El pool es HikariCP (spring.datasource.hikari.*); aqui solo añadimos el limite de
+ * conexiones concurrentes de BoundedDataSource cuando se configura
+ * cashcard.datasource.max-concurrent-connections, pensado para el perfil virtual.
+ *
+ * Solo se envuelve el bean dataSource de Spring Boot: las réplicas y los shards
+ * tienen sus propios pools y el limite no es para ellos. El limite no es el tamaño del
+ * pool sino cuantas peticiones pueden estar usando o esperando una conexión de Hikari;
+ * las demás esperan en el semáforo y fallan en acquire-timeout.
+ */
+@Configuration
+class DataSourceConfig {
+
+    /** El nombre con el que DataSourceAutoConfiguration registra el DataSource */
+    static final String PRIMARY_DATA_SOURCE = "dataSource";
+
+    @Bean
+    @ConditionalOnProperty("cashcard.datasource.max-concurrent-connections")
+    static BeanPostProcessor boundedDataSourcePostProcessor(Environment environment,
+            ObjectProvider<MeterRegistry> meterRegistry) {
+        int maxConcurrentConnections = environment.getRequiredProperty("cashcard.datasource.max-concurrent-connections",
+                Integer.class);
+        Duration acquireTimeout = environment.getProperty("cashcard.datasource.acquire-timeout", Duration.class,
+                Duration.ofSeconds(2));
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (beanName.equals(PRIMARY_DATA_SOURCE) && bean instanceof DataSource dataSource
+                        && !(bean instanceof BoundedDataSource)) {
+                    return new BoundedDataSource(dataSource, beanName, maxConcurrentConnections, acquireTimeout,
+                            meterRegistry.getObject());
+                }
+                return bean;
+            }
+        };
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.cashcard;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Sink a fichero (cashcard.outbox.sink=file): añade cada bloque al final de
+ * cashcard.outbox.file en NDJSON, un cambio por linea, y hace fsync antes de volver,
+ * asi un bloque solo se marca como publicado cuando ya está en disco.
+ */
+@Component
+@ConditionalOnProperty(name = "cashcard.outbox.sink", havingValue = "file")
+class FileCashCardChangeSink implements CashCardChangeSink, DisposableBean {
+
+    private final ObjectMapper objectMapper;
+    private final FileChannel channel;
+
+    FileCashCardChangeSink(ObjectMapper objectMapper,
+            @Value("${cashcard.outbox.file:data/cashcard-changes.ndjson}") Path file) throws IOException {
+        this.objectMapper = objectMapper;
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    @Override
+    public synchronized void publish(List<CashCardChange> changes) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(changes.size() * 128);
+        for (CashCardChange change : changes) {
+            objectMapper.writeValue(buffer, change);
+            buffer.write('\n');
+        }
+        ByteBuffer bytes = ByteBuffer.wrap(buffer.toByteArray());
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        channel.force(false);
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        channel.close();
+    }
+}
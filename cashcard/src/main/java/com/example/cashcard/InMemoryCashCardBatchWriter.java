@@ -0,0 +1,56 @@
+package com.example.cashcard;
+
+import java.util.List;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Bloques de /cashcards/batch con el motor en memoria: no hay sentencias batch, cada
+ * operación va por CashCardWriteService igual que en los endpoints individuales. Eso
+ * la mete en su propia transacción, que solo hace falta para el outbox: la posición
+ * reservada en cash_card_change_position y la fila del cambio se confirman juntas,
+ * asi GET /cashcards/changes nunca ve una posición antes que la anterior (ver
+ * CashCardChangeLog). El resumen sale del indice del motor, no hay nada que acumular.
+ * Cada operación es atómica por si sola, el bloque no.
+ */
+@Repository
+@Profile("memory")
+class InMemoryCashCardBatchWriter implements CashCardBatchWriter {
+
+    private final CashCardWriteService writeService;
+
+    InMemoryCashCardBatchWriter(CashCardWriteService writeService) {
+        this.writeService = writeService;
+    }
+
+    @Override
+    public List<CashCardBatchResult> executeChunk(String owner, List<CashCardBatchOperation> chunk, int firstIndex) {
+        CashCardBatchResult[] results = new CashCardBatchResult[chunk.size()];
+        for (int i = 0; i < chunk.size(); i++) {
+            CashCardBatchOperation operation = chunk.get(i);
+            if (!operation.isValid()) {
+                results[i] = new CashCardBatchResult(firstIndex + i, operation.op(), operation.id(),
+                        HttpStatus.BAD_REQUEST.value());
+                continue;
+            }
+            Long id = operation.id();
+            HttpStatus status;
+            switch (operation.op()) {
+                case CREATE:
+                    id = writeService.create(owner, operation.amount()).id();
+                    status = HttpStatus.CREATED;
+                    break;
+                case UPDATE:
+                    status = writeService.update(id, owner, operation.amount(), null).status()
+                            == CashCardWriteService.UpdateStatus.UPDATED ? HttpStatus.NO_CONTENT : HttpStatus.NOT_FOUND;
+                    break;
+                default:
+                    status = writeService.delete(id, owner) ? HttpStatus.NO_CONTENT : HttpStatus.NOT_FOUND;
+            }
+            results[i] = new CashCardBatchResult(firstIndex + i, operation.op(), id, status.value());
+        }
+        return List.of(results);
+    }
+}
@@ -0,0 +1,655 @@
+package com.example.cashcard;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.util.TypeInformation;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mapping.PropertyReferenceException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Implementación de CashCardRepository que guarda todas las tarjetas en memoria
+ * (perfil memory), para despliegues de mucha lectura en los que los datos caben en
+ * el heap. Ninguna consulta pasa por JDBC.
+ *
+ * Las tarjetas se guardan por columnas en arrays de primitivos indexados por posición
+ * (id, amount, version y una referencia int al propietario), y un LongIntHashMap va
+ * del id a la posición. Cada propietario tiene un indice con sus pares (amount, id)
+ * ordenados en dos long[]; con él salen las páginas ordenadas por importe, el keyset
+ * y el resumen (numero, total, minimo y maximo) sin recorrer nada.
+ *
+ * Cada escritura se apunta primero en el WAL (CashCardWriteAheadLog) y despues se
+ * aplica en memoria; al arrancar se reconstruye todo a partir del snapshot y el WAL.
+ * Si no hay ninguno de los dos se importa la tabla cash_card una vez, asi se puede
+ * pasar de un motor al otro.
+ *
+ * Las lecturas comparten un ReadWriteLock y las escrituras lo toman en exclusiva, asi
+ * que cada escritura que devuelve la fila (updateAmountReturningPrevious...) comprueba
+ * y modifica de una vez, como la sentencia equivalente en H2. Lo que no hay es rollback: un cambio
+ * ya aplicado se queda aunque la transacción JDBC que lo envuelve falle despues, y con
+ * ello su fila del outbox se pierde (ver CashCardChangeLog).
+ * SUPPORTS anula el readOnly de las lecturas de CashCardRepository: aqui una lectura
+ * no tiene por que abrir una transacción ni pedir conexión.
+ */
+@Repository
+@Profile("memory")
+@Transactional(propagation = Propagation.SUPPORTS)
+class InMemoryCashCardRepository implements CashCardRepository, CashCardExportSource, DisposableBean {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int EXPORT_CHUNK = 512;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Columnas, una posición por tarjeta; las posiciones libres se reutilizan
+    private long[] ids = new long[INITIAL_CAPACITY];
+    private long[] amounts = new long[INITIAL_CAPACITY];
+    private long[] versions = new long[INITIAL_CAPACITY];
+    private int[] ownerRefs = new int[INITIAL_CAPACITY];
+    private int slotCount;
+    private int[] freeSlots = new int[16];
+    private int freeCount;
+    private final LongIntHashMap slotsById = new LongIntHashMap(INITIAL_CAPACITY);
+
+    // Propietarios internados: el nombre se guarda una vez y las tarjetas apuntan a él con un int
+    private final List<String> owners = new ArrayList<>();
+    private final Map<String, Integer> ownerRefsByName = new HashMap<>();
+    private final List<OwnerIndex> ownerIndexes = new ArrayList<>();
+
+    private long nextId = 1;
+    private final CashCardWriteAheadLog wal;
+    private final Path temporaryDirectory;
+
+    /**
+     * @param dataDir directorio del snapshot y el WAL; vacío para usar un directorio
+     * temporal que se borra al parar (solo tiene sentido en tests)
+     */
+    @Autowired
+    InMemoryCashCardRepository(JdbcTemplate jdbcTemplate,
+            @Value("${cashcard.memory.data-dir:}") String dataDir,
+            @Value("${cashcard.memory.wal-size:64MB}") DataSize walSize,
+            @Value("${cashcard.memory.wal-sync:false}") boolean walSync) {
+        this(dataDir.isBlank() ? null : Path.of(dataDir), Math.toIntExact(walSize.toBytes()), walSync,
+                () -> jdbcTemplate.query("SELECT id, amount, owner, version FROM cash_card",
+                        (rs, rowNum) -> new CashCard(rs.getLong("id"), rs.getLong("amount"), rs.getString("owner"),
+                                rs.getLong("version"))));
+    }
+
+    InMemoryCashCardRepository(Path dataDir, int walSize, boolean walSync, Supplier<List<CashCard>> initialCards) {
+        try {
+            this.temporaryDirectory = dataDir == null ? Files.createTempDirectory("cashcard-memory") : null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.wal = CashCardWriteAheadLog.open(dataDir != null ? dataDir : temporaryDirectory, walSize, walSync);
+        boolean loaded = wal.replay(new CashCardWriteAheadLog.CardSink() {
+            @Override
+            public void put(long id, long amount, String owner, long version) {
+                applyPut(id, amount, owner, version);
+            }
+
+            @Override
+            public void delete(long id) {
+                applyDelete(id);
+            }
+        });
+        if (!loaded) {
+            for (CashCard cashCard : initialCards.get()) {
+                applyPut(cashCard.id(), cashCard.amount(), cashCard.owner(),
+                        cashCard.version() != null ? cashCard.version() : 0);
+            }
+            snapshot();
+        }
+    }
+
+    // ---- Consultas de CashCardRepository ----
+
+    @Override
+    public CashCard findByIdAndOwner(Long id, String owner) {
+        lock.readLock().lock();
+        try {
+            int slot = slotOf(id, owner);
+            return slot == LongIntHashMap.MISSING ? null : cardAt(slot);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean existsByIdAndOwner(Long id, String owner) {
+        lock.readLock().lock();
+        try {
+            return slotOf(id, owner) != LongIntHashMap.MISSING;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Page<CashCard> findByOwner(String owner, PageRequest pageRequest) {
+        lock.readLock().lock();
+        try {
+            OwnerIndex index = indexOf(owner);
+            if (index == null) {
+                return new PageImpl<>(List.of(), pageRequest, 0);
+            }
+            Sort sort = pageRequest.getSort();
+            Sort.Order amountOrder = sort.getOrderFor("amount");
+            List<CashCard> content;
+            if (sort.isUnsorted() || (amountOrder != null && sort.stream().count() == 1)) {
+                // Orden por importe: sale directamente del indice
+                int from = (int) Math.min(pageRequest.getOffset(), index.size);
+                int to = Math.min(from + pageRequest.getPageSize(), index.size);
+                content = new ArrayList<>(to - from);
+                boolean descending = amountOrder != null && amountOrder.isDescending();
+                for (int i = from; i < to; i++) {
+                    content.add(cardAt(slotsById.get(index.ids[descending ? index.size - 1 - i : i])));
+                }
+            } else {
+                List<CashCard> all = cardsOf(index, 0, index.size);
+                all.sort(comparator(sort));
+                int from = (int) Math.min(pageRequest.getOffset(), all.size());
+                content = new ArrayList<>(all.subList(from, Math.min(from + pageRequest.getPageSize(), all.size())));
+            }
+            return new PageImpl<>(content, pageRequest, index.size);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<CashCard> findByOwnerFromStart(String owner, int limit) {
+        lock.readLock().lock();
+        try {
+            OwnerIndex index = indexOf(owner);
+            return index == null ? List.of() : cardsOf(index, 0, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<CashCard> findByOwnerAfter(String owner, long amount, Long id, int limit) {
+        lock.readLock().lock();
+        try {
+            OwnerIndex index = indexOf(owner);
+            return index == null ? List.of() : cardsOf(index, index.firstAfter(amount, id), limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Recorre todas las tarjetas del propietario por (amount, id) sin tener el lock
+     * mientras se ejecuta action: se copian de EXPORT_CHUNK en EXPORT_CHUNK
+     */
+    @Override
+    public void forEachByOwner(String owner, Consumer<CashCard> action) {
+        List<CashCard> chunk = findByOwnerFromStart(owner, EXPORT_CHUNK);
+        while (!chunk.isEmpty()) {
+            chunk.forEach(action);
+            if (chunk.size() < EXPORT_CHUNK) {
+                return;
+            }
+            CashCard last = chunk.get(chunk.size() - 1);
+            chunk = findByOwnerAfter(owner, last.amount(), last.id(), EXPORT_CHUNK);
+        }
+    }
+
+    /** El resumen sale del indice del propietario, no hace falta mantener otra tabla */
+    CashCardSummary summary(String owner) {
+        lock.readLock().lock();
+        try {
+            OwnerIndex index = indexOf(owner);
+            if (index == null || index.size == 0) {
+                return CashCardSummary.empty(owner);
+            }
+            return new CashCardSummary(owner, index.size, index.total, index.amounts[0],
+                    index.amounts[index.size - 1]);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ---- Escrituras de CashCardRepository ----
+
+    @Override
+    public CashCard updateAmountReturningPrevious(Long id, String owner, long amount, Long expectedVersion) {
+        lock.writeLock().lock();
+        try {
+            int slot = slotOf(id, owner);
+            if (slot == LongIntHashMap.MISSING || (expectedVersion != null && expectedVersion != versions[slot])) {
+                return null;
+            }
+            CashCard previous = cardAt(slot);
+            put(id, amount, owner, previous.version() + 1);
+            return previous;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public CashCard deleteReturningPrevious(Long id, String owner) {
+        lock.writeLock().lock();
+        try {
+            int slot = slotOf(id, owner);
+            if (slot == LongIntHashMap.MISSING) {
+                return null;
+            }
+            CashCard previous = cardAt(slot);
+            delete(id);
+            return previous;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public CashCard addToAmountReturningUpdated(Long id, String owner, long delta, long changes, long required) {
+        lock.writeLock().lock();
+        try {
+            int slot = slotOf(id, owner);
+            if (slot == LongIntHashMap.MISSING || amounts[slot] < required) {
+                return null;
+            }
+            put(id, amounts[slot] + delta, owner, versions[slot] + changes);
+            return cardAt(slot);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int updateAmountAndVersionIfUnchanged(Long id, String owner, long amount, long changes,
+            long expectedVersion) {
+        lock.writeLock().lock();
+        try {
+            int slot = slotOf(id, owner);
+            if (slot == LongIntHashMap.MISSING || versions[slot] != expectedVersion) {
+                return 0;
+            }
+            put(id, amount, owner, versions[slot] + changes);
+            return 1;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Como en Spring Data JDBC: sin id es un alta, con id una modificación que comprueba la versión */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <S extends CashCard> S save(S entity) {
+        lock.writeLock().lock();
+        try {
+            if (entity.id() == null) {
+                long id = nextId;
+                put(id, entity.amount(), entity.owner(), 0);
+                return (S) new CashCard(id, entity.amount(), entity.owner(), 0L);
+            }
+            int slot = slotsById.get(entity.id());
+            long version = 0;
+            if (slot != LongIntHashMap.MISSING) {
+                if (entity.version() != null && entity.version() != versions[slot]) {
+                    throw new OptimisticLockingFailureException("Cash card " + entity.id() + " was modified");
+                }
+                version = versions[slot] + 1;
+            }
+            put(entity.id(), entity.amount(), entity.owner(), version);
+            return (S) new CashCard(entity.id(), entity.amount(), entity.owner(), version);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public <S extends CashCard> Iterable<S> saveAll(Iterable<S> entities) {
+        List<S> saved = new ArrayList<>();
+        entities.forEach(entity -> saved.add(save(entity)));
+        return saved;
+    }
+
+    @Override
+    public void deleteById(Long id) {
+        lock.writeLock().lock();
+        try {
+            if (slotsById.get(id) != LongIntHashMap.MISSING) {
+                delete(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void delete(CashCard entity) {
+        deleteById(entity.id());
+    }
+
+    @Override
+    public void deleteAllById(Iterable<? extends Long> ids) {
+        ids.forEach(this::deleteById);
+    }
+
+    @Override
+    public void deleteAll(Iterable<? extends CashCard> entities) {
+        entities.forEach(this::delete);
+    }
+
+    @Override
+    public void deleteAll() {
+        lock.writeLock().lock();
+        try {
+            for (CashCard cashCard : allCards()) {
+                delete(cashCard.id());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // ---- Resto de consultas de CrudRepository y PagingAndSortingRepository ----
+
+    @Override
+    public Optional<CashCard> findById(Long id) {
+        lock.readLock().lock();
+        try {
+            int slot = slotsById.get(id);
+            return slot == LongIntHashMap.MISSING ? Optional.empty() : Optional.of(cardAt(slot));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean existsById(Long id) {
+        return findById(id).isPresent();
+    }
+
+    @Override
+    public Iterable<CashCard> findAll() {
+        lock.readLock().lock();
+        try {
+            return allCards();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Iterable<CashCard> findAllById(Iterable<Long> ids) {
+        List<CashCard> found = new ArrayList<>();
+        ids.forEach(id -> findById(id).ifPresent(found::add));
+        return found;
+    }
+
+    @Override
+    public long count() {
+        lock.readLock().lock();
+        try {
+            return slotsById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Iterable<CashCard> findAll(Sort sort) {
+        List<CashCard> all = (List<CashCard>) findAll();
+        if (sort.isSorted()) {
+            all.sort(comparator(sort));
+        }
+        return all;
+    }
+
+    @Override
+    public Page<CashCard> findAll(Pageable pageable) {
+        List<CashCard> all = (List<CashCard>) findAll(pageable.getSort());
+        if (pageable.isUnpaged()) {
+            return new PageImpl<>(all);
+        }
+        int from = (int) Math.min(pageable.getOffset(), all.size());
+        int to = Math.min(from + pageable.getPageSize(), all.size());
+        return new PageImpl<>(new ArrayList<>(all.subList(from, to)), pageable, all.size());
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        wal.close();
+        if (temporaryDirectory != null) {
+            try (Stream<Path> files = Files.list(temporaryDirectory)) {
+                for (Path file : files.toList()) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            Files.deleteIfExists(temporaryDirectory);
+        }
+    }
+
+    // ---- Internos; los que modifican se llaman con el write lock ----
+
+    /** Primero el WAL y despues la memoria */
+    private void put(long id, long amount, String owner, long version) {
+        if (!wal.appendPut(id, amount, owner, version)) {
+            snapshot();
+            wal.appendPut(id, amount, owner, version);
+        }
+        applyPut(id, amount, owner, version);
+    }
+
+    private void delete(long id) {
+        if (!wal.appendDelete(id)) {
+            snapshot();
+            wal.appendDelete(id);
+        }
+        applyDelete(id);
+    }
+
+    private void snapshot() {
+        wal.snapshot(writer -> {
+            for (int slot = 0; slot < slotCount; slot++) {
+                if (slotsById.get(ids[slot]) == slot) {
+                    writer.put(ids[slot], amounts[slot], owners.get(ownerRefs[slot]), versions[slot]);
+                }
+            }
+        });
+    }
+
+    private void applyPut(long id, long amount, String owner, long version) {
+        int ownerRef = ownerRef(owner);
+        int slot = slotsById.get(id);
+        if (slot == LongIntHashMap.MISSING) {
+            slot = allocateSlot();
+            slotsById.put(id, slot);
+            ids[slot] = id;
+        } else {
+            ownerIndexes.get(ownerRefs[slot]).remove(amounts[slot], id);
+        }
+        amounts[slot] = amount;
+        versions[slot] = version;
+        ownerRefs[slot] = ownerRef;
+        ownerIndexes.get(ownerRef).add(amount, id);
+        nextId = Math.max(nextId, id + 1);
+    }
+
+    private void applyDelete(long id) {
+        int slot = slotsById.remove(id);
+        if (slot == LongIntHashMap.MISSING) {
+            return;
+        }
+        ownerIndexes.get(ownerRefs[slot]).remove(amounts[slot], id);
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        }
+        freeSlots[freeCount++] = slot;
+    }
+
+    private int allocateSlot() {
+        if (freeCount > 0) {
+            return freeSlots[--freeCount];
+        }
+        if (slotCount == ids.length) {
+            int capacity = ids.length * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            amounts = Arrays.copyOf(amounts, capacity);
+            versions = Arrays.copyOf(versions, capacity);
+            ownerRefs = Arrays.copyOf(ownerRefs, capacity);
+        }
+        return slotCount++;
+    }
+
+    private int ownerRef(String owner) {
+        Integer ref = ownerRefsByName.get(owner);
+        if (ref == null) {
+            ref = owners.size();
+            owners.add(owner);
+            ownerRefsByName.put(owner, ref);
+            ownerIndexes.add(new OwnerIndex());
+        }
+        return ref;
+    }
+
+    private OwnerIndex indexOf(String owner) {
+        Integer ref = ownerRefsByName.get(owner);
+        return ref == null ? null : ownerIndexes.get(ref);
+    }
+
+    /** Posición de la tarjeta si existe y es de owner, o MISSING */
+    private int slotOf(Long id, String owner) {
+        if (id == null) {
+            return LongIntHashMap.MISSING;
+        }
+        int slot = slotsById.get(id);
+        if (slot == LongIntHashMap.MISSING || !owners.get(ownerRefs[slot]).equals(owner)) {
+            return LongIntHashMap.MISSING;
+        }
+        return slot;
+    }
+
+    private CashCard cardAt(int slot) {
+        return new CashCard(ids[slot], amounts[slot], owners.get(ownerRefs[slot]), versions[slot]);
+    }
+
+    private List<CashCard> cardsOf(OwnerIndex index, int from, int limit) {
+        int to = (int) Math.min((long) from + limit, index.size);
+        List<CashCard> cards = new ArrayList<>(Math.max(0, to - from));
+        for (int i = from; i < to; i++) {
+            cards.add(cardAt(slotsById.get(index.ids[i])));
+        }
+        return cards;
+    }
+
+    private List<CashCard> allCards() {
+        List<CashCard> all = new ArrayList<>(slotsById.size());
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (slotsById.get(ids[slot]) == slot) {
+                all.add(cardAt(slot));
+            }
+        }
+        return all;
+    }
+
+    private static Comparator<CashCard> comparator(Sort sort) {
+        Comparator<CashCard> comparator = null;
+        for (Sort.Order order : sort) {
+            Comparator<CashCard> byProperty = switch (order.getProperty()) {
+                case "id" -> Comparator.comparing(CashCard::id);
+                case "amount" -> Comparator.comparingLong(CashCard::amount);
+                case "owner" -> Comparator.comparing(CashCard::owner);
+                case "version" -> Comparator.comparing(CashCard::version);
+                default -> throw new PropertyReferenceException(order.getProperty(),
+                        TypeInformation.of(CashCard.class), List.of());
+            };
+            if (order.isDescending()) {
+                byProperty = byProperty.reversed();
+            }
+            comparator = comparator == null ? byProperty : comparator.thenComparing(byProperty);
+        }
+        return comparator == null ? Comparator.comparing(CashCard::id) : comparator;
+    }
+
+    /** Pares (amount, id) de un propietario ordenados, mas el total para el resumen */
+    private static final class OwnerIndex {
+
+        long[] amounts = new long[8];
+        long[] ids = new long[8];
+        int size;
+        long total;
+
+        void add(long amount, long id) {
+            int position = -search(amount, id) - 1;
+            if (size == amounts.length) {
+                amounts = Arrays.copyOf(amounts, size * 2);
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(amounts, position, amounts, position + 1, size - position);
+            System.arraycopy(ids, position, ids, position + 1, size - position);
+            amounts[position] = amount;
+            ids[position] = id;
+            size++;
+            total += amount;
+        }
+
+        void remove(long amount, long id) {
+            int position = search(amount, id);
+            if (position < 0) {
+                return;
+            }
+            System.arraycopy(amounts, position + 1, amounts, position, size - position - 1);
+            System.arraycopy(ids, position + 1, ids, position, size - position - 1);
+            size--;
+            total -= amount;
+        }
+
+        /** Primera posición estrictamente posterior a (amount, id) */
+        int firstAfter(long amount, long id) {
+            int position = search(amount, id);
+            return position >= 0 ? position + 1 : -position - 1;
+        }
+
+        /** Como Arrays.binarySearch: la posición si esta, o -(punto de inserción) - 1 */
+        private int search(long amount, long id) {
+            int low = 0;
+            int high = size - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int cmp = amounts[mid] != amount ? Long.compare(amounts[mid], amount) : Long.compare(ids[mid], id);
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+    }
+}
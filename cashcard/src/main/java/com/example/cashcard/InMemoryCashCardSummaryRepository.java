@@ -0,0 +1,45 @@
+package com.example.cashcard;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Resumen por propietario con el motor en memoria: sale directamente del indice por
+ * propietario de InMemoryCashCardRepository, que ya esta al dia con cada escritura,
+ * asi que no hay nada que mantener ni que reconstruir.
+ */
+@Repository
+@Profile("memory")
+class InMemoryCashCardSummaryRepository implements CashCardSummaryRepository {
+
+    private final InMemoryCashCardRepository cashCardRepository;
+
+    InMemoryCashCardSummaryRepository(InMemoryCashCardRepository cashCardRepository) {
+        this.cashCardRepository = cashCardRepository;
+    }
+
+    @Override
+    public CashCardSummary findByOwner(String owner) {
+        return cashCardRepository.summary(owner);
+    }
+
+    @Override
+    public void cardAdded(String owner, long amount) {
+    }
+
+    @Override
+    public void cardChanged(String owner, long oldAmount, long newAmount) {
+    }
+
+    @Override
+    public void cardRemoved(String owner, long amount) {
+    }
+
+    @Override
+    public void apply(String owner, CashCardSummaryDelta delta) {
+    }
+
+    @Override
+    public void recompute(String owner) {
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.cashcard;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Ejecuta cada bloque de /cashcards/batch en su propia transacción con sentencias batch
+ * de JDBC. Dentro de un bloque las operaciones consecutivas del mismo tipo se mandan en
+ * un solo batch, asi se respeta el orden en que llegaron.
+ * Las sentencias son las mismas que las de los endpoints individuales, siempre con
+ * owner = usuario autenticado, por lo que un usuario no puede tocar tarjetas ajenas.
+ * El cambio en el resumen del propietario (cash_card_owner_summary) se va acumulando
+ * en un CashCardSummaryDelta y se aplica una vez al final de cada bloque. Para eso hace
+ * falta el importe anterior de las tarjetas que se modifican o borran: antes de cada
+ * tramo se leen con una sola consulta SELECT ... FOR UPDATE las que el bloque aún no conoce.
+ * Las operaciones que cambian algo dejan su fila en el outbox (CashCardChangeLog), también
+ * en batch y en la transacción del bloque.
+ */
+@Repository
+@Profile("!memory")
+class JdbcCashCardBatchWriter implements CashCardBatchWriter {
+
+    private static final String INSERT_SQL = "INSERT INTO cash_card (amount, owner) VALUES (:amount, :owner)";
+    private static final String UPDATE_SQL = "UPDATE cash_card SET amount = :amount, version = version + 1 "
+            + "WHERE id = :id AND owner = :owner";
+    private static final String DELETE_SQL = "DELETE FROM cash_card WHERE id = :id AND owner = :owner";
+    private static final String LOCK_SQL = "SELECT id, amount FROM cash_card WHERE owner = :owner AND id IN (:ids) "
+            + "FOR UPDATE";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final CashCardSummaryRepository summaryRepository;
+    private final CashCardChangeLog changeLog;
+
+    JdbcCashCardBatchWriter(NamedParameterJdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+            CashCardSummaryRepository summaryRepository, CashCardChangeLog changeLog) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.summaryRepository = summaryRepository;
+        this.changeLog = changeLog;
+    }
+
+    @Override
+    public List<CashCardBatchResult> executeChunk(String owner, List<CashCardBatchOperation> chunk, int firstIndex) {
+        return transactionTemplate.execute(status -> {
+            CashCardBatchResult[] results = new CashCardBatchResult[chunk.size()];
+            CashCardSummaryDelta delta = new CashCardSummaryDelta();
+            // Importe actual de las tarjetas que el bloque ya ha leído o escrito
+            Map<Long, Long> amounts = new HashMap<>();
+            int start = 0;
+            while (start < chunk.size()) {
+                // Buscamos el tramo de operaciones consecutivas del mismo tipo
+                CashCardBatchOperation.Type type = chunk.get(start).op();
+                int end = start + 1;
+                while (end < chunk.size() && chunk.get(end).op() == type) {
+                    end++;
+                }
+                executeRun(owner, chunk, start, end, firstIndex, results, delta, amounts);
+                start = end;
+            }
+            summaryRepository.apply(owner, delta);
+            return List.of(results);
+        });
+    }
+
+    private void executeRun(String owner, List<CashCardBatchOperation> chunk, int start, int end, int firstIndex,
+            CashCardBatchResult[] results, CashCardSummaryDelta delta, Map<Long, Long> amounts) {
+        List<Integer> positions = new ArrayList<>();
+        List<SqlParameterSource> params = new ArrayList<>();
+        for (int i = start; i < end; i++) {
+            CashCardBatchOperation operation = chunk.get(i);
+            if (!operation.isValid()) {
+                results[i] = new CashCardBatchResult(firstIndex + i, operation.op(), operation.id(),
+                        HttpStatus.BAD_REQUEST.value());
+                continue;
+            }
+            positions.add(i);
+            params.add(new MapSqlParameterSource()
+                    .addValue("id", operation.id())
+                    .addValue("amount", operation.amount())
+                    .addValue("owner", owner));
+        }
+        if (params.isEmpty()) {
+            return;
+        }
+        SqlParameterSource[] batchArgs = params.toArray(SqlParameterSource[]::new);
+        CashCardBatchOperation.Type type = chunk.get(start).op();
+        if (type == CashCardBatchOperation.Type.CREATE) {
+            KeyHolder keyHolder = new GeneratedKeyHolder();
+            jdbcTemplate.batchUpdate(INSERT_SQL, batchArgs, keyHolder, new String[] { "ID" });
+            List<Map<String, Object>> keys = keyHolder.getKeyList();
+            List<Long> created = new ArrayList<>(positions.size());
+            for (int k = 0; k < positions.size(); k++) {
+                Long id = ((Number) keys.get(k).get("ID")).longValue();
+                long amount = chunk.get(positions.get(k)).amount();
+                created.add(id);
+                amounts.put(id, amount);
+                delta.added(amount);
+                results[positions.get(k)] = new CashCardBatchResult(firstIndex + positions.get(k), type, id,
+                        HttpStatus.CREATED.value());
+            }
+            changeLog.recordCurrent(CashCardChange.Operation.CREATE, owner, created);
+            return;
+        }
+        lockAmounts(owner, chunk, positions, amounts);
+        int[] counts = jdbcTemplate.batchUpdate(type == CashCardBatchOperation.Type.UPDATE ? UPDATE_SQL : DELETE_SQL,
+                batchArgs);
+        List<Long> changed = new ArrayList<>(positions.size());
+        for (int k = 0; k < positions.size(); k++) {
+            int i = positions.get(k);
+            HttpStatus status = counts[k] > 0 ? HttpStatus.NO_CONTENT : HttpStatus.NOT_FOUND;
+            if (counts[k] > 0) {
+                Long id = chunk.get(i).id();
+                changed.add(id);
+                if (type == CashCardBatchOperation.Type.UPDATE) {
+                    delta.changed(amounts.put(id, chunk.get(i).amount()), chunk.get(i).amount());
+                } else {
+                    delta.removed(amounts.remove(id));
+                }
+            }
+            results[i] = new CashCardBatchResult(firstIndex + i, type, chunk.get(i).id(), status.value());
+        }
+        if (type == CashCardBatchOperation.Type.UPDATE) {
+            changeLog.recordCurrent(CashCardChange.Operation.UPDATE, owner, changed);
+        } else {
+            changeLog.recordDeleted(owner, changed);
+        }
+    }
+
+    /** Lee y bloquea en una sola consulta las tarjetas del tramo que el bloque aún no conoce */
+    private void lockAmounts(String owner, List<CashCardBatchOperation> chunk, List<Integer> positions,
+            Map<Long, Long> amounts) {
+        Set<Long> unknown = new HashSet<>();
+        for (int i : positions) {
+            if (!amounts.containsKey(chunk.get(i).id())) {
+                unknown.add(chunk.get(i).id());
+            }
+        }
+        if (unknown.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.query(LOCK_SQL, new MapSqlParameterSource("owner", owner).addValue("ids", unknown),
+                rs -> {
+                    amounts.put(rs.getLong("id"), rs.getLong("amount"));
+                });
+    }
+}
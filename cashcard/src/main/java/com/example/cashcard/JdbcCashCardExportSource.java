@@ -0,0 +1,36 @@
+package com.example.cashcard;
+
+import java.util.function.Consumer;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Usamos un JdbcTemplate propio con fetch size configurado y un RowCallbackHandler:
+ * el cursor JDBC es de solo avance y cada fila se entrega en cuanto se lee, sin
+ * construir nunca una List<CashCard>, asi la memoria usada no depende del numero de tarjetas.
+ */
+@Repository
+@Profile("!memory")
+class JdbcCashCardExportSource implements CashCardExportSource {
+
+    private static final String EXPORT_SQL = "SELECT id, amount, owner FROM cash_card WHERE owner = ? ORDER BY amount, id";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    JdbcCashCardExportSource(DataSource dataSource, @Value("${cashcard.export.fetch-size:500}") int fetchSize) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(fetchSize);
+    }
+
+    @Override
+    public void forEachByOwner(String owner, Consumer<CashCard> action) {
+        jdbcTemplate.query(EXPORT_SQL, (RowCallbackHandler) rs -> action.accept(
+                new CashCard(rs.getLong("id"), rs.getLong("amount"), rs.getString("owner"))), owner);
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.cashcard;
+
+import java.util.List;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Implementación JDBC de CashCardSummaryRepository sobre la tabla cash_card_owner_summary.
+ *
+ * En cardAdded, cardChanged y cardRemoved el numero de tarjetas y el total
+ * se ajustan con el delta; el minimo y el maximo solo se vuelven a calcular (con el
+ * indice OWNER, AMOUNT) cuando la tarjeta que cambia era justo el minimo o el maximo.
+ * apply hace lo mismo con el cambio acumulado de un bloque (CashCardSummaryDelta).
+ */
+@Repository
+@Profile("!memory")
+class JdbcCashCardSummaryRepository implements CashCardSummaryRepository {
+
+    static final String FIND_SQL = """
+            SELECT owner, card_count, total_amount, min_amount, max_amount
+            FROM cash_card_owner_summary WHERE owner = :owner""";
+
+    static final String CARD_ADDED_SQL = """
+            MERGE INTO cash_card_owner_summary s
+            USING (VALUES (CAST(:owner AS VARCHAR(256)), CAST(:amount AS BIGINT))) AS c (owner, amount)
+            ON s.owner = c.owner
+            WHEN MATCHED THEN UPDATE SET
+                card_count = s.card_count + 1,
+                total_amount = s.total_amount + c.amount,
+                min_amount = LEAST(COALESCE(s.min_amount, c.amount), c.amount),
+                max_amount = GREATEST(COALESCE(s.max_amount, c.amount), c.amount)
+            WHEN NOT MATCHED THEN
+                INSERT (owner, card_count, total_amount, min_amount, max_amount)
+                VALUES (c.owner, 1, c.amount, c.amount, c.amount)""";
+
+    static final String CARD_CHANGED_SQL = """
+            UPDATE cash_card_owner_summary SET
+                total_amount = total_amount - :old + :new,
+                min_amount = CASE WHEN min_amount = :old AND :new > :old
+                    THEN (SELECT MIN(amount) FROM cash_card WHERE owner = :owner)
+                    ELSE LEAST(min_amount, :new) END,
+                max_amount = CASE WHEN max_amount = :old AND :new < :old
+                    THEN (SELECT MAX(amount) FROM cash_card WHERE owner = :owner)
+                    ELSE GREATEST(max_amount, :new) END
+            WHERE owner = :owner""";
+
+    static final String CARD_REMOVED_SQL = """
+            UPDATE cash_card_owner_summary SET
+                card_count = card_count - 1,
+                total_amount = total_amount - :amount,
+                min_amount = CASE WHEN min_amount = :amount
+                    THEN (SELECT MIN(amount) FROM cash_card WHERE owner = :owner)
+                    ELSE min_amount END,
+                max_amount = CASE WHEN max_amount = :amount
+                    THEN (SELECT MAX(amount) FROM cash_card WHERE owner = :owner)
+                    ELSE max_amount END
+            WHERE owner = :owner""";
+
+    static final String APPLY_SQL = """
+            MERGE INTO cash_card_owner_summary s
+            USING (VALUES (CAST(:owner AS VARCHAR(256)))) AS c (owner)
+            ON s.owner = c.owner
+            WHEN MATCHED THEN UPDATE SET
+                card_count = s.card_count + :cardCount,
+                total_amount = s.total_amount + :totalAmount,
+                min_amount = CASE WHEN CAST(:removedLow AS BIGINT) <= COALESCE(s.min_amount, :removedLow)
+                    THEN (SELECT MIN(amount) FROM cash_card WHERE owner = c.owner)
+                    ELSE LEAST(COALESCE(s.min_amount, :addedLow), COALESCE(CAST(:addedLow AS BIGINT), s.min_amount)) END,
+                max_amount = CASE WHEN CAST(:removedHigh AS BIGINT) >= COALESCE(s.max_amount, :removedHigh)
+                    THEN (SELECT MAX(amount) FROM cash_card WHERE owner = c.owner)
+                    ELSE GREATEST(COALESCE(s.max_amount, :addedHigh), COALESCE(CAST(:addedHigh AS BIGINT), s.max_amount)) END
+            WHEN NOT MATCHED THEN
+                INSERT (owner, card_count, total_amount, min_amount, max_amount)
+                VALUES (c.owner, :cardCount, :totalAmount,
+                        (SELECT MIN(amount) FROM cash_card WHERE owner = c.owner),
+                        (SELECT MAX(amount) FROM cash_card WHERE owner = c.owner))""";
+
+    private static final String RECOMPUTE_SQL = """
+            MERGE INTO cash_card_owner_summary s
+            USING (SELECT CAST(:owner AS VARCHAR(256)) AS owner, COUNT(*) AS card_count,
+                          COALESCE(SUM(amount), 0) AS total_amount, MIN(amount) AS min_amount, MAX(amount) AS max_amount
+                   FROM cash_card WHERE owner = :owner) AS c
+            ON s.owner = c.owner
+            WHEN MATCHED THEN UPDATE SET
+                card_count = c.card_count, total_amount = c.total_amount,
+                min_amount = c.min_amount, max_amount = c.max_amount
+            WHEN NOT MATCHED THEN
+                INSERT (owner, card_count, total_amount, min_amount, max_amount)
+                VALUES (c.owner, c.card_count, c.total_amount, c.min_amount, c.max_amount)""";
+
+    private static final String LOCK_SQL = "SELECT owner FROM cash_card_owner_summary WHERE owner = :owner FOR UPDATE";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    JdbcCashCardSummaryRepository(NamedParameterJdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public CashCardSummary findByOwner(String owner) {
+        List<CashCardSummary> summaries = jdbcTemplate.query(FIND_SQL, new MapSqlParameterSource("owner", owner),
+                (rs, rowNum) -> new CashCardSummary(rs.getString("owner"), rs.getLong("card_count"),
+                        rs.getLong("total_amount"), rs.getObject("min_amount", Long.class),
+                        rs.getObject("max_amount", Long.class)));
+        return summaries.isEmpty() ? CashCardSummary.empty(owner) : summaries.get(0);
+    }
+
+    @Override
+    public void cardAdded(String owner, long amount) {
+        jdbcTemplate.update(CARD_ADDED_SQL, new MapSqlParameterSource("owner", owner).addValue("amount", amount));
+    }
+
+    @Override
+    public void cardChanged(String owner, long oldAmount, long newAmount) {
+        jdbcTemplate.update(CARD_CHANGED_SQL, new MapSqlParameterSource("owner", owner)
+                .addValue("old", oldAmount)
+                .addValue("new", newAmount));
+    }
+
+    @Override
+    public void cardRemoved(String owner, long amount) {
+        jdbcTemplate.update(CARD_REMOVED_SQL, new MapSqlParameterSource("owner", owner).addValue("amount", amount));
+    }
+
+    @Override
+    public void apply(String owner, CashCardSummaryDelta delta) {
+        if (delta.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.update(APPLY_SQL, new MapSqlParameterSource("owner", owner)
+                .addValue("cardCount", delta.cardCount())
+                .addValue("totalAmount", delta.totalAmount())
+                .addValue("addedLow", delta.addedLow())
+                .addValue("addedHigh", delta.addedHigh())
+                .addValue("removedLow", delta.removedLow())
+                .addValue("removedHigh", delta.removedHigh()));
+    }
+
+    @Override
+    public void recompute(String owner) {
+        MapSqlParameterSource params = new MapSqlParameterSource("owner", owner);
+        jdbcTemplate.queryForList(LOCK_SQL, params, String.class);
+        jdbcTemplate.update(RECOMPUTE_SQL, params);
+    }
+}
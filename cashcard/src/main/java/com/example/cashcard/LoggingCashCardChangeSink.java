@@ -0,0 +1,28 @@
+package com.example.cashcard;
+
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/** Sink por defecto (cashcard.outbox.sink=log): deja cada cambio en el log, para desarrollo */
+@Component
+@ConditionalOnProperty(name = "cashcard.outbox.sink", havingValue = "log", matchIfMissing = true)
+class LoggingCashCardChangeSink implements CashCardChangeSink {
+
+    private static final Logger log = LoggerFactory.getLogger(LoggingCashCardChangeSink.class);
+
+    @Override
+    public void publish(List<CashCardChange> changes) {
+        for (CashCardChange change : changes) {
+            log.atDebug()
+                    .addKeyValue("seq", change.seq())
+                    .addKeyValue("cardId", change.id())
+                    .addKeyValue("owner", change.owner())
+                    .addKeyValue("operation", change.operation())
+                    .log("cash card change");
+        }
+    }
+}
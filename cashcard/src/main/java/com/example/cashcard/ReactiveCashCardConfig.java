@@ -0,0 +1,68 @@
+package com.example.cashcard;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.web.ReactivePageableHandlerMethodArgumentResolver;
+import org.springframework.r2dbc.connection.R2dbcTransactionManager;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+import org.springframework.web.reactive.result.method.annotation.ArgumentResolverConfigurer;
+
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import reactor.core.Disposable;
+
+/**
+ * Acceso R2DBC para la variante reactiva de la API (perfil reactive, que arranca
+ * la aplicación como WebFlux).
+ *
+ * El ConnectionFactory no se publica como bean a proposito: si Spring Boot ve uno
+ * deja de configurar el DataSource JDBC, y lo seguimos necesitando para Flyway y el
+ * resto de servicios. Por eso la auto-configuración de R2DBC esta excluida en
+ * application.properties y aqui solo exponemos el DatabaseClient y el TransactionalOperator.
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+class ReactiveCashCardConfig implements WebFluxConfigurer, DisposableBean {
+
+    private final ConnectionFactory connectionFactory;
+
+    /** Es la misma BBDD que la del DataSource, asi que por defecto usa las mismas credenciales */
+    ReactiveCashCardConfig(@Value("${cashcard.reactive.r2dbc-url}") String url,
+            @Value("${spring.datasource.username:sa}") String username,
+            @Value("${spring.datasource.password:}") String password) {
+        this.connectionFactory = ConnectionFactories.get(ConnectionFactoryOptions.parse(url).mutate()
+                .option(ConnectionFactoryOptions.USER, username)
+                .option(ConnectionFactoryOptions.PASSWORD, password)
+                .build());
+    }
+
+    @Bean
+    DatabaseClient reactiveDatabaseClient() {
+        return DatabaseClient.create(connectionFactory);
+    }
+
+    @Bean
+    TransactionalOperator reactiveTransactionalOperator() {
+        return TransactionalOperator.create(new R2dbcTransactionManager(connectionFactory));
+    }
+
+    /** Spring Data solo registra el resolver de Pageable para Spring MVC */
+    @Override
+    public void configureArgumentResolvers(ArgumentResolverConfigurer configurer) {
+        configurer.addCustomResolver(new ReactivePageableHandlerMethodArgumentResolver());
+    }
+
+    /** Con una URL r2dbc:pool:... el ConnectionFactory es un pool y hay que cerrarlo */
+    @Override
+    public void destroy() {
+        if (connectionFactory instanceof Disposable disposable) {
+            disposable.dispose();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.cashcard;
+
+import java.net.URI;
+import java.security.Principal;
+import java.util.List;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * El mismo contrato de /cashcards que CashCardController pero sobre WebFlux y R2DBC,
+ * se activa con el perfil reactive. Ningún handler bloquea el hilo del event loop:
+ * todo el acceso a la BBDD pasa por ReactiveCashCardRepository.
+ *
+ * Los endpoints /batch y /export siguen siendo solo de la variante servlet.
+ */
+@RestController
+@RequestMapping("/cashcards")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+class ReactiveCashCardController {
+
+    private final ReactiveCashCardRepository repository;
+    private final ReactiveCashCardWriteService writeService;
+
+    ReactiveCashCardController(ReactiveCashCardRepository repository, ReactiveCashCardWriteService writeService) {
+        this.repository = repository;
+        this.writeService = writeService;
+    }
+
+    @GetMapping("/{requestedId}")
+    Mono<ResponseEntity<CashCard>> findById(@PathVariable Long requestedId, Principal principal) {
+        return repository.findByIdAndOwner(requestedId, principal.getName())
+                .map(cashCard -> ResponseEntity.ok().eTag(CashCardETags.of(cashCard)).body(cashCard))
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    /** Offset con page/size/sort, o keyset con el parametro after como en la variante servlet */
+    @GetMapping
+    Mono<ResponseEntity<List<CashCard>>> findAll(Pageable pageable, Principal principal,
+            @RequestParam(required = false) String after) {
+        if (after == null) {
+            return repository.findByOwner(principal.getName(), pageable)
+                    .collectList()
+                    .map(cashCards -> ResponseEntity.ok().eTag(CashCardETags.of(cashCards)).body(cashCards));
+        }
+        CashCardCursor cursor = null;
+        if (!after.isEmpty()) {
+            cursor = CashCardCursor.decode(after);
+            if (cursor == null) {
+                return Mono.just(ResponseEntity.badRequest().build());
+            }
+        }
+        int size = pageable.getPageSize();
+        return repository.findByOwnerAfter(principal.getName(), cursor, size + 1)
+                .collectList()
+                .map(rows -> {
+                    boolean hasNext = rows.size() > size;
+                    List<CashCard> content = hasNext ? rows.subList(0, size) : rows;
+                    ResponseEntity.BodyBuilder response = ResponseEntity.ok().eTag(CashCardETags.of(content));
+                    if (hasNext) {
+                        response.header(CashCardController.NEXT_CURSOR_HEADER,
+                                CashCardCursor.of(content.get(content.size() - 1)).encode());
+                    }
+                    return response.body(content);
+                });
+    }
+
+    @GetMapping("/summary")
+    Mono<CashCardSummary> summary(Principal principal) {
+        return repository.findSummary(principal.getName());
+    }
+
+    /** Idempotency-Key con las mismas respuestas que CashCardController (ver ReactiveCashCardWriteService) */
+    @PostMapping
+    Mono<ResponseEntity<Void>> createCashCard(@RequestBody CashCard newCashCardRequest, ServerHttpRequest request,
+            Principal principal,
+            @RequestHeader(name = CashCardController.IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return writeService.create(principal.getName(), newCashCardRequest.amount())
+                    .map(saved -> ResponseEntity.created(location(request, saved.id())).build());
+        }
+        if (idempotencyKey.isBlank() || idempotencyKey.length() > CashCardIdempotency.MAX_KEY_LENGTH) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        return writeService.create(principal.getName(), newCashCardRequest.amount(), idempotencyKey)
+                .map(result -> {
+                    if (result.status() == CashCardIdempotency.Status.MISMATCH) {
+                        return ResponseEntity.unprocessableEntity().build();
+                    }
+                    ResponseEntity.BodyBuilder created = ResponseEntity.created(location(request, result.cardId()));
+                    if (result.status() == CashCardIdempotency.Status.REPLAYED) {
+                        created.header(CashCardController.IDEMPOTENT_REPLAYED_HEADER, "true");
+                    }
+                    return created.build();
+                });
+    }
+
+    private static URI location(ServerHttpRequest request, Long id) {
+        return UriComponentsBuilder.fromUri(request.getURI())
+                .replacePath("/cashcards/{id}")
+                .replaceQuery(null)
+                .buildAndExpand(id)
+                .toUri();
+    }
+
+    @PutMapping("/{requestedId}")
+    Mono<ResponseEntity<Void>> putCashCard(@PathVariable Long requestedId, @RequestBody CashCard cashCardUpdate,
+            Principal principal, @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        Long expectedVersion = null;
+        if (ifMatch != null && !ifMatch.trim().equals("*")) {
+            Long version = CashCardETags.parseVersion(ifMatch);
+            expectedVersion = version != null ? version : -1L;
+        }
+        return writeService.update(requestedId, principal.getName(), cashCardUpdate.amount(), expectedVersion)
+                .map(result -> switch (result.status()) {
+                    case UPDATED -> ResponseEntity.noContent().eTag(CashCardETags.of(result.cashCard())).build();
+                    case VERSION_MISMATCH -> ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+                    default -> ResponseEntity.notFound().build();
+                });
+    }
+
+    @DeleteMapping("/{id}")
+    Mono<ResponseEntity<Void>> deleteCashCard(@PathVariable Long id, Principal principal) {
+        return writeService.delete(id, principal.getName())
+                .map(deleted -> deleted ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build());
+    }
+}
@@ -0,0 +1,202 @@
+package com.example.cashcard;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+
+import io.r2dbc.spi.Readable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Las mismas consultas que CashCardRepository y JdbcCashCardSummaryRepository pero con
+ * R2DBC, sin bloquear ningún hilo. Las sentencias del resumen son literalmente las
+ * de JdbcCashCardSummaryRepository, asi las dos variantes no se desincronizan.
+ */
+@Repository
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+class ReactiveCashCardRepository {
+
+    private static final String SELECT = "SELECT id, amount, owner, version FROM cash_card ";
+
+    /** Solo se puede ordenar por estas propiedades, el ORDER BY se construye con ellas */
+    private static final Map<String, String> SORT_COLUMNS = Map.of("id", "id", "amount", "amount");
+
+    private final DatabaseClient databaseClient;
+
+    ReactiveCashCardRepository(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+    }
+
+    Mono<CashCard> findByIdAndOwner(Long id, String owner) {
+        return databaseClient.sql(SELECT + "WHERE id = :id AND owner = :owner")
+                .bind("id", id)
+                .bind("owner", owner)
+                .map(ReactiveCashCardRepository::toCashCard)
+                .one();
+    }
+
+    Mono<CashCard> findByIdAndOwnerForUpdate(Long id, String owner) {
+        return databaseClient.sql(SELECT + "WHERE id = :id AND owner = :owner FOR UPDATE")
+                .bind("id", id)
+                .bind("owner", owner)
+                .map(ReactiveCashCardRepository::toCashCard)
+                .one();
+    }
+
+    /** Paginación por OFFSET; las propiedades de orden desconocidas se ignoran */
+    Flux<CashCard> findByOwner(String owner, Pageable pageable) {
+        String orderBy = pageable.getSortOr(Sort.by(Sort.Direction.ASC, "amount")).stream()
+                .filter(order -> SORT_COLUMNS.containsKey(order.getProperty()))
+                .map(order -> SORT_COLUMNS.get(order.getProperty()) + (order.isAscending() ? " ASC" : " DESC"))
+                .collect(Collectors.joining(", "));
+        return databaseClient.sql(SELECT + "WHERE owner = :owner"
+                        + (orderBy.isEmpty() ? "" : " ORDER BY " + orderBy)
+                        + " LIMIT :limit OFFSET :offset")
+                .bind("owner", owner)
+                .bind("limit", pageable.getPageSize())
+                .bind("offset", pageable.getOffset())
+                .map(ReactiveCashCardRepository::toCashCard)
+                .all();
+    }
+
+    /** Paginación por keyset, igual que CashCardRepository.findSliceByOwner */
+    Flux<CashCard> findByOwnerAfter(String owner, CashCardCursor after, int limit) {
+        if (after == null) {
+            return databaseClient.sql(SELECT + "WHERE owner = :owner ORDER BY owner, amount, id LIMIT :limit")
+                    .bind("owner", owner)
+                    .bind("limit", limit)
+                    .map(ReactiveCashCardRepository::toCashCard)
+                    .all();
+        }
+        return databaseClient.sql(SELECT + """
+                        WHERE owner = :owner AND amount >= :amount AND (amount > :amount OR id > :id)
+                        ORDER BY owner, amount, id LIMIT :limit""")
+                .bind("owner", owner)
+                .bind("amount", after.amount())
+                .bind("id", after.id())
+                .bind("limit", limit)
+                .map(ReactiveCashCardRepository::toCashCard)
+                .all();
+    }
+
+    /** Inserta la tarjeta y devuelve el id generado */
+    Mono<Long> insert(String owner, long amount) {
+        return databaseClient.sql("INSERT INTO cash_card (amount, owner, version) VALUES (:amount, :owner, 0)")
+                .bind("amount", amount)
+                .bind("owner", owner)
+                .filter(statement -> statement.returnGeneratedValues("ID"))
+                .map(row -> row.get("ID", Long.class))
+                .one();
+    }
+
+    /** Las mismas consultas que CashCardIdempotencyKeys; vacio si la clave no se ha usado */
+    Mono<CashCardIdempotencyKeys.Created> findIdempotencyKey(String owner, String key) {
+        return databaseClient.sql("SELECT card_id, amount FROM cash_card_idempotency_key "
+                + "WHERE owner = :owner AND idempotency_key = :key")
+                .bind("owner", owner)
+                .bind("key", key)
+                .map(row -> new CashCardIdempotencyKeys.Created(row.get("card_id", Long.class),
+                        row.get("amount", Long.class)))
+                .one();
+    }
+
+    Mono<Long> recordIdempotencyKey(String owner, String key, Long cardId, long amount) {
+        return databaseClient.sql("""
+                INSERT INTO cash_card_idempotency_key (owner, idempotency_key, card_id, amount, created_at)
+                VALUES (:owner, :key, :cardId, :amount, :createdAt)""")
+                .bind("owner", owner)
+                .bind("key", key)
+                .bind("cardId", cardId)
+                .bind("amount", amount)
+                .bind("createdAt", LocalDateTime.now())
+                .fetch()
+                .rowsUpdated();
+    }
+
+    Mono<Long> updateAmountByIdAndOwner(Long id, String owner, long amount) {
+        return databaseClient.sql("UPDATE cash_card SET amount = :amount, version = version + 1 WHERE id = :id AND owner = :owner")
+                .bind("amount", amount)
+                .bind("id", id)
+                .bind("owner", owner)
+                .fetch()
+                .rowsUpdated();
+    }
+
+    Mono<Long> deleteByIdAndOwner(Long id, String owner) {
+        return databaseClient.sql("DELETE FROM cash_card WHERE id = :id AND owner = :owner")
+                .bind("id", id)
+                .bind("owner", owner)
+                .fetch()
+                .rowsUpdated();
+    }
+
+    Mono<CashCardSummary> findSummary(String owner) {
+        return databaseClient.sql(JdbcCashCardSummaryRepository.FIND_SQL)
+                .bind("owner", owner)
+                .map(row -> new CashCardSummary(row.get("owner", String.class), row.get("card_count", Long.class),
+                        row.get("total_amount", Long.class), row.get("min_amount", Long.class),
+                        row.get("max_amount", Long.class)))
+                .one()
+                .defaultIfEmpty(CashCardSummary.empty(owner));
+    }
+
+    Mono<Long> summaryCardAdded(String owner, long amount) {
+        return databaseClient.sql(JdbcCashCardSummaryRepository.CARD_ADDED_SQL)
+                .bind("owner", owner)
+                .bind("amount", amount)
+                .fetch()
+                .rowsUpdated();
+    }
+
+    Mono<Long> summaryCardChanged(String owner, long oldAmount, long newAmount) {
+        return databaseClient.sql(JdbcCashCardSummaryRepository.CARD_CHANGED_SQL)
+                .bind("owner", owner)
+                .bind("old", oldAmount)
+                .bind("new", newAmount)
+                .fetch()
+                .rowsUpdated();
+    }
+
+    Mono<Long> summaryCardRemoved(String owner, long amount) {
+        return databaseClient.sql(JdbcCashCardSummaryRepository.CARD_REMOVED_SQL)
+                .bind("owner", owner)
+                .bind("amount", amount)
+                .fetch()
+                .rowsUpdated();
+    }
+
+    /**
+     * Fila del outbox, con las mismas sentencias que CashCardChangeLog.record: primero se
+     * reserva la posición del propietario, que queda bloqueada hasta el commit
+     */
+    Mono<Long> recordChange(CashCardChange.Operation operation, Long id, String owner, Long amount, Long version) {
+        return databaseClient.sql(CashCardChangeLog.RESERVE_POSITIONS_SQL)
+                .bind("owner", owner)
+                .bind("n", 1L)
+                .map(row -> row.get("last_position", Long.class))
+                .one()
+                .flatMap(position -> {
+                    DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(CashCardChangeLog.INSERT_SQL)
+                            .bind("id", id)
+                            .bind("owner", owner)
+                            .bind("operation", operation.name())
+                            .bind("changedAt", LocalDateTime.now())
+                            .bind("position", position);
+                    spec = amount != null ? spec.bind("amount", amount) : spec.bindNull("amount", Long.class);
+                    spec = version != null ? spec.bind("version", version) : spec.bindNull("version", Long.class);
+                    return spec.fetch().rowsUpdated();
+                });
+    }
+
+    private static CashCard toCashCard(Readable row) {
+        return new CashCard(row.get("id", Long.class), row.get("amount", Long.class), row.get("owner", String.class),
+                row.get("version", Long.class));
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.cashcard;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+
+import com.example.cashcard.CashCardWriteService.UpdateResult;
+import com.example.cashcard.CashCardWriteService.UpdateStatus;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Version reactiva de CashCardWriteService: cada escritura y su ajuste del resumen
+ * van en la misma transacción R2DBC, junto con su fila del outbox (cash_card_change), y
+ * modificación y baja empiezan con SELECT ... FOR UPDATE.
+ *
+ * El alta con Idempotency-Key guarda la clave en cash_card_idempotency_key en la misma
+ * transacción, como CashCardWriteService, y da los mismos resultados que
+ * CashCardIdempotency. No tiene su cache en memoria: los reintentos se resuelven en la
+ * BBDD, y si dos llegan a la vez la clave primaria deja pasar solo uno.
+ */
+@Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+class ReactiveCashCardWriteService {
+
+    private final ReactiveCashCardRepository repository;
+    private final TransactionalOperator transactionalOperator;
+
+    ReactiveCashCardWriteService(ReactiveCashCardRepository repository, TransactionalOperator transactionalOperator) {
+        this.repository = repository;
+        this.transactionalOperator = transactionalOperator;
+    }
+
+    Mono<CashCard> create(String owner, long amount) {
+        return insert(owner, amount).as(transactionalOperator::transactional);
+    }
+
+    Mono<CashCardIdempotency.Result> create(String owner, long amount, String idempotencyKey) {
+        Mono<CashCardIdempotency.Result> replay = repository.findIdempotencyKey(owner, idempotencyKey)
+                .map(created -> CashCardIdempotency.replay(created, amount));
+        return replay.switchIfEmpty(Mono.defer(() -> insert(owner, amount)
+                .flatMap(saved -> repository.recordIdempotencyKey(owner, idempotencyKey, saved.id(), amount)
+                        .thenReturn(new CashCardIdempotency.Result(CashCardIdempotency.Status.CREATED, saved.id())))
+                .as(transactionalOperator::transactional)
+                // Otra petición con la misma clave ha confirmado antes: se deshace esta alta
+                .onErrorResume(DuplicateKeyException.class, e -> replay)));
+    }
+
+    private Mono<CashCard> insert(String owner, long amount) {
+        return repository.insert(owner, amount)
+                .flatMap(id -> repository.summaryCardAdded(owner, amount)
+                        .then(repository.recordChange(CashCardChange.Operation.CREATE, id, owner, amount, 0L))
+                        .thenReturn(new CashCard(id, amount, owner, 0L)));
+    }
+
+    /** Mismos resultados que CashCardWriteService.update */
+    Mono<UpdateResult> update(Long id, String owner, long amount, Long expectedVersion) {
+        return repository.findByIdAndOwnerForUpdate(id, owner)
+                .flatMap(current -> {
+                    if (expectedVersion != null && !expectedVersion.equals(current.version())) {
+                        return Mono.just(new UpdateResult(UpdateStatus.VERSION_MISMATCH, null));
+                    }
+                    return repository.updateAmountByIdAndOwner(id, owner, amount)
+                            .then(repository.summaryCardChanged(owner, current.amount(), amount))
+                            .then(repository.recordChange(CashCardChange.Operation.UPDATE, id, owner, amount,
+                                    current.version() + 1))
+                            .thenReturn(new UpdateResult(UpdateStatus.UPDATED,
+                                    new CashCard(id, amount, owner, current.version() + 1)));
+                })
+                .defaultIfEmpty(new UpdateResult(UpdateStatus.NOT_FOUND, null))
+                .as(transactionalOperator::transactional);
+    }
+
+    Mono<Boolean> delete(Long id, String owner) {
+        return repository.findByIdAndOwnerForUpdate(id, owner)
+                .flatMap(current -> repository.deleteByIdAndOwner(id, owner)
+                        .then(repository.summaryCardRemoved(owner, current.amount()))
+                        .then(repository.recordChange(CashCardChange.Operation.DELETE, id, owner, null, null))
+                        .thenReturn(true))
+                .defaultIfEmpty(false)
+                .as(transactionalOperator::transactional);
+    }
+}
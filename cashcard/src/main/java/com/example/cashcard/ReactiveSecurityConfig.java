@@ -0,0 +1,46 @@
+package com.example.cashcard;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.config.Customizer;
+import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
+import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.core.userdetails.ReactiveUserDetailsService;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.web.server.SecurityWebFilterChain;
+
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Las mismas reglas que SecurityConfig para la variante WebFlux. Los usuarios y el
+ * PasswordEncoder son los beans de SecurityConfig, Spring Security los usa tambien aqui
+ */
+@Configuration
+@EnableWebFluxSecurity
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+class ReactiveSecurityConfig {
+
+    @Bean
+    SecurityWebFilterChain reactiveFilterChain(ServerHttpSecurity http) {
+        http.authorizeExchange(exchange -> exchange
+                .pathMatchers("/cashcards/**").hasRole("CARD-OWNER")
+                .pathMatchers("/actuator/health").permitAll()
+                .pathMatchers("/actuator/users/**").hasRole("ADMIN")
+                .pathMatchers("/actuator/**").authenticated()
+                .anyExchange().denyAll())
+            .httpBasic(Customizer.withDefaults())
+            .csrf(csrf -> csrf.disable());
+        return http.build();
+    }
+
+    /** El UserDetailsService es bloqueante, asi que se consulta fuera del event loop */
+    @Bean
+    ReactiveUserDetailsService reactiveUserDetailsService(UserDetailsService userDetailsService) {
+        return username -> Mono.fromCallable(() -> userDetailsService.loadUserByUsername(username))
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorResume(UsernameNotFoundException.class, e -> Mono.empty());
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.cashcard;
+
+import java.security.Principal;
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Con réplicas, lo que un usuario acaba de escribir puede no haber llegado todavía a la
+ * réplica de la que lee. Durante cashcard.datasource.read-your-writes-window despues de
+ * cada escritura, las lecturas de ese propietario se hacen contra el primario
+ * (ReplicaDataSource.pinToPrimary). Con una ventana de 0 está desactivado.
+ * La ventana empieza al entrar la escritura, para que una lectura que llegue justo
+ * despues de la respuesta ya la encuentre.
+ */
+@Component
+@ConditionalOnProperty("cashcard.datasource.replicas[0].url")
+class ReadYourWritesInterceptor implements AsyncHandlerInterceptor {
+
+    private final Cache<String, Boolean> recentWriters;
+
+    ReadYourWritesInterceptor(@Value("${cashcard.datasource.read-your-writes-window:2s}") Duration window,
+            @Value("${cashcard.datasource.read-your-writes-max-owners:100000}") long maxOwners) {
+        this.recentWriters = window.isZero() ? null : Caffeine.newBuilder()
+                .expireAfterWrite(window)
+                .maximumSize(maxOwners)
+                .build();
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        Principal principal = request.getUserPrincipal();
+        if (recentWriters == null || principal == null) {
+            return true;
+        }
+        if (isWrite(request)) {
+            recentWriters.put(principal.getName(), Boolean.TRUE);
+        } else if (recentWriters.getIfPresent(principal.getName()) != null) {
+            ReplicaDataSource.pinToPrimary();
+        }
+        return true;
+    }
+
+    /**
+     * Con un handler asíncrono (el StreamingResponseBody de /export) el hilo del servlet
+     * sale sin pasar por afterCompletion: se suelta aquí para que el ThreadLocal no se
+     * quede en el hilo del pool. El dispatch asíncrono vuelve a pasar por preHandle.
+     */
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response,
+            Object handler) {
+        ReplicaDataSource.unpin();
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+            Exception ex) {
+        ReplicaDataSource.unpin();
+        Principal principal = request.getUserPrincipal();
+        if (recentWriters != null && principal != null && isWrite(request)) {
+            // La ventana cuenta desde que termina la escritura, no desde que empezó
+            recentWriters.put(principal.getName(), Boolean.TRUE);
+        }
+    }
+
+    private static boolean isWrite(HttpServletRequest request) {
+        HttpMethod method = HttpMethod.valueOf(request.getMethod());
+        return !(method == HttpMethod.GET || method == HttpMethod.HEAD || method == HttpMethod.OPTIONS);
+    }
+}
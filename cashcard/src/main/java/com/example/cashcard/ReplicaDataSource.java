@@ -0,0 +1,205 @@
+package com.example.cashcard;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * DataSource de solo lectura que reparte las conexiones entre las réplicas.
+ *
+ * Lo usa LazyConnectionDataSourceProxy (ver ReplicaRoutingConfig) para las transacciones
+ * readOnly; el resto siguen yendo al primario. La réplica se elige por turnos (ROUND_ROBIN)
+ * o la que tenga menos conexiones abiertas (LEAST_LOADED), y solo entre las sanas: una
+ * réplica deja de estarlo si falla al dar una conexión y vuelve cuando la comprobación
+ * periódica (Connection.isValid) le sale bien. Sin réplicas sanas se lee del primario.
+ *
+ * pinToPrimary marca el hilo actual para que lea del primario aunque la transacción sea
+ * readOnly, es lo que usa ReadYourWritesInterceptor justo despues de una escritura.
+ * Cada conexión entregada cuenta en cashcard.datasource.replica.connections (tag target).
+ */
+class ReplicaDataSource extends AbstractDataSource implements Closeable {
+
+    enum Selection { ROUND_ROBIN, LEAST_LOADED }
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicaDataSource.class);
+    private static final ThreadLocal<Boolean> PINNED_TO_PRIMARY = new ThreadLocal<>();
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    private final DataSource primary;
+    private final List<Replica> replicas;
+    private final Selection selection;
+    private final AtomicInteger next = new AtomicInteger();
+    private final Counter primaryCounter;
+    private final ScheduledExecutorService healthChecker;
+
+    ReplicaDataSource(DataSource primary, List<DataSource> replicas, Selection selection, Duration healthInterval,
+            MeterRegistry meterRegistry) {
+        this.primary = primary;
+        this.replicas = IntStream.range(0, replicas.size())
+                .mapToObj(i -> new Replica("replica-" + i, replicas.get(i), meterRegistry))
+                .toList();
+        this.selection = selection;
+        this.primaryCounter = connectionCounter(meterRegistry, "primary");
+        this.healthChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replica-health-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.healthChecker.scheduleWithFixedDelay(this::checkHealth, healthInterval.toMillis(),
+                healthInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /** Hasta unpin, las lecturas de este hilo van al primario */
+    static void pinToPrimary() {
+        PINNED_TO_PRIMARY.set(Boolean.TRUE);
+    }
+
+    static void unpin() {
+        PINNED_TO_PRIMARY.remove();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (PINNED_TO_PRIMARY.get() == null) {
+            for (int attempt = 0; attempt < replicas.size(); attempt++) {
+                Replica replica = choose();
+                if (replica == null) {
+                    break;
+                }
+                try {
+                    return replica.connect();
+                } catch (SQLException e) {
+                    log.warn("Replica {} failed, marking it down until the next health check", replica.name, e);
+                    replica.healthy = false;
+                }
+            }
+        }
+        primaryCounter.increment();
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new UnsupportedOperationException("Replicas use the credentials of their own configuration");
+    }
+
+    /** @return true si la réplica puede dar conexiones ahora mismo */
+    boolean isHealthy(int replica) {
+        return replicas.get(replica).healthy;
+    }
+
+    void checkHealth() {
+        for (Replica replica : replicas) {
+            boolean healthy;
+            try (Connection connection = replica.dataSource.getConnection()) {
+                healthy = connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+            } catch (SQLException | RuntimeException e) {
+                healthy = false;
+            }
+            if (healthy != replica.healthy) {
+                log.info("Replica {} is now {}", replica.name, healthy ? "up" : "down");
+            }
+            replica.healthy = healthy;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        healthChecker.shutdownNow();
+        for (Replica replica : replicas) {
+            if (replica.dataSource instanceof Closeable closeable) {
+                closeable.close();
+            }
+        }
+    }
+
+    private Replica choose() {
+        Replica chosen = null;
+        int start = next.getAndIncrement();
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica candidate = replicas.get(Math.floorMod(start + i, replicas.size()));
+            if (!candidate.healthy) {
+                continue;
+            }
+            if (selection == Selection.ROUND_ROBIN) {
+                return candidate;
+            }
+            if (chosen == null || candidate.active.get() < chosen.active.get()) {
+                chosen = candidate;
+            }
+        }
+        return chosen;
+    }
+
+    private static Counter connectionCounter(MeterRegistry meterRegistry, String target) {
+        return Counter.builder("cashcard.datasource.replica.connections")
+                .description("Conexiones de lectura entregadas por ReplicaDataSource")
+                .tag("target", target)
+                .register(meterRegistry);
+    }
+
+    private static final class Replica {
+
+        private final String name;
+        private final DataSource dataSource;
+        private final AtomicInteger active = new AtomicInteger();
+        private final Counter counter;
+        private volatile boolean healthy = true;
+
+        Replica(String name, DataSource dataSource, MeterRegistry meterRegistry) {
+            this.name = name;
+            this.dataSource = dataSource;
+            this.counter = connectionCounter(meterRegistry, name);
+            Gauge.builder("cashcard.datasource.replica.healthy", this, replica -> replica.healthy ? 1 : 0)
+                    .description("1 si la réplica recibe lecturas, 0 si está fuera")
+                    .tag("target", name)
+                    .register(meterRegistry);
+        }
+
+        /** La conexión descuenta de active al cerrarse, para LEAST_LOADED */
+        Connection connect() throws SQLException {
+            Connection connection = dataSource.getConnection();
+            active.incrementAndGet();
+            counter.increment();
+            AtomicBoolean closed = new AtomicBoolean();
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+                        if (method.getName().equals("equals")) {
+                            return proxy == args[0];
+                        }
+                        if (method.getName().equals("hashCode")) {
+                            return System.identityHashCode(proxy);
+                        }
+                        if (method.getName().equals("close") && closed.compareAndSet(false, true)) {
+                            active.decrementAndGet();
+                        }
+                        try {
+                            return method.invoke(connection, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getTargetException();
+                        }
+                    });
+        }
+    }
+}
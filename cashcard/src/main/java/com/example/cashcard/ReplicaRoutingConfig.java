@@ -0,0 +1,104 @@
+package com.example.cashcard;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Lecturas contra réplicas, se activa configurando al menos una en
+ * cashcard.datasource.replicas[n].url (con username y password opcionales, si no se
+ * usan los de spring.datasource).
+ *
+ * El DataSource de Spring Boot (el primario) queda envuelto en un
+ * LazyConnectionDataSourceProxy: la conexión real se pide con la primera sentencia, cuando
+ * ya se sabe si la transacción es readOnly, y en ese caso sale de ReplicaDataSource. Las
+ * escrituras, Flyway y todo lo que no vaya en una transacción readOnly siguen en el primario.
+ * La selección de réplica (round-robin o least-loaded) va en cashcard.datasource.replica-selection.
+ */
+@Configuration
+@ConditionalOnProperty("cashcard.datasource.replicas[0].url")
+class ReplicaRoutingConfig {
+
+    /** Una réplica tal y como se configura en cashcard.datasource.replicas */
+    record ReplicaProperties(String url, String username, String password) {
+    }
+
+    @Bean
+    static ReplicaRoutingPostProcessor replicaRoutingPostProcessor(Environment environment,
+            ObjectProvider<MeterRegistry> meterRegistry) {
+        return new ReplicaRoutingPostProcessor(environment, meterRegistry);
+    }
+
+    static class ReplicaRoutingPostProcessor implements BeanPostProcessor, DisposableBean {
+
+        private final Environment environment;
+        private final ObjectProvider<MeterRegistry> meterRegistry;
+        private ReplicaDataSource replicaDataSource;
+
+        ReplicaRoutingPostProcessor(Environment environment, ObjectProvider<MeterRegistry> meterRegistry) {
+            this.environment = environment;
+            this.meterRegistry = meterRegistry;
+        }
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            if (!(bean instanceof DataSource primary) || bean instanceof LazyConnectionDataSourceProxy
+                    || replicaDataSource != null) {
+                return bean;
+            }
+            Binder binder = Binder.get(environment);
+            List<DataSource> replicas = binder
+                    .bind("cashcard.datasource.replicas", Bindable.listOf(ReplicaProperties.class))
+                    .orElse(List.of())
+                    .stream()
+                    .map(this::createReplica)
+                    .toList();
+            ReplicaDataSource.Selection selection = binder
+                    .bind("cashcard.datasource.replica-selection", ReplicaDataSource.Selection.class)
+                    .orElse(ReplicaDataSource.Selection.ROUND_ROBIN);
+            Duration healthInterval = environment.getProperty("cashcard.datasource.replica-health-interval",
+                    Duration.class, Duration.ofSeconds(5));
+            replicaDataSource = new ReplicaDataSource(primary, replicas, selection, healthInterval,
+                    meterRegistry.getObject());
+            LazyConnectionDataSourceProxy routing = new LazyConnectionDataSourceProxy(primary);
+            routing.setReadOnlyDataSource(replicaDataSource);
+            return routing;
+        }
+
+        private DataSource createReplica(ReplicaProperties replica) {
+            return DataSourceBuilder.create()
+                    .type(HikariDataSource.class)
+                    .url(replica.url())
+                    .username(replica.username() != null ? replica.username()
+                            : environment.getProperty("spring.datasource.username", "sa"))
+                    .password(replica.password() != null ? replica.password()
+                            : environment.getProperty("spring.datasource.password", ""))
+                    .build();
+        }
+
+        @Override
+        public void destroy() throws IOException {
+            if (replicaDataSource != null) {
+                replicaDataSource.close();
+            }
+        }
+    }
+}
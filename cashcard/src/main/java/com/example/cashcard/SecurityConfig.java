@@ -2,17 +2,32 @@ package com.example.cashcard;
 
 //import java.net.PasswordAuthentication;
 
+import java.time.Duration;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.security.authentication.CachingUserDetailsService;
 import org.springframework.security.config.Customizer;
+import org.springframework.security.config.ObjectPostProcessor;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
-import org.springframework.security.core.userdetails.User;
-import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserCache;
 import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.jdbc.JdbcDaoImpl;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
-import org.springframework.security.provisioning.InMemoryUserDetailsManager;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationConverter;
+import org.springframework.security.oauth2.server.resource.authentication.JwtGrantedAuthoritiesConverter;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.access.intercept.AuthorizationFilter;
+import org.springframework.security.web.header.HeaderWriterFilter;
+
+import io.micrometer.core.instrument.MeterRegistry;
 
 /**
  * JavaBean en el que configuraremos Spring Security para nuestra aplicación
@@ -22,44 +37,87 @@ import org.springframework.security.web.SecurityFilterChain;
 @Configuration
 class SecurityConfig {
 
-    /** este bean satisface el requerimiento para satisfacer el Filter Chain */
+    /**
+     * este bean satisface el requerimiento para satisfacer el Filter Chain
+     * (solo en la variante servlet, la reactiva usa ReactiveSecurityConfig)
+     */
     @Bean
-    SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    SecurityFilterChain filterChain(HttpSecurity http, ObjectProvider<JwtDecoder> jwtDecoder,
+            ObjectProvider<CashCardRateLimiter> rateLimiter) throws Exception {
         http.authorizeHttpRequests(request -> request
             .requestMatchers("/cashcards/**")//Filtro del endpoint
-            .hasRole("CARD-OWNER"))//Filtro de rol(RBAC)
+            .hasRole("CARD-OWNER")//Filtro de rol(RBAC)
+            .requestMatchers("/auth/token")//Solo existe en modo token (TokenAuthConfig)
+            .authenticated()
+            .requestMatchers("/actuator/health")//El health check queda abierto
+            .permitAll()
+            .requestMatchers("/actuator/users/**")//Gestión de usuarios (CashCardUsersEndpoint)
+            .hasRole("ADMIN")
+            .requestMatchers("/actuator/**")//Las metricas solo para usuarios autenticados
+            .authenticated())
             .httpBasic(Customizer.withDefaults())//Aqui habilita autenticación
-            .csrf(csrf -> csrf.disable());
+            .csrf(csrf -> csrf.disable())
+            // Las cabeceras de seguridad se escriben antes de llamar al controlador: GET
+            // /cashcards/export devuelve un StreamingResponseBody que escribe la respuesta
+            // desde otro hilo, y si el filtro las añade al volver compite con ese hilo
+            .headers(headers -> headers.addObjectPostProcessor(new ObjectPostProcessor<HeaderWriterFilter>() {
+                @Override
+                public <O extends HeaderWriterFilter> O postProcess(O filter) {
+                    filter.setShouldWriteHeadersEagerly(true);
+                    return filter;
+                }
+            }));
+        // Modo token: además de Basic se acepta Authorization: Bearer con los tokens de
+        // /auth/token, y los roles salen del claim roles tal cual (ya llevan el prefijo ROLE_)
+        JwtDecoder decoder = jwtDecoder.getIfAvailable();
+        if (decoder != null) {
+            JwtGrantedAuthoritiesConverter authorities = new JwtGrantedAuthoritiesConverter();
+            authorities.setAuthoritiesClaimName(TokenController.ROLES_CLAIM);
+            authorities.setAuthorityPrefix("");
+            JwtAuthenticationConverter converter = new JwtAuthenticationConverter();
+            converter.setJwtGrantedAuthoritiesConverter(authorities);
+            http.oauth2ResourceServer(resourceServer -> resourceServer
+                    .jwt(jwt -> jwt.decoder(decoder).jwtAuthenticationConverter(converter)));
+        }
+        // Limites por propietario y global de /cashcards (cashcard.ratelimit.*), ya con el usuario autenticado
+        rateLimiter.ifAvailable(limiter -> http.addFilterAfter(new CashCardAdmissionFilter(limiter),
+                AuthorizationFilter.class));
         return http.build();
     }
 
+    /**
+     * Los usuarios y sus roles salen de las tablas users y authorities (JdbcDaoImpl),
+     * con una cache acotada delante (CaffeineUserCache): solo se lee de la BBDD el usuario
+     * que se autentica, y nunca se cargan todos en memoria. Las altas y bloqueos en caliente
+     * van por CashCardUsers
+     */
     @Bean
-    UserDetailsService testOnlyUsers(PasswordEncoder passwordEncoder) {
-        User.UserBuilder users = User.builder();
-        UserDetails sarah = users
-                .username("sarah1")
-                .password(passwordEncoder.encode("abc123"))
-                .roles("CARD-OWNER") 
-                .build();
-        
-
-        UserDetails hankOwnsNoCards = users
-                .username("hank-owns-no-cards")
-                .password(passwordEncoder.encode("qrs456"))
-                .roles("NON-OWNER")
-                .build();
-
-        UserDetails kumar = users
-                .username("kumar2")
-                .password(passwordEncoder.encode("xyz789"))
-                .roles("CARD-OWNER")
-                .build();
+    UserDetailsService userDetailsService(DataSource dataSource, UserCache userCache) {
+        JdbcDaoImpl jdbcUsers = new JdbcDaoImpl();
+        jdbcUsers.setDataSource(dataSource);
+        CachingUserDetailsService cachingUsers = new CachingUserDetailsService(jdbcUsers);
+        cachingUsers.setUserCache(userCache);
+        return cachingUsers;
+    }
 
-        return new InMemoryUserDetailsManager(sarah, hankOwnsNoCards, kumar);
+    @Bean
+    UserCache userCache(
+            @Value("${cashcard.auth.user-cache.max-size:100000}") long maxSize,
+            @Value("${cashcard.auth.user-cache.ttl:1m}") Duration ttl,
+            MeterRegistry meterRegistry) {
+        return new CaffeineUserCache(maxSize, ttl, meterRegistry);
     }
 
+    /**
+     * BCrypt sigue siendo el algoritmo de hash, pero envuelto en una cache de
+     * credenciales verificadas para no pagar el coste de BCrypt en cada petición
+     */
     @Bean
-    PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    PasswordEncoder passwordEncoder(
+            @Value("${cashcard.auth.credential-cache.max-size:10000}") long maxSize,
+            @Value("${cashcard.auth.credential-cache.ttl:5m}") Duration ttl,
+            MeterRegistry meterRegistry) {
+        return new CachingPasswordEncoder(new BCryptPasswordEncoder(), maxSize, ttl, meterRegistry);
     }
 }
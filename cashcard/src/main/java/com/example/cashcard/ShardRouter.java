@@ -0,0 +1,245 @@
+package com.example.cashcard;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.JdbcTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Decide en que shard vive cada propietario y lleva el shard actual del hilo.
+ *
+ * El shard 0 es el DataSource de spring.datasource, que ademas guarda lo que no es de
+ * ningún propietario (usuarios, la tabla cash_card_shard); el resto son los de
+ * cashcard.sharding.shards. Todas las consultas de cash_card llevan el propietario, asi
+ * que ShardingInterceptor fija el shard del usuario autenticado al empezar la petición y
+ * ShardedDataSource da las conexiones de ese shard. Sin shard fijado se usa el 0.
+ *
+ * El anillo solo incluye los shards ACTIVE de cash_card_shard. Uno nuevo entra como JOINING
+ * hasta que CashCardShardRebalancer le mueve sus propietarios; mientras tanto los que ya se
+ * han movido se apuntan en cash_card_owner_shard (y en moved, que es su copia en memoria)
+ * para que se les busque en su shard nuevo, también tras un reinicio.
+ * Cada propietario tiene un ReadWriteLock (por franjas): las peticiones cogen el de lectura
+ * y el rebalanceo el de escritura mientras copia y borra sus filas.
+ *
+ * Esos locks son de esta JVM, y los demás procesos solo leen cash_card_owner_shard al
+ * arrancar: mientras haya shards JOINING solo puede atender /cashcards la instancia que
+ * rebalancea, o hay que parar antes las escrituras en el resto. Con
+ * cashcard.sharding.rebalance-on-startup la instancia no atiende /cashcards (isServing,
+ * ShardingInterceptor responde 503) hasta que el rebalanceo del arranque termina.
+ *
+ * Los ids de cash_card y cash_card_change de cada shard empiezan en shard << ID_SHIFT, son
+ * únicos entre todos los shards y las filas se pueden mover tal cual.
+ */
+class ShardRouter implements SmartInitializingSingleton, Closeable {
+
+    static final int HOME_SHARD = 0;
+    static final int ID_SHIFT = 40;
+
+    enum State { JOINING, ACTIVE }
+
+    private static final Logger log = LoggerFactory.getLogger(ShardRouter.class);
+    private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+    private static final int LOCK_STRIPES = 256;
+
+    private final Map<Integer, DataSource> shards;
+    private final int virtualNodes;
+    private final ReadWriteLock[] ownerLocks = new ReadWriteLock[LOCK_STRIPES];
+    private final Map<String, Integer> moved = new ConcurrentHashMap<>();
+    private final boolean rebalanceOnStartup;
+    private DataSource home;
+    private volatile ConsistentHashRing ring;
+    private volatile boolean serving = true;
+
+    /**
+     * @param shards los shards de cashcard.sharding.shards, con ids desde 1 y ya migrados
+     * @param rebalanceOnStartup si hay shards JOINING no se atiende hasta que se activen
+     */
+    ShardRouter(Map<Integer, DataSource> shards, int virtualNodes, boolean rebalanceOnStartup) {
+        this.shards = new HashMap<>(shards);
+        this.virtualNodes = virtualNodes;
+        this.rebalanceOnStartup = rebalanceOnStartup;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            ownerLocks[i] = new ReentrantReadWriteLock();
+        }
+    }
+
+    /** Envuelve el DataSource de Spring Boot, que pasa a ser el shard 0 */
+    ShardedDataSource route(DataSource home) {
+        this.home = home;
+        this.shards.put(HOME_SHARD, home);
+        return new ShardedDataSource(home, shards);
+    }
+
+    static Integer currentShard() {
+        return CURRENT.get();
+    }
+
+    static void enter(int shard) {
+        CURRENT.set(shard);
+    }
+
+    static void exit() {
+        CURRENT.remove();
+    }
+
+    /** Ejecuta action con shard como shard actual del hilo (con null, el 0) */
+    static <T> T onShard(Integer shard, Supplier<T> action) {
+        Integer previous = CURRENT.get();
+        if (shard == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(shard);
+        }
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    /** Para las tareas que no son de un propietario (outbox, resumen): action en cada shard */
+    int sumOverShards(IntSupplier action) {
+        int total = 0;
+        for (int shard : shardIds()) {
+            total += onShard(shard, action::getAsInt);
+        }
+        return total;
+    }
+
+    int shardFor(String owner) {
+        Integer shard = moved.get(owner);
+        if (shard != null) {
+            return shard;
+        }
+        ConsistentHashRing current = ring;
+        return current == null ? HOME_SHARD : current.shardFor(owner);
+    }
+
+    ReadWriteLock ownerLock(String owner) {
+        return ownerLocks[Math.floorMod(owner.hashCode(), LOCK_STRIPES)];
+    }
+
+    Set<Integer> shardIds() {
+        return new TreeSet<>(shards.keySet());
+    }
+
+    DataSource dataSource(int shard) {
+        DataSource dataSource = shards.get(shard);
+        if (dataSource == null) {
+            throw new IllegalArgumentException("Unknown shard " + shard);
+        }
+        return dataSource;
+    }
+
+    Set<Integer> activeShards() {
+        return ring.shards();
+    }
+
+    boolean hasJoiningShards() {
+        return !ring.shards().equals(shardIds());
+    }
+
+    /** Anillo con todos los shards configurados, el que queda tras rebalancear */
+    ConsistentHashRing fullRing() {
+        return new ConsistentHashRing(shardIds(), virtualNodes);
+    }
+
+    /** El rebalanceo ya ha copiado las filas de owner a shard; se guarda antes de borrarlas del origen */
+    void moved(String owner, int shard) {
+        new JdbcTemplate(home).update("MERGE INTO cash_card_owner_shard (owner, shard_id) KEY (owner) VALUES (?, ?)",
+                owner, shard);
+        moved.put(owner, shard);
+    }
+
+    /** Shard al que ya se movió owner en este rebalanceo, o null */
+    Integer movedTo(String owner) {
+        return moved.get(owner);
+    }
+
+    /** Todos los propietarios están ya en su shard de target: pasa a ser el anillo */
+    void activate(ConsistentHashRing target) {
+        new TransactionTemplate(new JdbcTransactionManager(home)).executeWithoutResult(status -> {
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(home);
+            for (int shard : target.shards()) {
+                jdbcTemplate.update("UPDATE cash_card_shard SET state = ? WHERE shard_id = ?", State.ACTIVE.name(),
+                        shard);
+            }
+            jdbcTemplate.update("DELETE FROM cash_card_owner_shard");
+        });
+        ring = target;
+        moved.clear();
+        serving = true;
+    }
+
+    /** false mientras se espera al rebalanceo del arranque */
+    boolean isServing() {
+        return serving;
+    }
+
+    /** Carga el anillo de cash_card_shard y da de alta como JOINING los shards nuevos */
+    @Override
+    public void afterSingletonsInstantiated() {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(home);
+        Map<Integer, State> states = new HashMap<>();
+        jdbcTemplate.query("SELECT shard_id, state FROM cash_card_shard", (ResultSet rs) -> {
+            states.put(rs.getInt("shard_id"), State.valueOf(rs.getString("state")));
+        });
+        for (int shard : states.keySet()) {
+            if (!shards.containsKey(shard)) {
+                throw new IllegalStateException("Shard " + shard + " is in cash_card_shard but not configured, "
+                        + "removing shards is not supported");
+            }
+        }
+        List<Integer> active = new ArrayList<>();
+        for (int shard : shardIds()) {
+            // La primera vez solo el shard 0 tiene datos, el resto entra como cualquier shard nuevo
+            State state = states.get(shard);
+            if (state == null) {
+                state = shard == HOME_SHARD ? State.ACTIVE : State.JOINING;
+                jdbcTemplate.update("INSERT INTO cash_card_shard (shard_id, state) VALUES (?, ?)", shard, state.name());
+            }
+            if (state == State.ACTIVE) {
+                active.add(shard);
+            }
+        }
+        ring = new ConsistentHashRing(active, virtualNodes);
+        // Propietarios ya movidos por un rebalanceo que no llegó a activar el anillo
+        jdbcTemplate.query("SELECT owner, shard_id FROM cash_card_owner_shard", (ResultSet rs) -> {
+            moved.put(rs.getString("owner"), rs.getInt("shard_id"));
+        });
+        serving = !(rebalanceOnStartup && hasJoiningShards());
+        log.info("Sharding cash cards over {} (active {}, {} owners already moved)", shardIds(), active, moved.size());
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Map.Entry<Integer, DataSource> shard : shards.entrySet()) {
+            if (shard.getKey() != HOME_SHARD && shard.getValue() instanceof Closeable closeable) {
+                closeable.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.cashcard;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+/**
+ * DataSource de la aplicación cuando hay sharding: cada conexión sale del shard actual
+ * del hilo (ShardRouter.currentShard) y, si no hay ninguno, del shard 0.
+ * Una transacción se queda con la conexión que pidió al empezar, asi que todo lo que
+ * hace va al mismo shard.
+ */
+class ShardedDataSource extends AbstractRoutingDataSource {
+
+    ShardedDataSource(DataSource home, Map<Integer, DataSource> shards) {
+        setTargetDataSources(new HashMap<>(shards));
+        setDefaultTargetDataSource(home);
+        // Un shard desconocido es un error, no una lectura silenciosa del shard 0
+        setLenientFallback(false);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return ShardRouter.currentShard();
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.cashcard;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.flywaydb.core.Flyway;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * Sharding de cash_card por propietario, se activa configurando al menos un shard en
+ * cashcard.sharding.shards[n].url (con username y password opcionales, si no se usan los
+ * de spring.datasource). El DataSource de Spring Boot es el shard 0 y los configurados
+ * son los shards 1, 2... en el orden de la lista; solo se pueden añadir al final.
+ *
+ * Al arrancar se aplican las migraciones de Flyway a cada shard (sin los callbacks, que
+ * son datos de prueba del shard 0) y se mueven sus contadores de ids a su tramo
+ * (ver ShardRouter). El DataSource de Spring Boot queda envuelto en un ShardedDataSource.
+ * No se combina con las réplicas de lectura ni con el motor en memoria.
+ */
+@Configuration
+@ConditionalOnProperty("cashcard.sharding.shards[0].url")
+class ShardingConfig {
+
+    /** Un shard tal y como se configura en cashcard.sharding.shards */
+    record ShardProperties(String url, String username, String password) {
+    }
+
+    @Bean
+    ShardRouter shardRouter(Environment environment,
+            @Value("${cashcard.sharding.virtual-nodes:128}") int virtualNodes,
+            @Value("${cashcard.sharding.rebalance-on-startup:true}") boolean rebalanceOnStartup) {
+        List<ShardProperties> configured = Binder.get(environment)
+                .bind("cashcard.sharding.shards", Bindable.listOf(ShardProperties.class))
+                .orElse(List.of());
+        String[] locations = environment.getProperty("spring.flyway.locations", String[].class,
+                new String[] { "classpath:db/migration" });
+        Map<Integer, DataSource> shards = new LinkedHashMap<>();
+        for (int i = 0; i < configured.size(); i++) {
+            int shard = i + 1;
+            DataSource dataSource = createShard(environment, shard, configured.get(i));
+            Flyway.configure()
+                    .dataSource(dataSource)
+                    .locations(locations)
+                    .skipDefaultCallbacks(true)
+                    .load()
+                    .migrate();
+            moveIdentityToShardRange(dataSource, shard);
+            shards.put(shard, dataSource);
+        }
+        return new ShardRouter(shards, virtualNodes, rebalanceOnStartup);
+    }
+
+    @Bean
+    static BeanPostProcessor shardingPostProcessor(ObjectProvider<ShardRouter> shardRouter) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource home && !(bean instanceof ShardedDataSource)) {
+                    return shardRouter.getObject().route(home);
+                }
+                return bean;
+            }
+        };
+    }
+
+    /**
+     * Las tareas asincronas (el cuerpo de GET /cashcards/export, por ejemplo) siguen en el
+     * shard de la petición que las lanzó
+     */
+    @Bean
+    TaskDecorator shardTaskDecorator() {
+        return task -> {
+            Integer shard = ShardRouter.currentShard();
+            return () -> ShardRouter.onShard(shard, () -> {
+                task.run();
+                return null;
+            });
+        };
+    }
+
+    private static DataSource createShard(Environment environment, int shard, ShardProperties properties) {
+        HikariDataSource dataSource = DataSourceBuilder.create()
+                .type(HikariDataSource.class)
+                .url(properties.url())
+                .username(properties.username() != null ? properties.username()
+                        : environment.getProperty("spring.datasource.username", "sa"))
+                .password(properties.password() != null ? properties.password()
+                        : environment.getProperty("spring.datasource.password", ""))
+                .build();
+        dataSource.setPoolName("shard-" + shard);
+        return dataSource;
+    }
+
+    /** Solo la primera vez: despues el contador ya está dentro del tramo del shard */
+    private static void moveIdentityToShardRange(DataSource dataSource, int shard) {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        long first = ((long) shard << ShardRouter.ID_SHIFT) + 1;
+        for (String[] identity : new String[][] { { "CASH_CARD", "ID" }, { "CASH_CARD_CHANGE", "SEQ" } }) {
+            Long next = jdbcTemplate.queryForObject("SELECT identity_base FROM information_schema.columns "
+                    + "WHERE table_name = ? AND column_name = ?", Long.class, identity[0], identity[1]);
+            if (next == null || next < first) {
+                jdbcTemplate.execute("ALTER TABLE " + identity[0] + " ALTER COLUMN " + identity[1]
+                        + " RESTART WITH " + first);
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.cashcard;
+
+import java.security.Principal;
+import java.util.concurrent.locks.Lock;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Fija el shard del usuario autenticado (ShardRouter.shardFor) para toda la petición.
+ * Mientras tanto tiene cogido el lock de lectura del propietario, asi el rebalanceo no
+ * mueve sus filas a mitad de una petición. En las asincronas (export) se suelta al pasar
+ * a otro hilo: el cuerpo sigue en el mismo shard (ShardingConfig.shardTaskDecorator) pero
+ * sin lock, y si se rebalancea en ese momento la exportación puede salir incompleta.
+ * Hasta que acaba el rebalanceo del arranque (ShardRouter.isServing) responde 503.
+ */
+@Component
+@ConditionalOnProperty("cashcard.sharding.shards[0].url")
+class ShardingInterceptor implements AsyncHandlerInterceptor {
+
+    private static final String LOCK_ATTRIBUTE = ShardingInterceptor.class.getName() + ".lock";
+    private static final String RETRY_AFTER = "5";
+
+    private final ShardRouter shardRouter;
+
+    ShardingInterceptor(ShardRouter shardRouter) {
+        this.shardRouter = shardRouter;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (!shardRouter.isServing()) {
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, RETRY_AFTER);
+            return false;
+        }
+        Principal principal = request.getUserPrincipal();
+        if (principal == null) {
+            return true;
+        }
+        Lock lock = shardRouter.ownerLock(principal.getName()).readLock();
+        lock.lock();
+        request.setAttribute(LOCK_ATTRIBUTE, lock);
+        ShardRouter.enter(shardRouter.shardFor(principal.getName()));
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response,
+            Object handler) {
+        release(request);
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+            Exception ex) {
+        release(request);
+    }
+
+    private static void release(HttpServletRequest request) {
+        Lock lock = (Lock) request.getAttribute(LOCK_ATTRIBUTE);
+        if (lock != null) {
+            request.removeAttribute(LOCK_ATTRIBUTE);
+            lock.unlock();
+        }
+        ShardRouter.exit();
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.cashcard;
+
+import java.util.Base64;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.oauth2.jose.jws.MacAlgorithm;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtEncoder;
+import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
+import org.springframework.security.oauth2.jwt.NimbusJwtEncoder;
+
+import com.nimbusds.jose.jwk.source.ImmutableSecret;
+
+/**
+ * Modo token (cashcard.auth.token.enabled=true): POST /auth/token cambia las credenciales
+ * Basic por un JWT firmado con HMAC-SHA256 (TokenController), y SecurityConfig acepta ese
+ * token como Bearer en /cashcards/**. El token se verifica en local con la misma clave,
+ * asi que una petición con token cuesta una firma HMAC (microsegundos) en lugar de BCrypt.
+ *
+ * La clave va en cashcard.auth.token.secret, en Base64 y de al menos 256 bits; todas las
+ * instancias tienen que compartirla. Cambiarla invalida todos los tokens emitidos.
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnProperty(name = "cashcard.auth.token.enabled", havingValue = "true")
+class TokenAuthConfig {
+
+    static final MacAlgorithm ALGORITHM = MacAlgorithm.HS256;
+
+    private final SecretKey key;
+
+    TokenAuthConfig(@Value("${cashcard.auth.token.secret:}") String secret) {
+        byte[] bytes = Base64.getDecoder().decode(secret);
+        if (bytes.length < 32) {
+            throw new IllegalStateException("cashcard.auth.token.secret must be a Base64 key of at least 256 bits");
+        }
+        this.key = new SecretKeySpec(bytes, "HmacSHA256");
+    }
+
+    @Bean
+    JwtEncoder jwtEncoder() {
+        return new NimbusJwtEncoder(new ImmutableSecret<>(key));
+    }
+
+    @Bean
+    JwtDecoder jwtDecoder() {
+        return NimbusJwtDecoder.withSecretKey(key).macAlgorithm(ALGORITHM).build();
+    }
+}
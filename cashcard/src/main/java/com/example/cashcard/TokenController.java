@@ -0,0 +1,67 @@
+package com.example.cashcard;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.jwt.JwsHeader;
+import org.springframework.security.oauth2.jwt.JwtClaimsSet;
+import org.springframework.security.oauth2.jwt.JwtEncoder;
+import org.springframework.security.oauth2.jwt.JwtEncoderParameters;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * POST /auth/token: el usuario se autentica una vez con Basic y recibe un token con su
+ * nombre (sub) y sus roles (roles) que vale cashcard.auth.token.ttl. La respuesta sigue
+ * el formato de OAuth2 (access_token, token_type, expires_in).
+ * Un token no sirve para pedir otro, si no nunca caducaría: hay que volver a pasar por Basic.
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnProperty(name = "cashcard.auth.token.enabled", havingValue = "true")
+class TokenController {
+
+    static final String ROLES_CLAIM = "roles";
+
+    record TokenResponse(@JsonProperty("access_token") String accessToken,
+            @JsonProperty("token_type") String tokenType, @JsonProperty("expires_in") long expiresIn) {
+    }
+
+    private final JwtEncoder jwtEncoder;
+    private final Duration ttl;
+
+    TokenController(JwtEncoder jwtEncoder, @Value("${cashcard.auth.token.ttl:15m}") Duration ttl) {
+        this.jwtEncoder = jwtEncoder;
+        this.ttl = ttl;
+    }
+
+    @PostMapping("/auth/token")
+    private ResponseEntity<TokenResponse> token(Authentication authentication) {
+        if (authentication instanceof JwtAuthenticationToken) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        Instant now = Instant.now();
+        List<String> roles = authentication.getAuthorities().stream().map(GrantedAuthority::getAuthority).toList();
+        JwtClaimsSet claims = JwtClaimsSet.builder()
+                .subject(authentication.getName())
+                .issuedAt(now)
+                .expiresAt(now.plus(ttl))
+                .claim(ROLES_CLAIM, roles)
+                .build();
+        String token = jwtEncoder
+                .encode(JwtEncoderParameters.from(JwsHeader.with(TokenAuthConfig.ALGORITHM).build(), claims))
+                .getTokenValue();
+        return ResponseEntity.ok(new TokenResponse(token, "Bearer", ttl.toSeconds()));
+    }
+}
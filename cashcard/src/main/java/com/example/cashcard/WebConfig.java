@@ -0,0 +1,57 @@
+package com.example.cashcard;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * Configuración de Spring MVC (variante servlet).
+ * Además de JSON, /cashcards habla CBOR (application/cbor) y Smile
+ * (application/x-jackson-smile), según Accept y Content-Type. Los dos conversores usan el
+ * ObjectMapper de Spring Boot con otro formato debajo, asi los importes siguen saliendo
+ * con Cents como en JSON.
+ */
+@Configuration
+class WebConfig implements WebMvcConfigurer {
+
+    private final CashCardAuditInterceptor auditInterceptor;
+    private final ObjectProvider<ReadYourWritesInterceptor> readYourWritesInterceptor;
+    private final ObjectProvider<ShardingInterceptor> shardingInterceptor;
+
+    WebConfig(CashCardAuditInterceptor auditInterceptor,
+            ObjectProvider<ReadYourWritesInterceptor> readYourWritesInterceptor,
+            ObjectProvider<ShardingInterceptor> shardingInterceptor) {
+        this.auditInterceptor = auditInterceptor;
+        this.readYourWritesInterceptor = readYourWritesInterceptor;
+        this.shardingInterceptor = shardingInterceptor;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(auditInterceptor).addPathPatterns("/cashcards/**");
+        // Solo existe si hay réplicas configuradas (ReplicaRoutingConfig)
+        readYourWritesInterceptor.ifAvailable(
+                interceptor -> registry.addInterceptor(interceptor).addPathPatterns("/cashcards/**"));
+        // Solo existe si hay shards configurados (ShardingConfig)
+        shardingInterceptor.ifAvailable(
+                interceptor -> registry.addInterceptor(interceptor).addPathPatterns("/cashcards/**"));
+    }
+
+    @Bean
+    MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2CborHttpMessageConverter(builder.factory(new CBORFactory()).build());
+    }
+
+    @Bean
+    MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2SmileHttpMessageConverter(builder.factory(new SmileFactory()).build());
+    }
+}
@@ -0,0 +1,23 @@
+-- Posición de cada cambio en el feed de su propietario (GET /cashcards/changes).
+-- SEQ sale de la identidad al insertar, antes del commit, y dos transacciones pueden
+-- confirmarse en el orden contrario: un cliente que ya ha leído el SEQ mayor se saltaría
+-- el menor. POSITION se reserva en cash_card_change_position, cuya fila del propietario
+-- queda bloqueada hasta el commit, asi que las posiciones de un propietario se hacen
+-- visibles en orden. Los cambios anteriores conservan su SEQ como posición, y con ello
+-- los cursores que ya tengan los clientes
+ALTER TABLE cash_card_change ADD COLUMN POSITION BIGINT;
+UPDATE cash_card_change SET POSITION = SEQ;
+ALTER TABLE cash_card_change ALTER COLUMN POSITION SET NOT NULL;
+
+CREATE TABLE cash_card_change_position
+(
+    OWNER         VARCHAR(256) NOT NULL PRIMARY KEY,
+    LAST_POSITION BIGINT       NOT NULL
+);
+
+INSERT INTO cash_card_change_position (OWNER, LAST_POSITION)
+SELECT OWNER, MAX(SEQ) FROM cash_card_change GROUP BY OWNER;
+
+-- El feed pasa a ser WHERE owner = ? AND position > ?
+DROP INDEX cash_card_change_owner_seq;
+CREATE INDEX cash_card_change_owner_position ON cash_card_change (OWNER, POSITION);
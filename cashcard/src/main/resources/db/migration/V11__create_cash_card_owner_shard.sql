@@ -0,0 +1,9 @@
+-- Propietarios que CashCardShardRebalancer ya ha movido a un shard que aún no está
+-- ACTIVE. Como cash_card_shard, solo se usa en el shard 0; se vacía al activar el anillo
+-- nuevo. Asi un reinicio a mitad de rebalanceo sigue buscando a cada propietario donde
+-- están sus filas, y el rebalanceo siguiente no vuelve a copiar lo que ya movió
+CREATE TABLE cash_card_owner_shard
+(
+    OWNER    VARCHAR(256) NOT NULL PRIMARY KEY,
+    SHARD_ID INT          NOT NULL
+);
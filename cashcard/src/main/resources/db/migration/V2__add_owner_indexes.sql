@@ -0,0 +1,7 @@
+-- Todas las consultas de CashCardRepository filtran por OWNER.
+-- findByOwner ordena por AMOUNT (y la paginación keyset por AMOUNT, ID), asi el indice
+-- devuelve las filas ya ordenadas sin recorrer la tabla.
+CREATE INDEX IDX_CASH_CARD_OWNER_AMOUNT_ID ON cash_card (OWNER, AMOUNT, ID);
+
+-- findByIdAndOwner y existsByIdAndOwner se resuelven solo con el indice
+CREATE INDEX IDX_CASH_CARD_ID_OWNER ON cash_card (ID, OWNER);
@@ -0,0 +1,3 @@
+-- Versión de la fila: se incrementa en cada modificación y sirve como ETag
+-- y para la concurrencia optimista de PUT con If-Match
+ALTER TABLE cash_card ADD COLUMN VERSION BIGINT NOT NULL DEFAULT 0;
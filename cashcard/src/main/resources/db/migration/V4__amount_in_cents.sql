@@ -0,0 +1,8 @@
+-- Los importes pasan a guardarse como BIGINT en céntimos (ver Cents.java).
+-- Convertimos los datos existentes y recreamos el indice por propietario sobre la nueva columna
+ALTER TABLE cash_card ADD COLUMN AMOUNT_CENTS BIGINT NOT NULL DEFAULT 0;
+UPDATE cash_card SET AMOUNT_CENTS = CAST(ROUND(AMOUNT * 100) AS BIGINT);
+DROP INDEX IDX_CASH_CARD_OWNER_AMOUNT_ID;
+ALTER TABLE cash_card DROP COLUMN AMOUNT;
+ALTER TABLE cash_card ALTER COLUMN AMOUNT_CENTS RENAME TO AMOUNT;
+CREATE INDEX IDX_CASH_CARD_OWNER_AMOUNT_ID ON cash_card (OWNER, AMOUNT, ID);
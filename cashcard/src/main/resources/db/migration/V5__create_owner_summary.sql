@@ -0,0 +1,14 @@
+-- Resumen por propietario (numero de tarjetas, saldo total, minimo y maximo) que se
+-- mantiene en la misma transacción que cada escritura sobre cash_card, asi
+-- GET /cashcards/summary no tiene que recorrer las tarjetas del usuario
+CREATE TABLE cash_card_owner_summary
+(
+    OWNER        VARCHAR(256) NOT NULL PRIMARY KEY,
+    CARD_COUNT   BIGINT       NOT NULL DEFAULT 0,
+    TOTAL_AMOUNT BIGINT       NOT NULL DEFAULT 0,
+    MIN_AMOUNT   BIGINT,
+    MAX_AMOUNT   BIGINT
+);
+
+INSERT INTO cash_card_owner_summary (OWNER, CARD_COUNT, TOTAL_AMOUNT, MIN_AMOUNT, MAX_AMOUNT)
+SELECT OWNER, COUNT(*), SUM(AMOUNT), MIN(AMOUNT), MAX(AMOUNT) FROM cash_card GROUP BY OWNER;
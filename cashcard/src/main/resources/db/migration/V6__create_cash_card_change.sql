@@ -0,0 +1,18 @@
+-- Outbox de cambios sobre cash_card: cada alta, modificación y baja deja una fila en
+-- la misma transacción que la escritura. SEQ da el orden para GET /cashcards/changes
+-- y CashCardChangePublisher marca PUBLISHED cuando la fila ya se ha enviado al sink
+CREATE TABLE cash_card_change
+(
+    SEQ        BIGINT       GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    CARD_ID    BIGINT       NOT NULL,
+    OWNER      VARCHAR(256) NOT NULL,
+    OPERATION  VARCHAR(16)  NOT NULL,
+    AMOUNT     BIGINT,
+    VERSION    BIGINT,
+    CHANGED_AT TIMESTAMP    NOT NULL,
+    PUBLISHED  BOOLEAN      NOT NULL DEFAULT FALSE
+);
+
+-- Feed por propietario (WHERE owner = ? AND seq > ?) y cola del publicador
+CREATE INDEX cash_card_change_owner_seq ON cash_card_change (OWNER, SEQ);
+CREATE INDEX cash_card_change_published_seq ON cash_card_change (PUBLISHED, SEQ);
@@ -0,0 +1,16 @@
+-- Usuarios y roles para SecurityConfig, con el esquema por defecto de JdbcDaoImpl de
+-- Spring Security. PASSWORD es el hash BCrypt y AUTHORITY lleva el prefijo ROLE_
+CREATE TABLE users
+(
+    USERNAME VARCHAR(256) NOT NULL PRIMARY KEY,
+    PASSWORD VARCHAR(100) NOT NULL,
+    ENABLED  BOOLEAN      NOT NULL DEFAULT TRUE
+);
+
+CREATE TABLE authorities
+(
+    USERNAME  VARCHAR(256) NOT NULL,
+    AUTHORITY VARCHAR(64)  NOT NULL,
+    PRIMARY KEY (USERNAME, AUTHORITY),
+    CONSTRAINT authorities_users FOREIGN KEY (USERNAME) REFERENCES users (USERNAME) ON DELETE CASCADE
+);
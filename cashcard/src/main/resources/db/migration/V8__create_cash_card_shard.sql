@@ -0,0 +1,8 @@
+-- Shards que forman el anillo de hash consistente (ver ShardRouter). Solo se usa en el
+-- shard 0 (el DataSource de spring.datasource): un shard nuevo entra como JOINING y pasa
+-- a ACTIVE cuando CashCardShardRebalancer le ha movido sus propietarios
+CREATE TABLE cash_card_shard
+(
+    SHARD_ID INT         NOT NULL PRIMARY KEY,
+    STATE    VARCHAR(16) NOT NULL
+);
@@ -0,0 +1,15 @@
+-- Claves Idempotency-Key de POST /cashcards: la fila se inserta en la misma transacción
+-- que la tarjeta, asi un reintento con la misma clave devuelve la tarjeta ya creada.
+-- AMOUNT es el importe de la petición original, para detectar una clave reutilizada
+-- con otro cuerpo. Se borran pasado cashcard.idempotency.retention
+CREATE TABLE cash_card_idempotency_key
+(
+    OWNER           VARCHAR(256) NOT NULL,
+    IDEMPOTENCY_KEY VARCHAR(255) NOT NULL,
+    CARD_ID         BIGINT       NOT NULL,
+    AMOUNT          BIGINT       NOT NULL,
+    CREATED_AT      TIMESTAMP    NOT NULL,
+    PRIMARY KEY (OWNER, IDEMPOTENCY_KEY)
+);
+
+CREATE INDEX cash_card_idempotency_key_created_at ON cash_card_idempotency_key (CREATED_AT);
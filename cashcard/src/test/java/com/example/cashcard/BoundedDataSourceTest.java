@@ -0,0 +1,53 @@
+package com.example.cashcard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Test unitario del limite de conexiones concurrentes, contra un H2 en memoria
+ */
+class BoundedDataSourceTest {
+
+    private final BoundedDataSource dataSource = new BoundedDataSource(h2(), "h2", 2, Duration.ofMillis(100),
+            new SimpleMeterRegistry());
+
+    @Test
+    void shouldFailFastWhenAllPermitsAreInUse() throws Exception {
+        try (Connection first = dataSource.getConnection(); Connection second = dataSource.getConnection()) {
+            assertThat(dataSource.availablePermits()).isZero();
+            assertThatThrownBy(dataSource::getConnection).isInstanceOf(SQLTransientConnectionException.class);
+        }
+        assertThat(dataSource.availablePermits()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldReleaseThePermitOnlyOnceWhenClosedTwice() throws Exception {
+        Connection connection = dataSource.getConnection();
+        connection.close();
+        connection.close();
+        assertThat(dataSource.availablePermits()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldNotUnwrapToTheUnboundedDataSource() throws Exception {
+        assertThat(dataSource.isWrapperFor(JdbcDataSource.class)).isFalse();
+        assertThatThrownBy(() -> dataSource.unwrap(JdbcDataSource.class)).isInstanceOf(SQLException.class);
+        assertThat(dataSource.unwrap(BoundedDataSource.class)).isSameAs(dataSource);
+    }
+
+    private static JdbcDataSource h2() {
+        JdbcDataSource h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:bounded;DB_CLOSE_DELAY=-1");
+        return h2;
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.cashcard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Test unitario de la cache de credenciales, sin levantar el contexto de Spring
+ */
+class CachingPasswordEncoderTest {
+
+    private final AtomicInteger bcryptCalls = new AtomicInteger();
+
+    private CachingPasswordEncoder encoder;
+
+    @BeforeEach
+    void setUp() {
+        BCryptPasswordEncoder bcrypt = new BCryptPasswordEncoder(4);
+        PasswordEncoder countingBcrypt = new PasswordEncoder() {
+            @Override
+            public String encode(CharSequence rawPassword) {
+                return bcrypt.encode(rawPassword);
+            }
+
+            @Override
+            public boolean matches(CharSequence rawPassword, String encodedPassword) {
+                bcryptCalls.incrementAndGet();
+                return bcrypt.matches(rawPassword, encodedPassword);
+            }
+        };
+        encoder = new CachingPasswordEncoder(countingBcrypt, 100, Duration.ofMinutes(5), new SimpleMeterRegistry());
+    }
+
+    @Test
+    void shouldOnlyRunBCryptOnceForRepeatedValidCredentials() {
+        String hash = encoder.encode("abc123");
+
+        assertThat(encoder.matches("abc123", hash)).isTrue();
+        assertThat(encoder.matches("abc123", hash)).isTrue();
+        assertThat(encoder.matches("abc123", hash)).isTrue();
+
+        assertThat(bcryptCalls).hasValue(1);
+    }
+
+    @Test
+    void shouldNotCacheWrongPasswords() {
+        String hash = encoder.encode("abc123");
+
+        assertThat(encoder.matches("bad", hash)).isFalse();
+        assertThat(encoder.matches("bad", hash)).isFalse();
+
+        assertThat(bcryptCalls).hasValue(2);
+        assertThat(encoder.size()).isZero();
+    }
+
+    @Test
+    void shouldNotMatchAnOldPasswordAfterTheStoredHashChanges() {
+        String oldHash = encoder.encode("abc123");
+        assertThat(encoder.matches("abc123", oldHash)).isTrue();
+
+        // El usuario cambia de contraseña: el hash almacenado es otro
+        String newHash = encoder.encode("new-password");
+        assertThat(encoder.matches("abc123", newHash)).isFalse();
+        assertThat(encoder.matches("new-password", newHash)).isTrue();
+    }
+
+    @Test
+    void shouldRunBCryptAgainAfterInvalidation() {
+        String hash = encoder.encode("abc123");
+        encoder.matches("abc123", hash);
+
+        encoder.invalidateAll();
+        encoder.matches("abc123", hash);
+
+        assertThat(bcryptCalls).hasValue(2);
+    }
+}
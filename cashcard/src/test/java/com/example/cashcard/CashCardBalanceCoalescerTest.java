@@ -0,0 +1,108 @@
+package com.example.cashcard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.cashcard.CashCardWriteService.BalanceResult;
+import com.example.cashcard.CashCardWriteService.BalanceStatus;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Test unitario de la agrupación de deltas, con un CashCardWriteService falso que
+ * apunta cada escritura y devuelve como importe el propio delta
+ */
+class CashCardBalanceCoalescerTest {
+
+    private final RecordingWriteService writeService = new RecordingWriteService();
+
+    @Test
+    void shouldApplyEachDeltaOnItsOwnWithoutAWindow() {
+        CashCardBalanceCoalescer coalescer = coalescer(Duration.ZERO, 100);
+        coalescer.addToBalance(99L, "sarah1", 100);
+        coalescer.addToBalance(99L, "sarah1", 200);
+        assertThat(writeService.writes).containsExactly(List.of(100L), List.of(200L));
+    }
+
+    @Test
+    void shouldApplyConcurrentDeltasForTheSameCardTogether() throws Exception {
+        CashCardBalanceCoalescer coalescer = coalescer(Duration.ofMillis(500), 100);
+        List<BalanceResult> results = concurrently(coalescer, 10);
+
+        assertThat(writeService.writes).hasSize(1);
+        assertThat(writeService.writes.get(0)).containsExactlyInAnyOrder(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L);
+        // Cada petición recibe el resultado de su propio delta
+        for (int i = 0; i < results.size(); i++) {
+            assertThat(results.get(i).cashCard().amount()).isEqualTo(i + 1);
+        }
+    }
+
+    @Test
+    void shouldNotGrowABatchBeyondTheMaximum() throws Exception {
+        CashCardBalanceCoalescer coalescer = coalescer(Duration.ofMillis(500), 4);
+        concurrently(coalescer, 10);
+
+        assertThat(writeService.writes).allSatisfy(deltas -> assertThat(deltas).hasSizeLessThanOrEqualTo(4));
+        assertThat(writeService.writes.stream().mapToInt(List::size).sum()).isEqualTo(10);
+    }
+
+    private CashCardBalanceCoalescer coalescer(Duration window, int maxBatchSize) {
+        return new CashCardBalanceCoalescer(writeService, window, maxBatchSize, new SimpleMeterRegistry());
+    }
+
+    /** Lanza n deltas a la vez (1, 2, ... n) y devuelve sus resultados en ese orden */
+    private static List<BalanceResult> concurrently(CashCardBalanceCoalescer coalescer, int n) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(n);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<BalanceResult>> futures = new ArrayList<>();
+            for (long delta = 1; delta <= n; delta++) {
+                long thisDelta = delta;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return coalescer.addToBalance(99L, "sarah1", thisDelta);
+                }));
+            }
+            start.countDown();
+            List<BalanceResult> results = new ArrayList<>();
+            for (Future<BalanceResult> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static class RecordingWriteService extends CashCardWriteService {
+
+        final List<List<Long>> writes = Collections.synchronizedList(new ArrayList<>());
+
+        RecordingWriteService() {
+            super(null, null, null, null);
+        }
+
+        @Override
+        BalanceResult addToBalance(Long id, String owner, long delta) {
+            return addAllToBalance(id, owner, List.of(delta)).get(0);
+        }
+
+        @Override
+        List<BalanceResult> addAllToBalance(Long id, String owner, List<Long> deltas) {
+            writes.add(deltas);
+            return deltas.stream()
+                    .map(delta -> new BalanceResult(BalanceStatus.APPLIED, new CashCard(id, delta, owner, 0L)))
+                    .toList();
+        }
+    }
+}
@@ -10,9 +10,12 @@ import org.springframework.boot.test.autoconfigure.json.JsonTest;
 import org.springframework.boot.test.json.JacksonTester;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 import java.io.IOException;
 
+import com.fasterxml.jackson.databind.exc.InvalidFormatException;
+
 
 /**
  * Ejemplo para el uso del enfoque Red Green Refactor
@@ -49,9 +52,9 @@ public class CashCardJsonTest {
     @BeforeEach
     void setUp() {
         cashCards = Arrays.array(
-                new CashCard(99L, 123.45, "sarah1"),
-                new CashCard(100L, 1.00, "sarah1"),
-                new CashCard(101L, 150.00, "sarah1"));
+                new CashCard(99L, 12345, "sarah1"),
+                new CashCard(100L, 100, "sarah1"),
+                new CashCard(101L, 15000, "sarah1"));
     }
 
     @Test
@@ -86,7 +89,7 @@ public class CashCardJsonTest {
     @Test
     /** Test de serialización */
     void cashCardSerializationTest() throws IOException {
-        CashCard cashCard = new CashCard(99L, 123.45, "sarah1");
+        CashCard cashCard = new CashCard(99L, 12345, "sarah1");
 
         // Estos test convierten el objeto java en un documento JSON(serializar) y
         // realiza comprobaciones
@@ -111,9 +114,23 @@ public class CashCardJsonTest {
 
         // Ahora al contrario deserializa un documento y lo convierte en un objeto para
         // compararlo con otro objeto
-        assertThat(json.parse(expected)).isEqualTo(new CashCard(99L, 123.45, "sarah1"));
+        assertThat(json.parse(expected)).isEqualTo(new CashCard(99L, 12345, "sarah1"));
         assertThat(json.parseObject(expected).id()).isEqualTo(99);
-        assertThat(json.parseObject(expected).amount()).isEqualTo(123.45);
+        assertThat(json.parseObject(expected).amount()).isEqualTo(12345L);
+    }
+
+    @Test
+    /** Los importes se guardan en céntimos, un tercer decimal no se redondea sino que se rechaza */
+    void cashCardDeserializationShouldRejectFractionsOfACent() {
+        String expected = """
+                {
+                    "id":99,
+                    "amount":123.455,
+                    "owner": "sarah1"
+                }
+                """;
+
+        assertThatThrownBy(() -> json.parseObject(expected)).isInstanceOf(InvalidFormatException.class);
     }
 
 }
@@ -0,0 +1,61 @@
+package com.example.cashcard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Token bucket y limite global de CashCardRateLimiter, con un reloj que avanza a mano
+ */
+class CashCardRateLimiterTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final CashCardRateLimiter rateLimiter = new CashCardRateLimiter(10, 3, 1000, 2, Duration.ZERO,
+            meterRegistry, now::get);
+
+    @Test
+    void shouldAllowTheBurstAndThenTheRate() {
+        assertThat(rateLimiter.tryAcquire("sarah1")).isZero();
+        assertThat(rateLimiter.tryAcquire("sarah1")).isZero();
+        assertThat(rateLimiter.tryAcquire("sarah1")).isZero();
+        // A 10 por segundo el siguiente token llega en 100ms
+        assertThat(rateLimiter.tryAcquire("sarah1")).isEqualTo(TimeUnit.MILLISECONDS.toNanos(100));
+        // Los demás propietarios tienen su propio bucket
+        assertThat(rateLimiter.tryAcquire("kumar2")).isZero();
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+        assertThat(rateLimiter.tryAcquire("sarah1")).isZero();
+        assertThat(rateLimiter.tryAcquire("sarah1")).isPositive();
+        assertThat(meterRegistry.get("cashcard.ratelimit.rejected").tag("reason", "rate").counter().count())
+                .isEqualTo(2);
+    }
+
+    @Test
+    void shouldRefillUpToTheBurstOnly() {
+        now.addAndGet(TimeUnit.SECONDS.toNanos(60));
+        for (int i = 0; i < 3; i++) {
+            assertThat(rateLimiter.tryAcquire("sarah1")).isZero();
+        }
+        assertThat(rateLimiter.tryAcquire("sarah1")).isPositive();
+    }
+
+    @Test
+    void shouldLimitTheRequestsInFlight() throws InterruptedException {
+        assertThat(rateLimiter.enter()).isTrue();
+        assertThat(rateLimiter.enter()).isTrue();
+        assertThat(rateLimiter.enter()).isFalse();
+        assertThat(meterRegistry.get("cashcard.ratelimit.in-flight").gauge().value()).isEqualTo(2);
+
+        rateLimiter.release();
+        assertThat(rateLimiter.enter()).isTrue();
+        assertThat(meterRegistry.get("cashcard.ratelimit.rejected").tag("reason", "concurrency").counter().count())
+                .isEqualTo(1);
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.cashcard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.data.jdbc.repository.query.Query;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Comprueba que las migraciones de Flyway se aplican al arrancar y que H2
+ * usa los indices por propietario en las consultas del repositorio.
+ * EXPLAIN devuelve el plan de ejecución, donde H2 indica el indice elegido
+ */
+@JdbcTest
+class CashCardSchemaTest {
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Test
+    void shouldApplyTheVersionedMigrations() {
+        Integer applied = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM \"flyway_schema_history\" WHERE \"success\" = TRUE AND \"version\" IS NOT NULL",
+                Integer.class);
+        assertThat(applied).isGreaterThanOrEqualTo(2);
+    }
+
+    @Test
+    void findByOwnerShouldUseTheOwnerAmountIndex() {
+        String plan = explain("SELECT * FROM cash_card WHERE owner = 'sarah1' ORDER BY amount, id LIMIT 20");
+        assertThat(plan).contains("IDX_CASH_CARD_OWNER_AMOUNT_ID");
+    }
+
+    @Test
+    void keysetQueryShouldReadTheSameRowsAtAnyDepth() throws NoSuchMethodException {
+        jdbcTemplate.update("INSERT INTO cash_card (amount, owner) SELECT X, 'deep' FROM SYSTEM_RANGE(1, 2000)");
+
+        String shallow = explainAnalyze(keysetQuery("deep", 10, 20));
+        String deep = explainAnalyze(keysetQuery("deep", 1900, 20));
+
+        // El recorrido del indice empieza en el cursor y va en el orden del indice, sin ordenar despues
+        assertThat(deep).containsPattern("IDX_CASH_CARD_OWNER_AMOUNT_ID: OWNER = 'deep'\\s+AND AMOUNT >= ");
+        assertThat(deep).contains("index sorted");
+        // y se para en LIMIT: las filas leídas no dependen de lo lejos que este la pagina
+        assertThat(scanCount(deep)).isEqualTo(scanCount(shallow)).isLessThanOrEqualTo(21);
+    }
+
+    @Test
+    void findByIdAndOwnerShouldUseAnIndex() {
+        String plan = explain("SELECT * FROM cash_card WHERE id = 99 AND owner = 'sarah1'");
+        // Con tan pocas filas H2 puede elegir cualquiera de los indices, lo importante
+        // es que la busqueda por ID sea una busqueda por indice y no un recorrido de la tabla
+        assertThat(plan).containsPattern("PUBLIC\\.\\w+: ID = ");
+        assertThat(plan).doesNotContain("tableScan");
+    }
+
+    private String explain(String sql) {
+        return jdbcTemplate.queryForObject("EXPLAIN " + sql, String.class);
+    }
+
+    private String explainAnalyze(String sql) {
+        return jdbcTemplate.queryForObject("EXPLAIN ANALYZE " + sql, String.class);
+    }
+
+    /** La consulta de CashCardRepository.findByOwnerAfter con el cursor de la tarjeta de importe amount */
+    private String keysetQuery(String owner, long amount, int limit) throws NoSuchMethodException {
+        Long id = jdbcTemplate.queryForObject("SELECT id FROM cash_card WHERE owner = ? AND amount = ?", Long.class,
+                owner, amount);
+        String sql = CashCardRepository.class
+                .getDeclaredMethod("findByOwnerAfter", String.class, long.class, Long.class, int.class)
+                .getAnnotation(Query.class).value();
+        return sql.replace(":owner", "'" + owner + "'")
+                .replace(":amount", String.valueOf(amount))
+                .replace(":id", String.valueOf(id))
+                .replace(":limit", String.valueOf(limit));
+    }
+
+    private static int scanCount(String plan) {
+        Matcher matcher = Pattern.compile("scanCount: (\\d+)").matcher(plan);
+        assertThat(matcher.find()).isTrue();
+        return Integer.parseInt(matcher.group(1));
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.cashcard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.security.core.userdetails.cache.NullUserCache;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+/**
+ * Test unitario del administrador inicial (cashcard.auth.bootstrap-admin), contra un H2
+ * en memoria con la tabla de usuarios de V7
+ */
+class CashCardUsersTest {
+
+    @Test
+    void shouldCreateTheBootstrapAdminOnlyWhenThereAreNoUsers() {
+        JdbcDataSource h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:users;DB_CLOSE_DELAY=-1");
+        new ResourceDatabasePopulator(new ClassPathResource("db/migration/V7__create_users.sql")).execute(h2);
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(h2);
+
+        users(h2, "admin").createBootstrapAdmin();
+        assertThat(jdbcTemplate.queryForObject("SELECT authority FROM authorities WHERE username = 'admin'",
+                String.class)).isEqualTo("ROLE_ADMIN");
+
+        // Con usuarios ya dados de alta no se crea otro
+        users(h2, "other").createBootstrapAdmin();
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM users", Integer.class)).isEqualTo(1);
+    }
+
+    private static CashCardUsers users(JdbcDataSource h2, String bootstrapAdmin) {
+        return new CashCardUsers(h2, new NullUserCache(), new BCryptPasswordEncoder(4), bootstrapAdmin, "adm111");
+    }
+}
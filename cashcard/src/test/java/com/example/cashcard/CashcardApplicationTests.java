@@ -1,25 +1,58 @@
 package com.example.cashcard;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
 import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
 
 import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
 import com.jayway.jsonpath.DocumentContext;
 import com.jayway.jsonpath.JsonPath;
 
 import net.minidev.json.JSONArray;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+// Sin esto los tests desactivan la exportación de metricas y no habria /actuator/prometheus
+@AutoConfigureObservability(tracing = false)
 /**
  * Con esta anotación spring arranca un servidor web embebido en un puerto
  * aleatorio disponible
@@ -30,6 +63,28 @@ class CashcardApplicationTests {
 	// Clase que nos ayuda a simular un cliente
 	TestRestTemplate restTemplate;
 
+	@Autowired
+	JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	CashCardChangePublisher changePublisher;
+
+	@Autowired
+	CashCardUsers cashCardUsers;
+
+	@Autowired
+	CashCardWriteService writeService;
+
+	@Autowired
+	CashCardChangeLog changeLog;
+
+	@Autowired
+	TransactionTemplate transactionTemplate;
+
+	// Solo existe con el motor JDBC
+	@Autowired(required = false)
+	CashCardSummaryReconciler summaryReconciler;
+
 	@Test
 	void shouldReturnACashCardWhenDataIsSaved() {
 		/** version sin autenticación */
@@ -75,7 +130,7 @@ class CashcardApplicationTests {
 	@Test
 	@DirtiesContext
 	void shouldCreateANewCashCard() {
-		CashCard newCashCard = new CashCard(null, 250.00, null);
+		CashCard newCashCard = new CashCard(null, 25000, null);
 		// En este caso no esperamos como respuesta un body como en el GET, por eso
 		// devuelve un Void response body
 		/*ResponseEntity<Void> createResponse = restTemplate.postForEntity("/cashcards", newCashCard, Void.class);
@@ -96,6 +151,66 @@ class CashcardApplicationTests {
 		assertThat(amount).isEqualTo(250.00);
 	}
 
+	@Test
+	@DirtiesContext
+	void shouldCreateOnlyOneCashCardForRetriesWithTheSameIdempotencyKey() {
+		ResponseEntity<Void> first = createWithIdempotencyKey("retry-1", 25000);
+		assertThat(first.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+		assertThat(first.getHeaders().containsKey(CashCardController.IDEMPOTENT_REPLAYED_HEADER)).isFalse();
+
+		ResponseEntity<Void> retry = createWithIdempotencyKey("retry-1", 25000);
+		assertThat(retry.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+		assertThat(retry.getHeaders().getLocation()).isEqualTo(first.getHeaders().getLocation());
+		assertThat(retry.getHeaders().getFirst(CashCardController.IDEMPOTENT_REPLAYED_HEADER)).isEqualTo("true");
+
+		// La misma clave con otro importe no es un reintento
+		assertThat(createWithIdempotencyKey("retry-1", 100).getStatusCode())
+				.isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY);
+		// Las claves son de cada propietario
+		assertThat(restTemplate.withBasicAuth("kumar2", "xyz789")
+				.postForEntity("/cashcards", idempotent("retry-1", 25000), Void.class).getHeaders()
+				.containsKey(CashCardController.IDEMPOTENT_REPLAYED_HEADER)).isFalse();
+
+		ResponseEntity<String> response = restTemplate.withBasicAuth("sarah1", "abc123")
+				.getForEntity("/cashcards", String.class);
+		assertThat(JsonPath.parse(response.getBody()).read("$.length()", Integer.class)).isEqualTo(4);
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldCollapseConcurrentRequestsWithTheSameIdempotencyKey() throws Exception {
+		int requests = 10;
+		ExecutorService executor = Executors.newFixedThreadPool(requests);
+		try {
+			List<Future<ResponseEntity<Void>>> responses = new ArrayList<>();
+			for (int i = 0; i < requests; i++) {
+				responses.add(executor.submit(() -> createWithIdempotencyKey("concurrent-1", 500)));
+			}
+			List<URI> locations = new ArrayList<>();
+			for (Future<ResponseEntity<Void>> response : responses) {
+				assertThat(response.get().getStatusCode()).isEqualTo(HttpStatus.CREATED);
+				locations.add(response.get().getHeaders().getLocation());
+			}
+			assertThat(locations).containsOnly(locations.get(0));
+		} finally {
+			executor.shutdownNow();
+		}
+		ResponseEntity<String> response = restTemplate.withBasicAuth("sarah1", "abc123")
+				.getForEntity("/cashcards", String.class);
+		assertThat(JsonPath.parse(response.getBody()).read("$.length()", Integer.class)).isEqualTo(4);
+	}
+
+	private ResponseEntity<Void> createWithIdempotencyKey(String key, long amount) {
+		return restTemplate.withBasicAuth("sarah1", "abc123")
+				.postForEntity("/cashcards", idempotent(key, amount), Void.class);
+	}
+
+	private static HttpEntity<CashCard> idempotent(String key, long amount) {
+		HttpHeaders headers = new HttpHeaders();
+		headers.set(CashCardController.IDEMPOTENCY_KEY_HEADER, key);
+		return new HttpEntity<>(new CashCard(null, amount, null), headers);
+	}
+
 	@Test
 	void shouldReturnAllCashCardsWhenListIsRequested() {
 		ResponseEntity<String> response = restTemplate.withBasicAuth("sarah1", "abc123").getForEntity("/cashcards", String.class);
@@ -158,6 +273,598 @@ class CashcardApplicationTests {
 		assertThat(amounts).containsExactly(1.00, 123.45, 150.00);
 	}
 
+	/** Keyset pagination test: recorremos todas las páginas siguiendo el cursor */
+	@Test
+	void shouldWalkAllCashCardsUsingTheKeysetCursor() {
+		ResponseEntity<String> response = restTemplate.withBasicAuth("sarah1", "abc123")
+				.getForEntity("/cashcards?after=&size=2", String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+		DocumentContext documentContext = JsonPath.parse(response.getBody());
+		JSONArray amounts = documentContext.read("$..amount");
+		assertThat(amounts).containsExactly(1.00, 123.45);
+
+		String cursor = response.getHeaders().getFirst("X-Next-Cursor");
+		assertThat(cursor).isNotBlank();
+
+		response = restTemplate.withBasicAuth("sarah1", "abc123")
+				.getForEntity("/cashcards?after=" + cursor + "&size=2", String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+		documentContext = JsonPath.parse(response.getBody());
+		amounts = documentContext.read("$..amount");
+		assertThat(amounts).containsExactly(150.00);
+		assertThat(response.getHeaders().containsKey("X-Next-Cursor")).isFalse();
+	}
+
+	@Test
+	void shouldRejectAnInvalidKeysetCursor() {
+		ResponseEntity<String> response = restTemplate.withBasicAuth("sarah1", "abc123")
+				.getForEntity("/cashcards?after=not-a-cursor", String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldExecuteABatchOfOperationsEnforcingOwnership() {
+		String operations = """
+				[
+				  {"op": "create", "amount": 10.00},
+				  {"op": "create", "amount": 20.00},
+				  {"op": "update", "id": 99, "amount": 5.00},
+				  {"op": "update", "id": 102, "amount": 0.00},
+				  {"op": "delete", "id": 100},
+				  {"op": "delete"}
+				]
+				""";
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_JSON);
+		ResponseEntity<String> response = restTemplate.withBasicAuth("sarah1", "abc123")
+				.postForEntity("/cashcards/batch", new HttpEntity<>(operations, headers), String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+		DocumentContext documentContext = JsonPath.parse(response.getBody());
+		JSONArray statuses = documentContext.read("$[*].status");
+		assertThat(statuses).containsExactly(201, 201, 204, 404, 204, 400);
+		Number createdId = documentContext.read("$[0].id");
+
+		// La tarjeta de kumar2 no se ha tocado
+		ResponseEntity<String> kumarCard = restTemplate.withBasicAuth("kumar2", "xyz789")
+				.getForEntity("/cashcards/102", String.class);
+		Double kumarAmount = JsonPath.parse(kumarCard.getBody()).read("$.amount");
+		assertThat(kumarAmount).isEqualTo(200.00);
+
+		ResponseEntity<String> created = restTemplate.withBasicAuth("sarah1", "abc123")
+				.getForEntity("/cashcards/" + createdId, String.class);
+		assertThat(created.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+		ResponseEntity<String> deleted = restTemplate.withBasicAuth("sarah1", "abc123")
+				.getForEntity("/cashcards/100", String.class);
+		assertThat(deleted.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+
+		// El resumen se ajusta con el cambio acumulado del bloque; el minimo se ha borrado
+		assertSummary(4, 185.00, 5.00, 150.00);
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldNegotiateCborAndSmile() throws IOException {
+		HttpHeaders headers = new HttpHeaders();
+		headers.setAccept(List.of(MediaType.APPLICATION_CBOR));
+		ResponseEntity<byte[]> cbor = restTemplate.withBasicAuth("sarah1", "abc123")
+				.exchange("/cashcards/99", HttpMethod.GET, new HttpEntity<>(headers), byte[].class);
+		assertThat(cbor.getHeaders().getContentType()).isEqualTo(MediaType.APPLICATION_CBOR);
+		assertThat(new CBORMapper().readTree(cbor.getBody()).get("amount").decimalValue())
+				.isEqualByComparingTo("123.45");
+
+		headers.setAccept(List.of(MediaType.valueOf(CashCardController.APPLICATION_SMILE_VALUE)));
+		ResponseEntity<byte[]> smile = restTemplate.withBasicAuth("sarah1", "abc123")
+				.exchange("/cashcards", HttpMethod.GET, new HttpEntity<>(headers), byte[].class);
+		assertThat(new SmileMapper().readTree(smile.getBody()).size()).isEqualTo(3);
+
+		// También como cuerpo de POST
+		headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_CBOR);
+		byte[] body = new CBORMapper().writeValueAsBytes(Map.of("amount", new BigDecimal("2.50")));
+		ResponseEntity<Void> created = restTemplate.withBasicAuth("sarah1", "abc123")
+				.postForEntity("/cashcards", new HttpEntity<>(body, headers), Void.class);
+		assertThat(created.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+		ResponseEntity<String> response = restTemplate.withBasicAuth("sarah1", "abc123")
+				.getForEntity(created.getHeaders().getLocation(), String.class);
+		Double amount = JsonPath.parse(response.getBody()).read("$.amount");
+		assertThat(amount).isEqualTo(2.50);
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldAcceptABatchAsCborAndCompressALargeResponse() throws Exception {
+		List<Map<String, Object>> operations = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			operations.add(Map.of("op", "create", "amount", new BigDecimal("1.00")));
+		}
+		// El cliente HTTP de TestRestTemplate descomprime solo y quita Content-Encoding,
+		// asi que aqui va el de la JDK, que devuelve los bytes tal cual
+		HttpRequest request = HttpRequest.newBuilder(URI.create(restTemplate.getRootUri() + "/cashcards/batch"))
+				.header(HttpHeaders.AUTHORIZATION,
+						"Basic " + HttpHeaders.encodeBasicAuth("sarah1", "abc123", StandardCharsets.UTF_8))
+				.header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_CBOR_VALUE)
+				.header(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE)
+				.header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+				.POST(HttpRequest.BodyPublishers.ofByteArray(new CBORMapper().writeValueAsBytes(operations)))
+				.build();
+		HttpResponse<byte[]> response = HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofByteArray());
+		assertThat(response.statusCode()).isEqualTo(HttpStatus.OK.value());
+		assertThat(response.headers().firstValue(HttpHeaders.CONTENT_ENCODING)).contains("gzip");
+
+		try (GZIPInputStream json = new GZIPInputStream(new ByteArrayInputStream(response.body()))) {
+			JSONArray statuses = JsonPath.parse(json).read("$[*].status");
+			assertThat(statuses).hasSize(100).containsOnly(201);
+		}
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldStopABatchAtTheFirstUnreadableOperation() {
+		String operations = """
+				{"op":"create","amount":10.00}
+				{"op":"update","id":99,"amount":5.00}
+				{"op":"transfer","id":99}
+				{"op":"delete","id":100}
+				""";
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_NDJSON);
+		ResponseEntity<String> response = restTemplate.withBasicAuth("sarah1", "abc123")
+				.postForEntity("/cashcards/batch", new HttpEntity<>(operations, headers), String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+		// Lo leído antes se ha ejecutado, la operación ilegible es un 400 y lo de detrás no se ejecuta
+		DocumentContext documentContext = JsonPath.parse(response.getBody());
+		JSONArray statuses = documentContext.read("$[*].status");
+		assertThat(statuses).containsExactly(201, 204, 400);
+		assertThat(documentContext.read("$[2].index", Integer.class)).isEqualTo(2);
+		assertThat(restTemplate.withBasicAuth("sarah1", "abc123").getForEntity("/cashcards/100", String.class)
+				.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+		response = restTemplate.withBasicAuth("sarah1", "abc123")
+				.postForEntity("/cashcards/batch", new HttpEntity<>("]", headers), String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldAcceptABatchAsNdjson() {
+		String operations = """
+				{"op": "create", "amount": 10.00}
+				{"op": "update", "id": 101, "amount": 42.00}
+				""";
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_NDJSON);
+		ResponseEntity<String> response = restTemplate.withBasicAuth("sarah1", "abc123")
+				.postForEntity("/cashcards/batch", new HttpEntity<>(operations, headers), String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+		JSONArray statuses = JsonPath.parse(response.getBody()).read("$[*].status");
+		assertThat(statuses).containsExactly(201, 204);
+	}
+
+	@Test
+	void shouldExportAllCashCardsAsNdjson() {
+		ResponseEntity<String> response = restTemplate.withBasicAuth("sarah1", "abc123")
+				.getForEntity("/cashcards/export", String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(response.getHeaders().getContentType()).isEqualTo(MediaType.APPLICATION_NDJSON);
+
+		String[] lines = response.getBody().split("\n");
+		assertThat(lines).hasSize(3);
+		Number id = JsonPath.parse(lines[0]).read("$.id");
+		Double amount = JsonPath.parse(lines[0]).read("$.amount");
+		assertThat(id).isEqualTo(100);
+		assertThat(amount).isEqualTo(1.00);
+	}
+
+	@Test
+	void shouldExportAllCashCardsAsCsv() {
+		ResponseEntity<String> response = restTemplate.withBasicAuth("sarah1", "abc123")
+				.getForEntity("/cashcards/export?format=csv", String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(response.getBody()).startsWith("id,amount,owner\n100,1.00,sarah1\n");
+		assertThat(response.getBody().split("\n")).hasSize(4);
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldNotServeAStaleCachedCashCardAfterAnUpdate() {
+		// La primera lectura deja la tarjeta en la cache
+		ResponseEntity<String> response = restTemplate.withBasicAuth("sarah1", "abc123")
+				.getForEntity("/cashcards/99", String.class);
+		Double amount = JsonPath.parse(response.getBody()).read("$.amount");
+		assertThat(amount).isEqualTo(123.45);
+
+		HttpEntity<CashCard> request = new HttpEntity<>(new CashCard(null, 7777, null));
+		restTemplate.withBasicAuth("sarah1", "abc123")
+				.exchange("/cashcards/99", HttpMethod.PUT, request, Void.class);
+
+		response = restTemplate.withBasicAuth("sarah1", "abc123")
+				.getForEntity("/cashcards/99", String.class);
+		amount = JsonPath.parse(response.getBody()).read("$.amount");
+		assertThat(amount).isEqualTo(77.77);
+
+		// Segunda lectura sin cambios: sale de la cache y se ve en las metricas
+		restTemplate.withBasicAuth("sarah1", "abc123").getForEntity("/cashcards/99", String.class);
+		ResponseEntity<String> metrics = restTemplate.withBasicAuth("sarah1", "abc123")
+				.getForEntity("/actuator/metrics/cache.gets?tag=cache:cashcards&tag=result:hit", String.class);
+		assertThat(metrics.getStatusCode()).isEqualTo(HttpStatus.OK);
+		Double hits = JsonPath.parse(metrics.getBody()).read("$.measurements[0].value");
+		assertThat(hits).isGreaterThanOrEqualTo(1.0);
+	}
+
+	@Test
+	void shouldExposeLatencyMetricsInPrometheusFormat() {
+		restTemplate.withBasicAuth("sarah1", "abc123").getForEntity("/cashcards/99", String.class);
+		restTemplate.withBasicAuth("sarah1", "abc123").getForEntity("/cashcards/98765", String.class);
+
+		ResponseEntity<String> response = restTemplate.withBasicAuth("sarah1", "abc123")
+				.getForEntity("/actuator/prometheus", String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		String body = response.getBody();
+		// Por endpoint y por status, con histograma para los percentiles
+		assertThat(body).containsPattern("http_server_requests_seconds_bucket\\{.*status=\"200\".*uri=\"/cashcards/\\{requestedId}\"");
+		assertThat(body).containsPattern("http_server_requests_seconds_count\\{.*status=\"404\".*uri=\"/cashcards/\\{requestedId}\"");
+		// Repositorio, pool de conexiones, BCrypt y caches
+		assertRepositoryMetrics(body);
+		assertThat(body).contains("hikaricp_connections_acquire_seconds");
+		assertThat(body).containsPattern("cashcard_auth_password_match_seconds_count\\{cache=\"(hit|miss)\"");
+		assertThat(body).contains("cache=\"cashcards\"", "cache=\"credentials\"", "cache=\"users\"");
+	}
+
+	/** Spring Data mide cada metodo de CashCardRepository */
+	void assertRepositoryMetrics(String prometheusBody) {
+		assertThat(prometheusBody).containsPattern("spring_data_repository_invocations_seconds_bucket\\{.*method=\"findByIdAndOwner\"");
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldWriteAnAuditEventForEachUpdate() throws InterruptedException {
+		ListAppender<ILoggingEvent> events = new ListAppender<>();
+		events.start();
+		Logger auditLogger = (Logger) LoggerFactory.getLogger(CashCardAuditInterceptor.AUDIT_LOGGER);
+		auditLogger.addAppender(events);
+		try {
+			HttpEntity<CashCard> request = new HttpEntity<>(new CashCard(null, 1999, null));
+			ResponseEntity<Void> response = restTemplate.withBasicAuth("sarah1", "abc123")
+					.exchange("/cashcards/99", HttpMethod.PUT, request, Void.class);
+			assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT);
+
+			// El evento se registra al terminar la petición en el servidor
+			for (int i = 0; i < 50 && events.list.isEmpty(); i++) {
+				Thread.sleep(20);
+			}
+			assertThat(events.list).hasSize(1);
+			Map<String, Object> fields = events.list.get(0).getKeyValuePairs().stream()
+					.collect(Collectors.toMap(pair -> pair.key, pair -> pair.value));
+			assertThat(fields).containsEntry("owner", "sarah1")
+					.containsEntry("cardId", "99")
+					.containsEntry("operation", "putCashCard")
+					.containsEntry("status", 204)
+					.containsKey("latencyMicros");
+		} finally {
+			auditLogger.detachAppender(events);
+		}
+	}
+
+	@Test
+	void shouldReturnNotModifiedWhenTheETagMatches() {
+		ResponseEntity<String> response = restTemplate.withBasicAuth("sarah1", "abc123")
+				.getForEntity("/cashcards/99", String.class);
+		String eTag = response.getHeaders().getETag();
+		assertThat(eTag).isEqualTo("\"0\"");
+
+		HttpHeaders headers = new HttpHeaders();
+		headers.setIfNoneMatch(eTag);
+		ResponseEntity<String> conditional = restTemplate.withBasicAuth("sarah1", "abc123")
+				.exchange("/cashcards/99", HttpMethod.GET, new HttpEntity<>(headers), String.class);
+		assertThat(conditional.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+		assertThat(conditional.getBody()).isNull();
+
+		// Lo mismo para la lista
+		response = restTemplate.withBasicAuth("sarah1", "abc123").getForEntity("/cashcards", String.class);
+		headers = new HttpHeaders();
+		headers.setIfNoneMatch(response.getHeaders().getETag());
+		conditional = restTemplate.withBasicAuth("sarah1", "abc123")
+				.exchange("/cashcards", HttpMethod.GET, new HttpEntity<>(headers), String.class);
+		assertThat(conditional.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldOnlyUpdateWhenIfMatchHasTheCurrentVersion() {
+		HttpHeaders headers = new HttpHeaders();
+		headers.setIfMatch("\"5\"");
+		ResponseEntity<Void> response = restTemplate.withBasicAuth("sarah1", "abc123")
+				.exchange("/cashcards/99", HttpMethod.PUT, new HttpEntity<>(new CashCard(null, 1999, null), headers), Void.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.PRECONDITION_FAILED);
+
+		headers.setIfMatch("\"0\"");
+		response = restTemplate.withBasicAuth("sarah1", "abc123")
+				.exchange("/cashcards/99", HttpMethod.PUT, new HttpEntity<>(new CashCard(null, 1999, null), headers), Void.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT);
+		assertThat(response.getHeaders().getETag()).isEqualTo("\"1\"");
+
+		// El ETag antiguo ya no vale
+		response = restTemplate.withBasicAuth("sarah1", "abc123")
+				.exchange("/cashcards/99", HttpMethod.PUT, new HttpEntity<>(new CashCard(null, 2999, null), headers), Void.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.PRECONDITION_FAILED);
+
+		response = restTemplate.withBasicAuth("sarah1", "abc123")
+				.exchange("/cashcards/999", HttpMethod.PUT, new HttpEntity<>(new CashCard(null, 2999, null), headers), Void.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldKeepTheOwnerSummaryInSyncWithWrites() {
+		assertSummary(3, 274.45, 1.00, 150.00);
+
+		restTemplate.withBasicAuth("sarah1", "abc123")
+				.postForEntity("/cashcards", new CashCard(null, 50000, null), Void.class);
+		assertSummary(4, 774.45, 1.00, 500.00);
+
+		// Modificamos el minimo hacia arriba, hay que recalcularlo
+		restTemplate.withBasicAuth("sarah1", "abc123")
+				.exchange("/cashcards/100", HttpMethod.PUT, new HttpEntity<>(new CashCard(null, 20000, null)), Void.class);
+		assertSummary(4, 973.45, 123.45, 500.00);
+
+		restTemplate.withBasicAuth("sarah1", "abc123")
+				.exchange("/cashcards/99", HttpMethod.DELETE, null, Void.class);
+		assertSummary(3, 850.00, 150.00, 500.00);
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldRebuildTheOwnerSummaryFromTheCashCards() {
+		jdbcTemplate.update("UPDATE cash_card_owner_summary SET card_count = 42, total_amount = 0 WHERE owner = 'sarah1'");
+
+		// Solo se recalcula el resumen que se ha desviado
+		int owners = summaryReconciler.rebuild();
+
+		assertThat(owners).isEqualTo(1);
+		assertSummary(3, 274.45, 1.00, 150.00);
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldListTheChangesOfTheOwnerSinceTheLastSeenSequence() {
+		restTemplate.withBasicAuth("sarah1", "abc123")
+				.postForEntity("/cashcards", new CashCard(null, 50000, null), Void.class);
+		restTemplate.withBasicAuth("sarah1", "abc123")
+				.exchange("/cashcards/100", HttpMethod.PUT, new HttpEntity<>(new CashCard(null, 20000, null)), Void.class);
+		restTemplate.withBasicAuth("sarah1", "abc123")
+				.exchange("/cashcards/99", HttpMethod.DELETE, null, Void.class);
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_JSON);
+		restTemplate.withBasicAuth("sarah1", "abc123").postForEntity("/cashcards/batch",
+				new HttpEntity<>("[{\"op\":\"update\",\"id\":101,\"amount\":1.5},{\"op\":\"delete\",\"id\":102}]", headers),
+				String.class);
+
+		ResponseEntity<String> response = restTemplate.withBasicAuth("sarah1", "abc123")
+				.getForEntity("/cashcards/changes?since=0", String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		DocumentContext documentContext = JsonPath.parse(response.getBody());
+		// El delete de la tarjeta de kumar2 no cambia nada y no deja rastro
+		JSONArray operations = documentContext.read("$[*].operation");
+		assertThat(operations).containsExactly("CREATE", "UPDATE", "DELETE", "UPDATE");
+		JSONArray ids = documentContext.read("$[1:].id");
+		assertThat(ids).containsExactly(100, 99, 101);
+		JSONArray amounts = documentContext.read("$[*].amount");
+		assertThat(amounts).containsExactly(500.00, 200.00, null, 1.5);
+		JSONArray versions = documentContext.read("$[*].version");
+		assertThat(versions).containsExactly(0, 1, null, 1);
+
+		// Desde el ultimo seq ya no hay nada nuevo, y kumar2 no ve los cambios de sarah1
+		Number lastSeq = documentContext.read("$[3].position");
+		response = restTemplate.withBasicAuth("sarah1", "abc123")
+				.getForEntity("/cashcards/changes?since=" + lastSeq, String.class);
+		assertThat(JsonPath.parse(response.getBody()).read("$.length()", Integer.class)).isZero();
+		response = restTemplate.withBasicAuth("kumar2", "xyz789")
+				.getForEntity("/cashcards/changes", String.class);
+		assertThat(JsonPath.parse(response.getBody()).read("$.length()", Integer.class)).isZero();
+
+		response = restTemplate.withBasicAuth("sarah1", "abc123")
+				.getForEntity("/cashcards/changes?size=0", String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldNotSkipAChangeCommittedAfterALaterOne() throws Exception {
+		CountDownLatch firstRecorded = new CountDownLatch(1);
+		CountDownLatch releaseFirst = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			// La primera transacción apunta su cambio y se queda sin confirmar
+			Future<?> first = executor.submit(() -> transactionTemplate.executeWithoutResult(status -> {
+				changeLog.record(CashCardChange.Operation.UPDATE, 99L, "sarah1", 1L, 1L);
+				firstRecorded.countDown();
+				await(releaseFirst);
+			}));
+			await(firstRecorded);
+			// La segunda, del mismo propietario, no puede confirmarse antes que la primera
+			Future<?> second = executor.submit(() -> transactionTemplate.executeWithoutResult(
+					status -> changeLog.record(CashCardChange.Operation.UPDATE, 100L, "sarah1", 2L, 1L)));
+			assertThatThrownBy(() -> second.get(300, TimeUnit.MILLISECONDS)).isInstanceOf(TimeoutException.class);
+			// Un cliente que lee ahora no ve nada, en vez de ver solo el segundo y saltarse el primero
+			assertThat(changeLog.findByOwnerSince("sarah1", 0, 10)).isEmpty();
+
+			releaseFirst.countDown();
+			first.get();
+			second.get();
+		} finally {
+			executor.shutdownNow();
+		}
+		List<CashCardChange> changes = changeLog.findByOwnerSince("sarah1", 0, 10);
+		assertThat(changes).extracting(CashCardChange::id).containsExactly(99L, 100L);
+		assertThat(changeLog.findByOwnerSince("sarah1", changes.get(0).position(), 10))
+				.extracting(CashCardChange::id).containsExactly(100L);
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldPublishEveryPendingChange() {
+		restTemplate.withBasicAuth("sarah1", "abc123")
+				.postForEntity("/cashcards", new CashCard(null, 50000, null), Void.class);
+		restTemplate.withBasicAuth("sarah1", "abc123")
+				.exchange("/cashcards/99", HttpMethod.DELETE, null, Void.class);
+
+		changePublisher.publishPending();
+
+		assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM cash_card_change", Integer.class)).isEqualTo(2);
+		assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM cash_card_change WHERE published = FALSE",
+				Integer.class)).isZero();
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldAddAndDisableUsersWithoutARestart() {
+		assertThat(restTemplate.withBasicAuth("maria3", "pqr111").getForEntity("/cashcards", String.class)
+				.getStatusCode()).isEqualTo(HttpStatus.UNAUTHORIZED);
+
+		cashCardUsers.create("maria3", "pqr111", "CARD-OWNER");
+		ResponseEntity<String> response = restTemplate.withBasicAuth("maria3", "pqr111")
+				.getForEntity("/cashcards", String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(JsonPath.parse(response.getBody()).read("$.length()", Integer.class)).isZero();
+
+		// El usuario está en la cache tras la primera petición, deshabilitarlo la vacia
+		cashCardUsers.setEnabled("maria3", false);
+		assertThat(restTemplate.withBasicAuth("maria3", "pqr111").getForEntity("/cashcards", String.class)
+				.getStatusCode()).isEqualTo(HttpStatus.UNAUTHORIZED);
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldManageUsersThroughTheAdminEndpoint() {
+		Map<String, Object> newUser = Map.of("password", "pqr111", "roles", "CARD-OWNER");
+		assertThat(restTemplate.withBasicAuth("sarah1", "abc123").postForEntity("/actuator/users/maria3", newUser,
+				Void.class).getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
+
+		cashCardUsers.create("root", "adm111", "ADMIN");
+		TestRestTemplate admin = restTemplate.withBasicAuth("root", "adm111");
+		assertThat(admin.postForEntity("/actuator/users/maria3", newUser, Void.class).getStatusCode())
+				.isEqualTo(HttpStatus.CREATED);
+		assertThat(admin.postForEntity("/actuator/users/maria3", newUser, Void.class).getStatusCode())
+				.isEqualTo(HttpStatus.CONFLICT);
+		assertThat(restTemplate.withBasicAuth("maria3", "pqr111").getForEntity("/cashcards", String.class)
+				.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+		assertThat(admin.postForEntity("/actuator/users/maria3", Map.of("enabled", false), Void.class)
+				.getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT);
+		assertThat(restTemplate.withBasicAuth("maria3", "pqr111").getForEntity("/cashcards", String.class)
+				.getStatusCode()).isEqualTo(HttpStatus.UNAUTHORIZED);
+
+		assertThat(admin.exchange("/actuator/users/maria3", HttpMethod.DELETE, null, Void.class).getStatusCode())
+				.isEqualTo(HttpStatus.NO_CONTENT);
+		assertThat(cashCardUsers.exists("maria3")).isFalse();
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldCreditAndDebitTheBalanceAtomically() {
+		ResponseEntity<String> response = patchBalance("sarah1", "abc123", 99, "10.00");
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(response.getHeaders().getETag()).isEqualTo("\"1\"");
+		Double amount = JsonPath.parse(response.getBody()).read("$.amount");
+		assertThat(amount).isEqualTo(133.45);
+
+		// El saldo nunca queda negativo, y las tarjetas ajenas o inexistentes son 404
+		assertThat(patchBalance("sarah1", "abc123", 99, "-133.46").getStatusCode()).isEqualTo(HttpStatus.CONFLICT);
+		assertThat(patchBalance("sarah1", "abc123", 102, "1.00").getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+		assertThat(patchBalance("sarah1", "abc123", 1000, "1.00").getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+
+		response = patchBalance("sarah1", "abc123", 99, "-133.45");
+		amount = JsonPath.parse(response.getBody()).read("$.amount");
+		assertThat(amount).isEqualTo(0.0);
+		assertSummary(3, 151.00, 0.00, 150.00);
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldNotLoseConcurrentBalanceDeltas() throws Exception {
+		int requests = 20;
+		ExecutorService executor = Executors.newFixedThreadPool(requests);
+		try {
+			List<Future<ResponseEntity<String>>> responses = new ArrayList<>();
+			for (int i = 0; i < requests; i++) {
+				responses.add(executor.submit(() -> patchBalance("sarah1", "abc123", 100, "1.00")));
+			}
+			for (Future<ResponseEntity<String>> response : responses) {
+				assertThat(response.get().getStatusCode()).isEqualTo(HttpStatus.OK);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		ResponseEntity<String> response = restTemplate.withBasicAuth("sarah1", "abc123")
+				.getForEntity("/cashcards/100", String.class);
+		Double amount = JsonPath.parse(response.getBody()).read("$.amount");
+		assertThat(amount).isEqualTo(21.00);
+		assertThat(response.getHeaders().getETag()).isEqualTo("\"" + requests + "\"");
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldApplyCoalescedDeltasInArrivalOrderWithOneWrite() {
+		List<CashCardWriteService.BalanceResult> results = writeService.addAllToBalance(100L, "sarah1",
+				List.of(500L, -700L, 200L));
+
+		assertThat(results).extracting(CashCardWriteService.BalanceResult::status).containsExactly(
+				CashCardWriteService.BalanceStatus.APPLIED, CashCardWriteService.BalanceStatus.INSUFFICIENT_FUNDS,
+				CashCardWriteService.BalanceStatus.APPLIED);
+		assertThat(results.get(2).cashCard()).isEqualTo(new CashCard(100L, 800, "sarah1", 2L));
+
+		// Si el saldo cubre todos los deltas se aplican con un solo UPDATE
+		results = writeService.addAllToBalance(100L, "sarah1", List.of(100L, -300L));
+		assertThat(results).extracting(CashCardWriteService.BalanceResult::cashCard).containsExactly(
+				new CashCard(100L, 900, "sarah1", 3L), new CashCard(100L, 600, "sarah1", 4L));
+		results = writeService.addAllToBalance(100L, "sarah1", List.of(100L, -300L));
+		assertThat(results.get(1).cashCard()).isEqualTo(new CashCard(100L, 400, "sarah1", 6L));
+
+		ResponseEntity<String> response = restTemplate.withBasicAuth("sarah1", "abc123")
+				.getForEntity("/cashcards/100", String.class);
+		Double amount = JsonPath.parse(response.getBody()).read("$.amount");
+		assertThat(amount).isEqualTo(4.00);
+		assertThat(response.getHeaders().getETag()).isEqualTo("\"6\"");
+	}
+
+	private ResponseEntity<String> patchBalance(String username, String password, long id, String delta) {
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_JSON);
+		return restTemplate.withBasicAuth(username, password).exchange("/cashcards/" + id + "/balance",
+				HttpMethod.PATCH, new HttpEntity<>("{\"delta\": " + delta + "}", headers), String.class);
+	}
+
+	private void assertSummary(int cardCount, double totalAmount, double minAmount, double maxAmount) {
+		ResponseEntity<String> response = restTemplate.withBasicAuth("sarah1", "abc123")
+				.getForEntity("/cashcards/summary", String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+		DocumentContext documentContext = JsonPath.parse(response.getBody());
+		Number count = documentContext.read("$.cardCount");
+		assertThat(count).isEqualTo(cardCount);
+		Double total = documentContext.read("$.totalAmount");
+		assertThat(total).isEqualTo(totalAmount);
+		Double min = documentContext.read("$.minAmount");
+		assertThat(min).isEqualTo(minAmount);
+		Double max = documentContext.read("$.maxAmount");
+		assertThat(max).isEqualTo(maxAmount);
+	}
+
 	@Test
 	void shouldNotReturnACashCardWhenUsingBadCredentials(){
 		ResponseEntity<String> response = restTemplate.
@@ -200,7 +907,7 @@ class CashcardApplicationTests {
 		 * que requiere que el verbo y el request entity(body entity) sean pasado como
 		 * parametros.
 		 */
-		CashCard cashCardUpdate = new CashCard(null, 19.99, null);
+		CashCard cashCardUpdate = new CashCard(null, 1999, null);
 		HttpEntity<CashCard> request = new HttpEntity<>(cashCardUpdate);
 		ResponseEntity<Void> response = restTemplate.withBasicAuth("sarah1", "abc123")
 		.exchange("/cashcards/99", HttpMethod.PUT, request, Void.class);
@@ -223,7 +930,7 @@ class CashcardApplicationTests {
 
 	@Test
 	void shouldNotUpadeACashcardThatDoesNotExist(){
-		CashCard unknownCard = new CashCard(null, 19.99, null);
+		CashCard unknownCard = new CashCard(null, 1999, null);
 		HttpEntity<CashCard> request = new HttpEntity<>(unknownCard);
 		ResponseEntity<Void> response= restTemplate
 			.withBasicAuth("sarah1", "abc123")
@@ -234,7 +941,7 @@ class CashcardApplicationTests {
 
 	@Test
 	void shouldNotUpadteACashCardThatIsOwnedBySomeoneElse(){
-		CashCard kumarCard = new CashCard(null, 333.33, null);
+		CashCard kumarCard = new CashCard(null, 33333, null);
 		HttpEntity<CashCard> request = new HttpEntity<CashCard>(kumarCard);
 		ResponseEntity<Void> response = restTemplate
 			.withBasicAuth("sarah1", "abc123")
@@ -0,0 +1,50 @@
+package com.example.cashcard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Reparto de propietarios del anillo de hash consistente y cuantos se mueven al añadir un shard
+ */
+class ConsistentHashRingTest {
+
+    private static final int OWNERS = 20_000;
+
+    @Test
+    void shouldSpreadOwnersEvenlyOverTheShards() {
+        ConsistentHashRing ring = new ConsistentHashRing(List.of(0, 1, 2, 3), 128);
+        int[] counts = new int[4];
+        for (int i = 0; i < OWNERS; i++) {
+            counts[ring.shardFor("user" + i)]++;
+        }
+        for (int count : counts) {
+            assertThat(count).isBetween(OWNERS / 4 * 7 / 10, OWNERS / 4 * 13 / 10);
+        }
+    }
+
+    @Test
+    void shouldOnlyMoveOwnersToTheNewShard() {
+        ConsistentHashRing before = new ConsistentHashRing(List.of(0, 1, 2), 128);
+        ConsistentHashRing after = new ConsistentHashRing(List.of(0, 1, 2, 3), 128);
+        int moved = 0;
+        for (int i = 0; i < OWNERS; i++) {
+            String owner = "user" + i;
+            if (before.shardFor(owner) != after.shardFor(owner)) {
+                assertThat(after.shardFor(owner)).isEqualTo(3);
+                moved++;
+            }
+        }
+        // Lo ideal es 1/4 de los propietarios
+        assertThat(moved).isBetween(OWNERS * 15 / 100, OWNERS * 35 / 100);
+    }
+
+    @Test
+    void shouldGiveTheSameShardForTheSameOwner() {
+        ConsistentHashRing ring = new ConsistentHashRing(List.of(2, 0, 1), 128);
+        ConsistentHashRing same = new ConsistentHashRing(List.of(0, 1, 2), 128);
+        assertThat(ring.shardFor("sarah1")).isEqualTo(same.shardFor("sarah1"));
+    }
+}
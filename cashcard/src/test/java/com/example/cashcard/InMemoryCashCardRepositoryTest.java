@@ -0,0 +1,110 @@
+package com.example.cashcard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+
+class InMemoryCashCardRepositoryTest {
+
+    private static final Supplier<List<CashCard>> NO_INITIAL_CARDS = List::of;
+
+    @TempDir
+    Path dataDir;
+
+    private final List<InMemoryCashCardRepository> opened = new ArrayList<>();
+
+    @AfterEach
+    void closeAll() throws Exception {
+        for (InMemoryCashCardRepository repository : opened) {
+            repository.destroy();
+        }
+    }
+
+    @Test
+    void recoversEveryWriteFromTheWriteAheadLogAfterARestart() throws Exception {
+        InMemoryCashCardRepository repository = open(1 << 16, NO_INITIAL_CARDS);
+        Long first = repository.save(new CashCard(null, 1000, "sarah1")).id();
+        Long second = repository.save(new CashCard(null, 2000, "sarah1")).id();
+        Long third = repository.save(new CashCard(null, 3000, "kumar2")).id();
+        repository.updateAmountReturningPrevious(first, "sarah1", 5000, null);
+        repository.deleteReturningPrevious(third, "kumar2");
+        repository.destroy();
+        opened.remove(repository);
+
+        InMemoryCashCardRepository reopened = open(1 << 16, NO_INITIAL_CARDS);
+        assertThat(reopened.findByIdAndOwner(first, "sarah1")).isEqualTo(new CashCard(first, 5000, "sarah1", 1L));
+        assertThat(reopened.findByIdAndOwner(second, "sarah1")).isEqualTo(new CashCard(second, 2000, "sarah1", 0L));
+        assertThat(reopened.findByIdAndOwner(third, "kumar2")).isNull();
+        assertThat(reopened.summary("sarah1")).isEqualTo(new CashCardSummary("sarah1", 2, 7000, 2000L, 5000L));
+        // Los ids nuevos siguen despues de los ya usados
+        assertThat(reopened.save(new CashCard(null, 1, "kumar2")).id()).isGreaterThan(third);
+    }
+
+    @Test
+    void takesASnapshotWhenTheLogIsFullAndRecoversFromIt() throws Exception {
+        // Caben muy pocos registros, asi se escriben varios snapshots
+        InMemoryCashCardRepository repository = open(256, NO_INITIAL_CARDS);
+        for (int i = 0; i < 100; i++) {
+            Long id = repository.save(new CashCard(null, i, "sarah1")).id();
+            if (i % 2 == 0) {
+                repository.deleteReturningPrevious(id, "sarah1");
+            }
+        }
+        assertThat(Files.exists(dataDir.resolve("cashcards.snapshot"))).isTrue();
+        repository.destroy();
+        opened.remove(repository);
+
+        InMemoryCashCardRepository reopened = open(256, NO_INITIAL_CARDS);
+        assertThat(reopened.count()).isEqualTo(50);
+        assertThat(reopened.summary("sarah1")).isEqualTo(new CashCardSummary("sarah1", 50, 2500, 1L, 99L));
+    }
+
+    @Test
+    void importsTheInitialCardsOnlyOnTheFirstStart() throws Exception {
+        Supplier<List<CashCard>> initialCards = () -> List.of(new CashCard(99L, 12345, "sarah1", 0L));
+        InMemoryCashCardRepository repository = open(1 << 16, initialCards);
+        repository.deleteReturningPrevious(99L, "sarah1");
+        repository.destroy();
+        opened.remove(repository);
+
+        assertThat(open(1 << 16, initialCards).count()).isZero();
+    }
+
+    @Test
+    void pagesByAmountUsingTheOwnerIndex() {
+        InMemoryCashCardRepository repository = open(1 << 16, NO_INITIAL_CARDS);
+        for (long amount : new long[] { 300, 100, 200, 100, 500 }) {
+            repository.save(new CashCard(null, amount, "sarah1"));
+        }
+        repository.save(new CashCard(null, 1, "kumar2"));
+
+        Page<CashCard> page = repository.findByOwner("sarah1", PageRequest.of(0, 2, Sort.by(Sort.Direction.DESC, "amount")));
+        assertThat(page.getTotalElements()).isEqualTo(5);
+        assertThat(page.getContent()).extracting(CashCard::amount).containsExactly(500L, 300L);
+
+        List<CashCard> firstSlice = repository.findSliceByOwner("sarah1", null, 3).getContent();
+        assertThat(firstSlice).extracting(CashCard::amount).containsExactly(100L, 100L, 200L);
+        List<CashCard> rest = repository.findSliceByOwner("sarah1", CashCardCursor.of(firstSlice.get(2)), 3).getContent();
+        assertThat(rest).extracting(CashCard::amount).containsExactly(300L, 500L);
+
+        Page<CashCard> byId = repository.findByOwner("sarah1", PageRequest.of(0, 5, Sort.by("id")));
+        assertThat(byId.getContent()).extracting(CashCard::amount).containsExactly(300L, 100L, 200L, 100L, 500L);
+    }
+
+    private InMemoryCashCardRepository open(int walSize, Supplier<List<CashCard>> initialCards) {
+        InMemoryCashCardRepository repository = new InMemoryCashCardRepository(dataDir, walSize, false, initialCards);
+        opened.add(repository);
+        return repository;
+    }
+}
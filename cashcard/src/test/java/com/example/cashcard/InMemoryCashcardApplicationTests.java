@@ -0,0 +1,30 @@
+package com.example.cashcard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * Los mismos tests de la API con el motor en memoria (perfil memory). Sin data-dir
+ * cada contexto usa un directorio temporal, asi que @DirtiesContext vuelve a partir
+ * de los datos de afterMigrate.sql igual que con JDBC
+ */
+@ActiveProfiles("memory")
+@TestPropertySource(properties = "cashcard.memory.data-dir=")
+class InMemoryCashcardApplicationTests extends CashcardApplicationTests {
+
+	/** El motor en memoria no es un repositorio de Spring Data, no hay spring.data.repository.invocations */
+	@Override
+	void assertRepositoryMetrics(String prometheusBody) {
+		assertThat(prometheusBody).doesNotContain("spring_data_repository_invocations");
+	}
+
+	@Test
+	@Disabled("El resumen sale del indice del motor en memoria, no hay tabla que reconstruir")
+	@Override
+	void shouldRebuildTheOwnerSummaryFromTheCashCards() {
+	}
+}
@@ -0,0 +1,51 @@
+package com.example.cashcard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * Control de admisión de /cashcards (CashCardAdmissionFilter) con un limite muy bajo:
+ * una petición por minuto por propietario y ráfagas de dos
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@AutoConfigureObservability(tracing = false)
+@TestPropertySource(properties = {
+		"cashcard.ratelimit.owner-rate=0.0167",
+		"cashcard.ratelimit.owner-burst=2" })
+class RateLimitingApplicationTests {
+
+	@Autowired
+	TestRestTemplate restTemplate;
+
+	@Test
+	void shouldRejectAnOwnerOverItsRateWith429AndRetryAfter() {
+		TestRestTemplate sarah = restTemplate.withBasicAuth("sarah1", "abc123");
+		assertThat(sarah.getForEntity("/cashcards/99", String.class).getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(sarah.getForEntity("/cashcards/100", String.class).getStatusCode()).isEqualTo(HttpStatus.OK);
+
+		ResponseEntity<String> rejected = sarah.getForEntity("/cashcards/99", String.class);
+		assertThat(rejected.getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+		long retryAfter = Long.parseLong(rejected.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+		assertThat(retryAfter).isBetween(1L, 60L);
+
+		// El limite es de sarah1, kumar2 sigue entrando
+		ResponseEntity<String> other = restTemplate.withBasicAuth("kumar2", "xyz789")
+				.getForEntity("/cashcards/102", String.class);
+		assertThat(other.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+		// Fuera de /cashcards no hay limite
+		ResponseEntity<String> metrics = sarah.getForEntity("/actuator/prometheus", String.class);
+		assertThat(metrics.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(metrics.getBody()).containsPattern("cashcard_ratelimit_rejected_total\\{.*reason=\"rate\".*} 1.0");
+		assertThat(metrics.getBody()).contains("cashcard_ratelimit_in_flight");
+	}
+}
@@ -0,0 +1,180 @@
+package com.example.cashcard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.net.URI;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+/**
+ * La variante WebFlux + R2DBC (perfil reactive) tiene que cumplir el mismo contrato
+ * que la servlet. Cada test trabaja con sus propias tarjetas o solo lee, para poder
+ * compartir el contexto sin @DirtiesContext
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("reactive")
+class ReactiveCashCardApplicationTests {
+
+	/** Base de datos propia para no chocar con la de otros contextos de test */
+	private static final String DB_NAME = "reactive-" + UUID.randomUUID();
+
+	@DynamicPropertySource
+	static void database(DynamicPropertyRegistry registry) {
+		registry.add("spring.datasource.url", () -> "jdbc:h2:mem:" + DB_NAME + ";DB_CLOSE_DELAY=-1");
+		registry.add("cashcard.reactive.r2dbc-url", () -> "r2dbc:pool:h2:mem:///" + DB_NAME + "?options=DB_CLOSE_DELAY=-1");
+	}
+
+	@Autowired
+	WebTestClient webTestClient;
+
+	@Test
+	void shouldReturnACashCardWhenDataIsSaved() {
+		webTestClient.get().uri("/cashcards/99")
+				.headers(headers -> headers.setBasicAuth("sarah1", "abc123"))
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().valueEquals(HttpHeaders.ETAG, "\"0\"")
+				.expectBody()
+				.jsonPath("$.id").isEqualTo(99)
+				.jsonPath("$.amount").isEqualTo(123.45)
+				.jsonPath("$.owner").isEqualTo("sarah1");
+	}
+
+	@Test
+	void shouldNotReturnCardsOfOtherOwnersOrToNonOwners() {
+		webTestClient.get().uri("/cashcards/102")
+				.headers(headers -> headers.setBasicAuth("sarah1", "abc123"))
+				.exchange()
+				.expectStatus().isNotFound();
+		webTestClient.get().uri("/cashcards/99")
+				.headers(headers -> headers.setBasicAuth("hank-owns-no-cards", "qrs456"))
+				.exchange()
+				.expectStatus().isForbidden();
+		webTestClient.get().uri("/cashcards/99")
+				.headers(headers -> headers.setBasicAuth("sarah1", "BAD-PASSWORD"))
+				.exchange()
+				.expectStatus().isUnauthorized();
+	}
+
+	@Test
+	void shouldReturnASortedPageOfCashCards() {
+		webTestClient.get().uri("/cashcards?page=0&size=1&sort=amount,desc")
+				.headers(headers -> headers.setBasicAuth("kumar2", "xyz789"))
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.length()").isEqualTo(1)
+				.jsonPath("$[0].amount").isEqualTo(200.00);
+	}
+
+	@Test
+	void shouldCreateUpdateAndDeleteACashCardKeepingTheSummaryInSync() {
+		URI location = webTestClient.post().uri("/cashcards")
+				.headers(headers -> headers.setBasicAuth("kumar2", "xyz789"))
+				.contentType(MediaType.APPLICATION_JSON)
+				.bodyValue("{\"amount\": 10.50}")
+				.exchange()
+				.expectStatus().isCreated()
+				.returnResult(Void.class)
+				.getResponseHeaders().getLocation();
+		assertThat(location).isNotNull();
+
+		webTestClient.put().uri(location.getPath())
+				.headers(headers -> headers.setBasicAuth("kumar2", "xyz789"))
+				.header(HttpHeaders.IF_MATCH, "\"0\"")
+				.contentType(MediaType.APPLICATION_JSON)
+				.bodyValue("{\"amount\": 20.25}")
+				.exchange()
+				.expectStatus().isNoContent()
+				.expectHeader().valueEquals(HttpHeaders.ETAG, "\"1\"");
+		webTestClient.put().uri(location.getPath())
+				.headers(headers -> headers.setBasicAuth("kumar2", "xyz789"))
+				.header(HttpHeaders.IF_MATCH, "\"0\"")
+				.contentType(MediaType.APPLICATION_JSON)
+				.bodyValue("{\"amount\": 1.00}")
+				.exchange()
+				.expectStatus().isEqualTo(412);
+
+		webTestClient.get().uri(location.getPath())
+				.headers(headers -> headers.setBasicAuth("kumar2", "xyz789"))
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody().jsonPath("$.amount").isEqualTo(20.25);
+		webTestClient.get().uri("/cashcards/summary")
+				.headers(headers -> headers.setBasicAuth("kumar2", "xyz789"))
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.cardCount").isEqualTo(2)
+				.jsonPath("$.totalAmount").isEqualTo(220.25);
+
+		webTestClient.delete().uri(location.getPath())
+				.headers(headers -> headers.setBasicAuth("kumar2", "xyz789"))
+				.exchange()
+				.expectStatus().isNoContent();
+		webTestClient.delete().uri(location.getPath())
+				.headers(headers -> headers.setBasicAuth("kumar2", "xyz789"))
+				.exchange()
+				.expectStatus().isNotFound();
+		webTestClient.get().uri("/cashcards/summary")
+				.headers(headers -> headers.setBasicAuth("kumar2", "xyz789"))
+				.exchange()
+				.expectBody()
+				.jsonPath("$.cardCount").isEqualTo(1)
+				.jsonPath("$.maxAmount").isEqualTo(200.00);
+	}
+
+	@Test
+	void shouldReplayACreateWithTheSameIdempotencyKey() {
+		String key = UUID.randomUUID().toString();
+		URI location = webTestClient.post().uri("/cashcards")
+				.headers(headers -> headers.setBasicAuth("sarah1", "abc123"))
+				.header(CashCardController.IDEMPOTENCY_KEY_HEADER, key)
+				.contentType(MediaType.APPLICATION_JSON)
+				.bodyValue("{\"amount\": 7.50}")
+				.exchange()
+				.expectStatus().isCreated()
+				.expectHeader().doesNotExist(CashCardController.IDEMPOTENT_REPLAYED_HEADER)
+				.returnResult(Void.class)
+				.getResponseHeaders().getLocation();
+		assertThat(location).isNotNull();
+
+		webTestClient.post().uri("/cashcards")
+				.headers(headers -> headers.setBasicAuth("sarah1", "abc123"))
+				.header(CashCardController.IDEMPOTENCY_KEY_HEADER, key)
+				.contentType(MediaType.APPLICATION_JSON)
+				.bodyValue("{\"amount\": 7.50}")
+				.exchange()
+				.expectStatus().isCreated()
+				.expectHeader().location(location.toString())
+				.expectHeader().valueEquals(CashCardController.IDEMPOTENT_REPLAYED_HEADER, "true");
+		webTestClient.post().uri("/cashcards")
+				.headers(headers -> headers.setBasicAuth("sarah1", "abc123"))
+				.header(CashCardController.IDEMPOTENCY_KEY_HEADER, key)
+				.contentType(MediaType.APPLICATION_JSON)
+				.bodyValue("{\"amount\": 8.00}")
+				.exchange()
+				.expectStatus().isEqualTo(422);
+		webTestClient.post().uri("/cashcards")
+				.headers(headers -> headers.setBasicAuth("sarah1", "abc123"))
+				.header(CashCardController.IDEMPOTENCY_KEY_HEADER, "k".repeat(CashCardIdempotency.MAX_KEY_LENGTH + 1))
+				.contentType(MediaType.APPLICATION_JSON)
+				.bodyValue("{\"amount\": 7.50}")
+				.exchange()
+				.expectStatus().isBadRequest();
+
+		webTestClient.delete().uri(location.getPath())
+				.headers(headers -> headers.setBasicAuth("sarah1", "abc123"))
+				.exchange()
+				.expectStatus().isNoContent();
+	}
+}
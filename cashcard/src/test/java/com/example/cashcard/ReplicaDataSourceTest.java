@@ -0,0 +1,115 @@
+package com.example.cashcard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Test unitario de la selección de réplica, contra tres H2 en memoria (primario y dos réplicas)
+ */
+class ReplicaDataSourceTest {
+
+    private final FlakyDataSource firstReplica = new FlakyDataSource(h2("replica-a"));
+    private ReplicaDataSource dataSource;
+
+    @AfterEach
+    void close() throws Exception {
+        ReplicaDataSource.unpin();
+        dataSource.close();
+    }
+
+    @Test
+    void shouldAlternateBetweenReplicasInRoundRobin() throws Exception {
+        dataSource = replicas(ReplicaDataSource.Selection.ROUND_ROBIN);
+        assertThat(List.of(database(), database(), database(), database()))
+                .containsExactly("replica-a", "replica-b", "replica-a", "replica-b");
+    }
+
+    @Test
+    void shouldPickTheReplicaWithFewerOpenConnections() throws Exception {
+        dataSource = replicas(ReplicaDataSource.Selection.LEAST_LOADED);
+        try (Connection busy = dataSource.getConnection()) {
+            String busyReplica = name(busy);
+            assertThat(List.of(database(), database(), database())).doesNotContain(busyReplica);
+        }
+    }
+
+    @Test
+    void shouldSkipAFailedReplicaUntilItPassesAHealthCheck() throws Exception {
+        dataSource = replicas(ReplicaDataSource.Selection.ROUND_ROBIN);
+        firstReplica.down = true;
+        assertThat(List.of(database(), database(), database())).containsOnly("replica-b");
+        assertThat(dataSource.isHealthy(0)).isFalse();
+
+        firstReplica.down = false;
+        dataSource.checkHealth();
+        assertThat(dataSource.isHealthy(0)).isTrue();
+        assertThat(List.of(database(), database())).containsExactlyInAnyOrder("replica-a", "replica-b");
+    }
+
+    @Test
+    void shouldReadFromThePrimaryWhenPinnedOrWhenNoReplicaIsHealthy() throws Exception {
+        dataSource = new ReplicaDataSource(h2("primary"), List.of(firstReplica), ReplicaDataSource.Selection.ROUND_ROBIN,
+                Duration.ofHours(1), new SimpleMeterRegistry());
+        ReplicaDataSource.pinToPrimary();
+        assertThat(database()).isEqualTo("primary");
+        ReplicaDataSource.unpin();
+        assertThat(database()).isEqualTo("replica-a");
+
+        firstReplica.down = true;
+        assertThat(database()).isEqualTo("primary");
+    }
+
+    private ReplicaDataSource replicas(ReplicaDataSource.Selection selection) {
+        return new ReplicaDataSource(h2("primary"), List.of(firstReplica, h2("replica-b")), selection,
+                Duration.ofHours(1), new SimpleMeterRegistry());
+    }
+
+    private String database() throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            return name(connection);
+        }
+    }
+
+    private static String name(Connection connection) throws SQLException {
+        return connection.getMetaData().getURL().substring("jdbc:h2:mem:".length());
+    }
+
+    private static JdbcDataSource h2(String name) {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+        dataSource.setUser("sa");
+        return dataSource;
+    }
+
+    /** Réplica que se puede tirar y levantar desde el test */
+    private static class FlakyDataSource extends DelegatingDataSource {
+
+        volatile boolean down;
+
+        FlakyDataSource(DataSource target) {
+            super(target);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            if (down) {
+                throw new SQLTransientConnectionException("Replica is down");
+            }
+            return super.getConnection();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.cashcard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+
+import com.jayway.jsonpath.JsonPath;
+
+/**
+ * Lecturas contra réplicas (ReplicaRoutingConfig) con dos H2 en memoria haciendo de
+ * réplicas. No replican nada: tienen su propia copia de la tarjeta 99 con otro importe
+ * (db/replica/replica.sql), asi se ve si la lectura salió del primario o de una réplica
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@TestPropertySource(properties = {
+		"cashcard.datasource.replicas[0].url=jdbc:h2:mem:replica-routing-1;DB_CLOSE_DELAY=-1;INIT=RUNSCRIPT FROM 'classpath:db/replica/replica.sql'",
+		"cashcard.datasource.replicas[1].url=jdbc:h2:mem:replica-routing-2;DB_CLOSE_DELAY=-1;INIT=RUNSCRIPT FROM 'classpath:db/replica/replica.sql'",
+		"cashcard.datasource.read-your-writes-window=10s" })
+class ReplicaRoutingApplicationTests {
+
+	@Autowired
+	TestRestTemplate restTemplate;
+
+	@Autowired
+	JdbcTemplate jdbcTemplate;
+
+	@Test
+	void shouldServeReadsFromTheReplicas() {
+		ResponseEntity<String> response = restTemplate.withBasicAuth("sarah1", "abc123")
+				.getForEntity("/cashcards?page=0&size=10", String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+		// En las réplicas sarah1 solo tiene la tarjeta 99, con 1.00
+		Double amount = JsonPath.parse(response.getBody()).read("$[0].amount");
+		assertThat(amount).isEqualTo(1.00);
+		assertThat(JsonPath.parse(response.getBody()).read("$.length()", Integer.class)).isEqualTo(1);
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldWriteToThePrimaryAndReadYourOwnWritesFromIt() {
+		ResponseEntity<Void> update = restTemplate.withBasicAuth("sarah1", "abc123")
+				.exchange("/cashcards/99", HttpMethod.PUT, new HttpEntity<>(new CashCard(null, 500, null)), Void.class);
+		assertThat(update.getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT);
+		assertThat(jdbcTemplate.queryForObject("SELECT amount FROM cash_card WHERE id = 99", Long.class)).isEqualTo(500);
+
+		// Dentro de la ventana sarah1 lee del primario, con sus tres tarjetas
+		ResponseEntity<String> response = restTemplate.withBasicAuth("sarah1", "abc123")
+				.getForEntity("/cashcards/99", String.class);
+		Double amount = JsonPath.parse(response.getBody()).read("$.amount");
+		assertThat(amount).isEqualTo(5.00);
+		response = restTemplate.withBasicAuth("sarah1", "abc123").getForEntity("/cashcards", String.class);
+		assertThat(JsonPath.parse(response.getBody()).read("$.length()", Integer.class)).isEqualTo(3);
+
+		// kumar2 no ha escrito nada y sigue leyendo de las réplicas, donde no está su tarjeta
+		response = restTemplate.withBasicAuth("kumar2", "xyz789").getForEntity("/cashcards/102", String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+	}
+}
@@ -0,0 +1,128 @@
+package com.example.cashcard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.net.URI;
+import java.sql.Timestamp;
+import java.time.Instant;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+
+import com.jayway.jsonpath.JsonPath;
+
+/**
+ * Sharding por propietario (ShardingConfig) con tres H2 en memoria: el de Spring Boot
+ * (shard 0, con los datos de prueba) y dos shards que entran vacios y se rebalancean al arrancar
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@TestPropertySource(properties = {
+		"cashcard.sharding.shards[0].url=jdbc:h2:mem:sharding-1;DB_CLOSE_DELAY=-1",
+		"cashcard.sharding.shards[1].url=jdbc:h2:mem:sharding-2;DB_CLOSE_DELAY=-1" })
+class ShardingApplicationTests {
+
+	@Autowired
+	TestRestTemplate restTemplate;
+
+	@Autowired
+	ShardRouter shardRouter;
+
+	@Autowired
+	CashCardShardRebalancer rebalancer;
+
+	@Test
+	void shouldMoveTheOwnersToTheirShardOnStartup() {
+		assertThat(shardRouter.activeShards()).containsExactlyInAnyOrder(0, 1, 2);
+		int shard = shardRouter.shardFor("sarah1");
+		for (int other : shardRouter.shardIds()) {
+			assertThat(countCards(other, "id IN (99, 100, 101) AND owner = 'sarah1'")).isEqualTo(other == shard ? 3 : 0);
+		}
+
+		ResponseEntity<String> response = restTemplate.withBasicAuth("sarah1", "abc123")
+				.getForEntity("/cashcards/99", String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		Double amount = JsonPath.parse(response.getBody()).read("$.amount");
+		assertThat(amount).isEqualTo(123.45);
+
+		response = restTemplate.withBasicAuth("sarah1", "abc123").getForEntity("/cashcards/summary", String.class);
+		assertThat(JsonPath.parse(response.getBody()).read("$.cardCount", Integer.class)).isEqualTo(3);
+	}
+
+	@Test
+	void shouldCreateCardsOnTheOwnersShardWithIdsOfThatShard() {
+		ResponseEntity<Void> created = restTemplate.withBasicAuth("kumar2", "xyz789")
+				.postForEntity("/cashcards", new CashCard(null, 2500, null), Void.class);
+		assertThat(created.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+
+		URI location = created.getHeaders().getLocation();
+		long id = Long.parseLong(location.getPath().substring(location.getPath().lastIndexOf('/') + 1));
+		int shard = shardRouter.shardFor("kumar2");
+		assertThat(id >> ShardRouter.ID_SHIFT).isEqualTo(shard);
+		assertThat(countCards(shard, "id = " + id)).isEqualTo(1);
+
+		ResponseEntity<String> response = restTemplate.withBasicAuth("kumar2", "xyz789")
+				.getForEntity(location, String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+	}
+
+	@Test
+	void shouldMoveOwnersLeftOnAnotherShard() {
+		int shard = shardRouter.shardFor("zoe");
+		int wrongShard = (shard + 1) % 3;
+		JdbcTemplate wrong = new JdbcTemplate(shardRouter.dataSource(wrongShard));
+		wrong.update("INSERT INTO cash_card (id, amount, owner) VALUES (5000, 700, 'zoe')");
+		wrong.update("INSERT INTO cash_card_owner_summary (owner, card_count, total_amount, min_amount, max_amount) "
+				+ "VALUES ('zoe', 1, 700, 700, 700)");
+		wrong.update("INSERT INTO cash_card_change (seq, position, card_id, owner, operation, amount, version, changed_at) "
+				+ "VALUES (5000, 5000, 5000, 'zoe', 'CREATE', 700, 0, ?)", Timestamp.from(Instant.now()));
+		wrong.update("INSERT INTO cash_card_change_position (owner, last_position) VALUES ('zoe', 5000)");
+
+		CashCardShardRebalancer.Report report = rebalancer.rebalance();
+
+		assertThat(report.ownersMoved()).isEqualTo(1);
+		assertThat(report.cardsMoved()).isEqualTo(1);
+		assertThat(countCards(wrongShard, "owner = 'zoe'")).isZero();
+		JdbcTemplate right = new JdbcTemplate(shardRouter.dataSource(shard));
+		assertThat(right.queryForObject("SELECT amount FROM cash_card WHERE id = 5000 AND owner = 'zoe'", Long.class))
+				.isEqualTo(700);
+		assertThat(right.queryForObject("SELECT total_amount FROM cash_card_owner_summary WHERE owner = 'zoe'",
+				Long.class)).isEqualTo(700);
+		assertThat(right.queryForObject("SELECT COUNT(*) FROM cash_card_change WHERE seq = 5000", Integer.class))
+				.isEqualTo(1);
+		assertThat(right.queryForObject("SELECT last_position FROM cash_card_change_position WHERE owner = 'zoe'",
+				Long.class)).isEqualTo(5000);
+	}
+
+	@Test
+	void shouldOnlyDeleteTheLeftoversOfAnOwnerAlreadyMoved() {
+		assertThat(shardRouter.isServing()).isTrue();
+		int shard = shardRouter.shardFor("ana");
+		int wrongShard = (shard + 1) % 3;
+		// Un rebalanceo anterior copió a ana a su shard y se cortó antes de borrarla del viejo
+		JdbcTemplate right = new JdbcTemplate(shardRouter.dataSource(shard));
+		right.update("INSERT INTO cash_card (id, amount, owner) VALUES (6000, 900, 'ana')");
+		new JdbcTemplate(shardRouter.dataSource(wrongShard))
+				.update("INSERT INTO cash_card (id, amount, owner) VALUES (6000, 100, 'ana')");
+		shardRouter.moved("ana", shard);
+		JdbcTemplate home = new JdbcTemplate(shardRouter.dataSource(0));
+		assertThat(home.queryForObject("SELECT shard_id FROM cash_card_owner_shard WHERE owner = 'ana'", Integer.class))
+				.isEqualTo(shard);
+
+		rebalancer.rebalance();
+
+		assertThat(countCards(wrongShard, "owner = 'ana'")).isZero();
+		assertThat(right.queryForObject("SELECT amount FROM cash_card WHERE id = 6000", Long.class)).isEqualTo(900);
+		assertThat(home.queryForObject("SELECT COUNT(*) FROM cash_card_owner_shard", Integer.class)).isZero();
+	}
+
+	private int countCards(int shard, String where) {
+		return new JdbcTemplate(shardRouter.dataSource(shard))
+				.queryForObject("SELECT COUNT(*) FROM cash_card WHERE " + where, Integer.class);
+	}
+}
@@ -0,0 +1,111 @@
+package com.example.cashcard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.oauth2.jwt.JwsHeader;
+import org.springframework.security.oauth2.jwt.JwtClaimsSet;
+import org.springframework.security.oauth2.jwt.JwtEncoder;
+import org.springframework.security.oauth2.jwt.JwtEncoderParameters;
+import org.springframework.test.context.TestPropertySource;
+
+import com.jayway.jsonpath.DocumentContext;
+import com.jayway.jsonpath.JsonPath;
+
+/**
+ * Modo token (TokenAuthConfig): se pide el token con Basic y despues se usa como Bearer
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@TestPropertySource(properties = {
+		"cashcard.auth.token.enabled=true",
+		"cashcard.auth.token.secret=c2VjcmV0LWtleS1mb3ItdGhlLWNhc2hjYXJkLXRva2VuLXRlc3RzLTEyMzQ=",
+		"cashcard.auth.token.ttl=5m" })
+class TokenAuthenticationApplicationTests {
+
+	@Autowired
+	TestRestTemplate restTemplate;
+
+	@Autowired
+	JwtEncoder jwtEncoder;
+
+	@Test
+	void shouldExchangeBasicCredentialsForABearerToken() {
+		ResponseEntity<String> response = restTemplate.withBasicAuth("sarah1", "abc123")
+				.postForEntity("/auth/token", null, String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+		DocumentContext documentContext = JsonPath.parse(response.getBody());
+		String tokenType = documentContext.read("$.token_type");
+		assertThat(tokenType).isEqualTo("Bearer");
+		Number expiresIn = documentContext.read("$.expires_in");
+		assertThat(expiresIn).isEqualTo(300);
+
+		response = getWithToken("/cashcards/99", documentContext.read("$.access_token"));
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		Number id = JsonPath.parse(response.getBody()).read("$.id");
+		assertThat(id).isEqualTo(99);
+	}
+
+	@Test
+	void shouldStillEnforceOwnershipAndRolesWithTokens() {
+		String kumarToken = token("kumar2", "xyz789");
+		assertThat(getWithToken("/cashcards/99", kumarToken).getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+
+		String hankToken = token("hank-owns-no-cards", "qrs456");
+		assertThat(getWithToken("/cashcards/99", hankToken).getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
+	}
+
+	@Test
+	void shouldRejectTamperedAndExpiredTokens() {
+		String token = token("sarah1", "abc123");
+		String tampered = token.substring(0, token.length() - 2) + (token.endsWith("AA") ? "BB" : "AA");
+		assertThat(getWithToken("/cashcards/99", tampered).getStatusCode()).isEqualTo(HttpStatus.UNAUTHORIZED);
+
+		Instant past = Instant.now().minusSeconds(3600);
+		JwtClaimsSet claims = JwtClaimsSet.builder()
+				.subject("sarah1")
+				.issuedAt(past)
+				.expiresAt(past.plusSeconds(60))
+				.claim(TokenController.ROLES_CLAIM, List.of("ROLE_CARD-OWNER"))
+				.build();
+		String expired = jwtEncoder
+				.encode(JwtEncoderParameters.from(JwsHeader.with(TokenAuthConfig.ALGORITHM).build(), claims))
+				.getTokenValue();
+		assertThat(getWithToken("/cashcards/99", expired).getStatusCode()).isEqualTo(HttpStatus.UNAUTHORIZED);
+	}
+
+	@Test
+	void shouldNotIssueATokenForATokenOrBadCredentials() {
+		HttpHeaders headers = new HttpHeaders();
+		headers.setBearerAuth(token("sarah1", "abc123"));
+		ResponseEntity<String> response = restTemplate.exchange("/auth/token", HttpMethod.POST,
+				new HttpEntity<>(headers), String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
+
+		response = restTemplate.withBasicAuth("sarah1", "BAD-PASSWORD").postForEntity("/auth/token", null, String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.UNAUTHORIZED);
+	}
+
+	private String token(String username, String password) {
+		ResponseEntity<String> response = restTemplate.withBasicAuth(username, password)
+				.postForEntity("/auth/token", null, String.class);
+		return JsonPath.parse(response.getBody()).read("$.access_token");
+	}
+
+	private ResponseEntity<String> getWithToken(String url, String token) {
+		HttpHeaders headers = new HttpHeaders();
+		headers.setBearerAuth(token);
+		return restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<>(headers), String.class);
+	}
+}
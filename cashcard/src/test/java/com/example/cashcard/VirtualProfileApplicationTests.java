@@ -0,0 +1,56 @@
+package com.example.cashcard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.ActiveProfiles;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * La aplicación con el perfil virtual: el DataSource de Spring Boot queda envuelto en
+ * BoundedDataSource (en Java 17 los hilos siguen siendo los de Tomcat)
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("virtual")
+class VirtualProfileApplicationTests {
+
+	@Autowired
+	TestRestTemplate restTemplate;
+
+	@Autowired
+	DataSource dataSource;
+
+	@Autowired
+	MeterRegistry meterRegistry;
+
+	@Test
+	void shouldBoundOnlyThePrimaryDataSource() {
+		assertThat(dataSource).isInstanceOf(BoundedDataSource.class);
+		assertThat(restTemplate.withBasicAuth("sarah1", "abc123").getForEntity("/cashcards/99", String.class)
+				.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+		assertThat(meterRegistry.find("cashcard.datasource.permits.available").gauges()).hasSize(1);
+		assertThat(meterRegistry.get("cashcard.datasource.permits.available").tag("name", "dataSource").gauge().value())
+				.isEqualTo(40);
+		assertThat(((BoundedDataSource) dataSource).availablePermits()).isEqualTo(40);
+		// Las métricas de Hikari siguen llegando al pool por getTargetDataSource
+		assertThat(meterRegistry.find("hikaricp.connections.max").gauge().value()).isEqualTo(20);
+	}
+
+	@Test
+	void shouldNotHandOutThePoolBehindThePermits() {
+		assertThatThrownBy(() -> dataSource.unwrap(HikariDataSource.class)).isInstanceOf(SQLException.class);
+	}
+}
@@ -0,0 +1,22 @@
+-- Callback de Flyway: datos de prueba que se cargan despues de aplicar las migraciones
+-- AMOUNT va en céntimos
+INSERT INTO CASH_CARD(ID, AMOUNT, OWNER) VALUES (99, 12345, 'sarah1');
+INSERT INTO CASH_CARD(ID, AMOUNT, OWNER) VALUES (100, 100, 'sarah1');
+INSERT INTO CASH_CARD(ID, AMOUNT, OWNER) VALUES (101, 15000, 'sarah1');
+INSERT INTO CASH_CARD(ID, AMOUNT, OWNER) VALUES (102, 20000, 'kumar2');
+-- Las tarjetas de prueba llevan id explicito y eso no mueve el contador de la identidad
+-- que crea V1: sin esto la primera alta de los tests chocaria con el id 99
+ALTER TABLE CASH_CARD ALTER COLUMN ID RESTART WITH 1000;
+
+-- El resumen por propietario se calcula a partir de las tarjetas de prueba
+DELETE FROM CASH_CARD_OWNER_SUMMARY;
+INSERT INTO CASH_CARD_OWNER_SUMMARY(OWNER, CARD_COUNT, TOTAL_AMOUNT, MIN_AMOUNT, MAX_AMOUNT)
+SELECT OWNER, COUNT(*), SUM(AMOUNT), MIN(AMOUNT), MAX(AMOUNT) FROM CASH_CARD GROUP BY OWNER;
+
+-- Usuarios de prueba, las contraseñas son abc123, qrs456 y xyz789 (BCrypt de fuerza 10)
+INSERT INTO USERS(USERNAME, PASSWORD, ENABLED) VALUES ('sarah1', '$2a$10$Vw3zJ3bBTmWbwgyOncSavO0trZzD5RNdZmGxyEnSQKB7bf.h/74SS', TRUE);
+INSERT INTO USERS(USERNAME, PASSWORD, ENABLED) VALUES ('hank-owns-no-cards', '$2a$10$G7tJ2YfzB4HDEcRROb6Bp.QrrURnu4OSMsrHLuDu/4VKF65R.9xwe', TRUE);
+INSERT INTO USERS(USERNAME, PASSWORD, ENABLED) VALUES ('kumar2', '$2a$10$zU9k7WgkAPNnyngTCj7FT.jXchinaE61a9zVvKm7gB4Qdz5YFW2Oq', TRUE);
+INSERT INTO AUTHORITIES(USERNAME, AUTHORITY) VALUES ('sarah1', 'ROLE_CARD-OWNER');
+INSERT INTO AUTHORITIES(USERNAME, AUTHORITY) VALUES ('hank-owns-no-cards', 'ROLE_NON-OWNER');
+INSERT INTO AUTHORITIES(USERNAME, AUTHORITY) VALUES ('kumar2', 'ROLE_CARD-OWNER');
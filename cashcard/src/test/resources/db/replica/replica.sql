@@ -0,0 +1,11 @@
+-- Esquema y datos de las réplicas H2 de ReplicaRoutingApplicationTests. Se ejecuta en
+-- cada conexión (INIT=RUNSCRIPT), por eso todo es idempotente. La tarjeta 99 tiene otro
+-- importe que en el primario, asi el test sabe de donde se ha leido
+CREATE TABLE IF NOT EXISTS cash_card
+(
+    ID      BIGINT       NOT NULL PRIMARY KEY,
+    AMOUNT  BIGINT       NOT NULL,
+    OWNER   VARCHAR(256) NOT NULL,
+    VERSION BIGINT       NOT NULL DEFAULT 0
+);
+MERGE INTO cash_card (ID, AMOUNT, OWNER, VERSION) VALUES (99, 100, 'sarah1', 0);